@@ -7,9 +7,14 @@ import edu.clemson.resolve.misc.Utils;
 import edu.clemson.resolve.parser.ResolveParser;
 import edu.clemson.resolve.parser.ResolveLexer;
 import edu.clemson.resolve.analysis.AnalysisPipeline;
+import edu.clemson.resolve.proving.ActionCanceller;
+import edu.clemson.resolve.proving.ProofCache;
 import edu.clemson.resolve.proving.ProverListener;
+import edu.clemson.resolve.proving.TheoremLibrary;
 import edu.clemson.resolve.vcgen.VerifierPipeline;
 import org.antlr.v4.runtime.*;
+import org.antlr.v4.runtime.atn.PredictionMode;
+import org.antlr.v4.runtime.misc.ParseCancellationException;
 import org.antlr.v4.runtime.tree.ParseTreeWalker;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
@@ -25,8 +30,10 @@ import edu.clemson.resolve.semantics.ModuleIdentifier;
 
 import java.io.*;
 import java.lang.reflect.Field;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.*;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.function.Function;
@@ -78,6 +85,15 @@ public class RESOLVECompiler {
     public String genCode;
     public String timeout;
     public String tries;
+    public String proverThreads;
+    public String proverSteps;
+    public String proofTrace;
+    public String portfolio;
+    public String moduleTimeout;
+    public String threads;
+    public String cacheDirectory;
+    public String parseMode;
+    public String statsFile;
 
     public String libDirectory;
     public boolean helpFlag = false;
@@ -87,6 +103,7 @@ public class RESOLVECompiler {
     public boolean log = false;
     public boolean printEnv = false;
     public boolean pathConformalProject = true;
+    public boolean replayProofs = false;
 
     public static Option[] optionDefs = {
             new Option("outputDirectory", "-o", OptionArgType.STRING, "specify output directory where all output is generated"),
@@ -96,6 +113,16 @@ public class RESOLVECompiler {
             new Option("prove", "-prove", "attempt to prove generated VCs for the current file"),
             new Option("timeout", "-timeout", OptionArgType.STRING, "how much time to spend attempting to dispatch a given vc (in milliseconds)"),
             new Option("tries", "-numTries", OptionArgType.STRING, "number of tries to dispatch a vc"),
+            new Option("proverThreads", "-proverThreads", OptionArgType.STRING, "number of vcs to prove in parallel (0 uses every core)"),
+            new Option("proverSteps", "-proverSteps", OptionArgType.STRING, "how many steps (merges and theorem matches) to spend attempting to dispatch a given vc; without -timeout, results then don't depend on machine load"),
+            new Option("proofTrace", "-proofTrace", OptionArgType.STRING, "how much of the prover's search to write to the .proof file: off, summary, or full (the default)"),
+            new Option("portfolio", "-portfolio", OptionArgType.STRING, "prover strategies to race on each vc, taking the first proof: a comma separated list of default, wide, eager, plain and nogoal, or all"),
+            new Option("moduleTimeout", "-moduleTimeout", OptionArgType.STRING, "how much wall-clock time to spend proving all of a module's vcs (in milliseconds)"),
+            new Option("threads", "-threads", OptionArgType.STRING, "number of independent modules to compile at once (1 by default; 0 uses every core)"),
+            new Option("cacheDirectory", "-Xcache", OptionArgType.STRING, "directory in which to remember analyzed modules, generated code and proofs that still hold from one run to the next"),
+            new Option("replayProofs", "-XreplayProofs", "re-check proofs found in the -Xcache directory by replaying their theorems instead of just trusting them"),
+            new Option("parseMode", "-Xparse", OptionArgType.STRING, "force one parsing strategy: sll or ll (the default tries sll, then ll)"),
+            new Option("statsFile", "-Xstats", OptionArgType.STRING, "write wall time, cpu time and allocation per phase and module to this json file"),
             new Option("log", "-Xlog", "dump lots of logging info to edu.clemson.resolve-timestamp.log"),
             new Option("printEnv", "-env", "print path variables"),
             new Option("libDirectory", "-lib", OptionArgType.STRING, "specify custom location of resolve source files"),
@@ -105,12 +132,39 @@ public class RESOLVECompiler {
 
     @Nullable
     public ProverListener proverListener = null;
+    @Nullable
+    public ActionCanceller proverCanceller = null;
+    @Nullable
+    public ModuleCache moduleCache = null;
+    @Nullable
+    public ProofCache proofCache = null;
+    /**
+     * Theorems the prover has compiled, kept for the rest of the modules it proves things about (and, if we're part of
+     * a session, for the requests after this one).
+     */
+    @NotNull
+    public final TheoremLibrary theoremLibrary;
 
     /**
      * Track separately so if a listener is added, it's the only one (instead of it plus the default stderr listener).
      */
     DefaultCompilerListener defaultListener = new DefaultCompilerListener(this);
-    public final MathSymbolTable symbolTable = new MathSymbolTable();
+    public final MathSymbolTable symbolTable;
+
+    /**
+     * Where the compiler's own output (and the default listener's info, errors and warnings) goes; {@code System.out}
+     * and {@code System.err} unless we're told otherwise.
+     */
+    @NotNull
+    public final PrintStream out, err;
+
+    /** Set when we're one request among many served by a long running compiler process. */
+    @Nullable
+    public final CompilerSession session;
+    @NotNull
+    public final ParseCache parseCache;
+    @NotNull
+    public final CompilerStats stats = new CompilerStats(this);
 
     public final List<String> targetFiles = new ArrayList<>();
     public final List<String> targetNames = new ArrayList<>();
@@ -130,8 +184,23 @@ public class RESOLVECompiler {
     }
 
     public RESOLVECompiler(@Nullable String[] args) {
+        this(args, null);
+    }
+
+    public RESOLVECompiler(@Nullable String[] args, @Nullable CompilerSession session) {
+        this(args, session, System.out, System.err);
+    }
+
+    public RESOLVECompiler(@Nullable String[] args, @Nullable CompilerSession session,
+                           @NotNull PrintStream out, @NotNull PrintStream err) {
+        this.out = out;
+        this.err = err;
         this.errMgr = new ErrorManager(this);
         this.args = args;
+        this.session = session;
+        this.symbolTable = session != null ? session.getSymbolTable() : new MathSymbolTable();
+        this.parseCache = session != null ? session.getParseCache() : new ParseCache();
+        this.theoremLibrary = session != null ? session.getTheoremLibrary() : new TheoremLibrary();
         handleArgs();
     }
 
@@ -215,6 +284,40 @@ public class RESOLVECompiler {
         else {
             libDirectory = ".";
         }
+        if (parseMode != null) {
+            if (parseMode.equalsIgnoreCase("sll") || parseMode.equalsIgnoreCase("ll")) {
+                parseMode = parseMode.toLowerCase();
+            }
+            else {
+                errMgr.toolError(ErrorKind.INVALID_CMDLINE_ARG, "-Xparse " + parseMode);
+                parseMode = null;
+            }
+        }
+        threads = checkCount("-threads", threads, Integer.MAX_VALUE);
+        proverThreads = checkCount("-proverThreads", proverThreads, Integer.MAX_VALUE);
+        tries = checkCount("-numTries", tries, Integer.MAX_VALUE);
+        timeout = checkCount("-timeout", timeout, Long.MAX_VALUE);
+        proverSteps = checkCount("-proverSteps", proverSteps, Long.MAX_VALUE);
+        moduleTimeout = checkCount("-moduleTimeout", moduleTimeout, Long.MAX_VALUE);
+    }
+
+    /**
+     * Returns {@code value} if it's a whole number from 0 to {@code max}; otherwise reports it as an invalid argument
+     * to {@code option} and returns {@code null}, so the option's default is used instead.
+     */
+    @Nullable
+    private String checkCount(@NotNull String option, @Nullable String value, long max) {
+        if (value == null) return null;
+        long n = -1;
+        try {
+            n = Long.parseLong(value);
+        } catch (NumberFormatException nfe) {
+        }
+        if (n < 0 || n > max) {
+            errMgr.toolError(ErrorKind.INVALID_CMDLINE_ARG, option + " " + value);
+            return null;
+        }
+        return value;
     }
 
     public static void main(String[] args) {
@@ -223,22 +326,33 @@ public class RESOLVECompiler {
             resolve.help();
             resolve.exit(0);
         }
+        resolve.exit(resolve.compile());
+    }
+
+    /** Processes the command line targets and returns the status {@link #main} would exit with. */
+    public int compile() {
         try {
-            resolve.processCommandLineTargets();
+            processCommandLineTargets();
         } finally {
-            if (resolve.log) {
+            if (statsFile != null) {
                 try {
-                    String logname = resolve.logMgr.save();
-                    System.out.println("wrote " + logname);
+                    stats.writeJson(new File(statsFile));
                 } catch (IOException ioe) {
-                    resolve.errMgr.toolError(ErrorKind.INTERNAL_ERROR, ioe);
+                    errMgr.toolError(ErrorKind.CANNOT_WRITE_FILE, ioe, statsFile, ioe.getMessage());
+                }
+            }
+            if (log) {
+                log("RESOLVECompiler", "parse cache: " + parseCache.getHits() + " hits, " +
+                        parseCache.getMisses() + " misses");
+                try {
+                    String logname = logMgr.save();
+                    out.println("wrote " + logname);
+                } catch (IOException ioe) {
+                    errMgr.toolError(ErrorKind.INTERNAL_ERROR, ioe);
                 }
             }
         }
-        if (resolve.errMgr.getErrorCount() > 0) {
-            resolve.exit(1);
-        }
-        resolve.exit(0);
+        return errMgr.getErrorCount() > 0 ? 1 : 0;
     }
 
     public void processCommandLineTargets() {
@@ -253,8 +367,14 @@ public class RESOLVECompiler {
             }
             info("core lib directory @: " + getCoreLibraryDirectory());
         }
+        if (session != null) {
+            session.invalidateStaleModules();
+        }
         commandlineTargets.addAll(parseAndReturnRootModules());
+        //includes parsing every dependency reached along the way
+        CompilerStats.Timer sortTimer = stats.start("sort", null);
         List<AnnotatedModule> targets = sortTargetModulesByUsesReferences(commandlineTargets);
+        sortTimer.stop();
         processCommandLineTargets(targets);
     }
 
@@ -280,12 +400,39 @@ public class RESOLVECompiler {
         CodeGenPipeline codegenPipe = new CodeGenPipeline(this, modules);
         VerifierPipeline vcsPipe = new VerifierPipeline(this, modules);
         if (errMgr.getErrorCount() > 0) return; //I just really don't want to analyze something erroneous..
+        if (cacheDirectory != null) {
+            moduleCache = new ModuleCache(new File(cacheDirectory), symbolTable);
+            try {
+                moduleCache.fingerprint(modules);
+            } catch (IOException ioe) {
+                moduleCache = null;
+                info("couldn't fingerprint modules, compiling without the cache: " + ioe.getMessage());
+            }
+            proofCache = new ProofCache(new File(cacheDirectory));
+        }
         analysisPipe.process();
         if (errMgr.getErrorCount() > initialErrCt) {
             return;
         }
+        if (session != null) {
+            session.recordAnalyzed(modules);
+        }
         codegenPipe.process();
         vcsPipe.process();
+        if (moduleCache != null) {
+            try {
+                moduleCache.save();
+            } catch (IOException ioe) {
+                errMgr.toolError(ErrorKind.CANNOT_WRITE_FILE, ioe, cacheDirectory, ioe.getMessage());
+            }
+        }
+        if (proofCache != null) {
+            try {
+                proofCache.save();
+            } catch (IOException ioe) {
+                errMgr.toolError(ErrorKind.CANNOT_WRITE_FILE, ioe, cacheDirectory, ioe.getMessage());
+            }
+        }
     }
 
     @NotNull
@@ -297,7 +444,7 @@ public class RESOLVECompiler {
     public List<AnnotatedModule> sortTargetModulesByUsesReferences(@NotNull List<AnnotatedModule> modules) {
         Map<String, AnnotatedModule> roots = new HashMap<>();
         for (AnnotatedModule module : modules) {
-            roots.put(module.getModuleIdentifier().getFile().toString(), module);
+            roots.put(module.getModuleIdentifier().getFile().getAbsolutePath(), module);
         }
         return sortTargetModulesByUsesReferences(roots);
     }
@@ -306,7 +453,8 @@ public class RESOLVECompiler {
     public List<AnnotatedModule> sortTargetModulesByUsesReferences(@NotNull Map<String, AnnotatedModule> modules) {
         DefaultDirectedGraph<String, DefaultEdge> g = new DefaultDirectedGraph<>(DefaultEdge.class);
 
-        for (AnnotatedModule t : Collections.unmodifiableCollection(modules.values())) {
+        //findDependencies adds whatever it parses along the way to modules, so walk a snapshot of the roots
+        for (AnnotatedModule t : new ArrayList<>(modules.values())) {
             g.addVertex(t.getModuleIdentifier().getFile().getAbsolutePath());
             findDependencies(g, t, modules);
         }
@@ -415,8 +563,19 @@ public class RESOLVECompiler {
               //  throw new RuntimeException("You can't create a RESOLVE project that isn't on " +
               //          "RESOLVEPATH or RESOLVEROOT");
             }
-            ANTLRFileStream afs = new ANTLRFileStream(file.getCanonicalPath());
-            return parseModule(afs);
+            if (session != null) {
+                AnnotatedModule analyzed = session.getAnalyzedModule(canonicalPath);
+                if (analyzed != null) return analyzed;
+            }
+            AnnotatedModule cached = parseCache.get(canonicalPath);
+            if (cached != null) return cached;
+            BasicFileAttributes attributes = Files.readAttributes(canonicalPath, BasicFileAttributes.class);
+            CompilerStats.Timer parseTimer =
+                    stats.start("parse", Utils.stripFileExtension(canonicalPath.getFileName().toString()));
+            AnnotatedModule result = parseModule(Utils.readSource(canonicalPath));
+            parseTimer.stop();
+            if (result != null) parseCache.put(canonicalPath, attributes, result);
+            return result;
         } catch (IOException ioe) {
             errMgr.toolError(ErrorKind.CANNOT_OPEN_FILE, ioe, fileName);
         }
@@ -429,8 +588,30 @@ public class RESOLVECompiler {
         TokenStream tokens = new CommonTokenStream(lexer);
         ResolveParser parser = new ResolveParser(tokens);
         parser.removeErrorListeners();
-        parser.addErrorListener(errMgr);
-        ParserRuleContext start = parser.moduleDecl();
+        ParserRuleContext start = null;
+        //try the (much) faster SLL prediction first, bailing at the first error rather than reporting it; only if
+        //that fails do we need full LL, which also tells us whether it was a genuine syntax error
+        if (!"ll".equals(parseMode)) {
+            parser.getInterpreter().setPredictionMode(PredictionMode.SLL);
+            if ("sll".equals(parseMode)) {
+                parser.addErrorListener(errMgr);
+                start = parser.moduleDecl();
+            }
+            else {
+                parser.setErrorHandler(new BailErrorStrategy());
+                try {
+                    start = parser.moduleDecl();
+                } catch (ParseCancellationException pce) {
+                    parser.reset();
+                    parser.setErrorHandler(new DefaultErrorStrategy());
+                }
+            }
+        }
+        if (start == null) {
+            parser.getInterpreter().setPredictionMode(PredictionMode.LL);
+            parser.addErrorListener(errMgr);
+            start = parser.moduleDecl();
+        }
         Token moduleNameTok = null;
         try {
             moduleNameTok = Utils.getModuleCtxName(start);
@@ -543,6 +724,20 @@ public class RESOLVECompiler {
         return listeners;
     }
 
+    /** Returns {@code true} if the command line option named {@code name} (e.g. {@code -o}) is followed by a value. */
+    public static boolean optionTakesArgument(@NotNull String name) {
+        for (Option o : optionDefs) {
+            if (o.name.equals(name)) return o.argType == OptionArgType.STRING;
+        }
+        return false;
+    }
+
+    /** How many modules the pipelines may work on at once, per {@code -threads}. */
+    public int getCompilationThreads() {
+        int n = threads != null ? Integer.parseInt(threads) : 1;
+        return n > 0 ? n : Runtime.getRuntime().availableProcessors();
+    }
+
     public void version() {
         info("RESOLVE Compiler Version " + VERSION);
     }
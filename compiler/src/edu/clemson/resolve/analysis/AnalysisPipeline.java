@@ -1,14 +1,19 @@
 package edu.clemson.resolve.analysis;
 
+import edu.clemson.resolve.codegen.CodeGenPipeline;
 import edu.clemson.resolve.compiler.AbstractCompilationPipeline;
 import edu.clemson.resolve.compiler.AnnotatedModule;
+import edu.clemson.resolve.compiler.CompilerStats;
+import edu.clemson.resolve.compiler.ModuleCache;
 import edu.clemson.resolve.RESOLVECompiler;
 import edu.clemson.resolve.proving.absyn.PExp;
 import edu.clemson.resolve.proving.absyn.PExpBuildingListener;
+import edu.clemson.resolve.semantics.ModuleIdentifier;
 import org.antlr.v4.runtime.tree.ParseTreeWalker;
 import org.jetbrains.annotations.NotNull;
 
-import java.util.List;
+import java.util.*;
+import java.util.concurrent.*;
 
 public class AnalysisPipeline extends AbstractCompilationPipeline {
 
@@ -19,25 +24,132 @@ public class AnalysisPipeline extends AbstractCompilationPipeline {
     @Override
     public void process() {
         int initialErrCount = compiler.errMgr.getErrorCount();
+        int threads = compiler.getCompilationThreads();
+        if (threads == 1 || compilationUnits.size() < 2) {
+            for (AnnotatedModule unit : compilationUnits) {
+                if (!analyze(unit, initialErrCount)) return;
+            }
+            return;
+        }
+        //compilationUnits is already in dependency order; here we just say which of them each unit is waiting on
+        Map<ModuleIdentifier, AnnotatedModule> units = new HashMap<>();
+        for (AnnotatedModule unit : compilationUnits) {
+            units.put(unit.getModuleIdentifier(), unit);
+        }
+        Map<AnnotatedModule, Integer> unfinishedDependencies = new HashMap<>();
+        Map<AnnotatedModule, List<AnnotatedModule>> dependents = new HashMap<>();
         for (AnnotatedModule unit : compilationUnits) {
-            compiler.log("AnalysisPipeline", "populating: " + unit.getNameToken().getText());
-            System.out.println("populating: " + unit.getNameToken().getText());
-
-            ParseTreeWalker walker = new ParseTreeWalker();
-            BasicSanityCheckingVisitor initialSanityChecks = new BasicSanityCheckingVisitor(compiler, unit);
-            initialSanityChecks.visit(unit.getRoot());
-            PopulatingVisitor defSymsAndScopes = new PopulatingVisitor(compiler, compiler.symbolTable, unit);
-            defSymsAndScopes.visit(unit.getRoot());
-            PExpBuildingListener<PExp> pexpAnnotator = new PExpBuildingListener<>(defSymsAndScopes.getTypeGraph(), unit);
-            SanityCheckingListener sanityChecker = new SanityCheckingListener(compiler, unit);
-            if (compiler.errMgr.getErrorCount() > initialErrCount) return;
-
-            walker.walk(pexpAnnotator, unit.getRoot());
-            walker.walk(sanityChecker, unit.getRoot());
-
-            MathClssftnLogger pl = new MathClssftnLogger(compiler, unit.mathClssftns);
-            ParseTreeWalker.DEFAULT.walk(pl, unit.getRoot());
+            int count = 0;
+            for (ModuleIdentifier use : unit.getDependencies().getCombinedUses()) {
+                AnnotatedModule dependency = units.get(use);
+                if (dependency == null || dependency == unit) continue;
+                dependents.computeIfAbsent(dependency, k -> new ArrayList<>()).add(unit);
+                count++;
+            }
+            unfinishedDependencies.put(unit, count);
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(Math.min(threads, compilationUnits.size()));
+        CompletionService<AnnotatedModule> finished = new ExecutorCompletionService<>(pool);
+        int running = 0;
+        try {
+            for (AnnotatedModule unit : compilationUnits) {
+                if (unfinishedDependencies.get(unit) == 0) {
+                    submit(finished, unit, initialErrCount);
+                    running++;
+                }
+            }
+            //all the bookkeeping happens here, on the calling thread; the pool only ever sees ready modules
+            while (running > 0) {
+                AnnotatedModule done = finished.take().get();
+                running--;
+                if (done == null || compiler.errMgr.getErrorCount() > initialErrCount) continue;
+                for (AnnotatedModule dependent : dependents.getOrDefault(done, Collections.emptyList())) {
+                    int remaining = unfinishedDependencies.get(dependent) - 1;
+                    unfinishedDependencies.put(dependent, remaining);
+                    if (remaining == 0) {
+                        submit(finished, dependent, initialErrCount);
+                        running++;
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("analysis interrupted", e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private void submit(CompletionService<AnnotatedModule> pool, AnnotatedModule unit, int initialErrCount) {
+        pool.submit(() -> analyze(unit, initialErrCount) ? unit : null);
+    }
+
+    /**
+     * Runs every analysis pass over {@code unit}, all on the calling thread (the symbol table keeps the scopes of the
+     * module being populated per thread).
+     *
+     * @return {@code false} if errors turned up and nothing downstream should be analyzed
+     */
+    private boolean analyze(@NotNull AnnotatedModule unit, int initialErrCount) {
+        if (compiler.session != null && compiler.session.isAnalyzed(unit)) {
+            compiler.log("AnalysisPipeline", "reusing: " + unit.getNameToken().getText());
+            return true;
+        }
+        String name = unit.getNameToken().getText();
+        ModuleCache cache = compiler.moduleCache;
+        if (cache != null && isLoadable(unit) && cache.loadSummary(unit)) {
+            compiler.log("AnalysisPipeline", "loading: " + name);
+            return true;
         }
+        compiler.log("AnalysisPipeline", "populating: " + name);
+        int initialWarnCount = compiler.errMgr.getWarningCount();
+
+        CompilerStats stats = compiler.stats;
+        ParseTreeWalker walker = new ParseTreeWalker();
+        CompilerStats.Timer timer;
+        timer = stats.start("analysis.sanity", name);
+        BasicSanityCheckingVisitor initialSanityChecks = new BasicSanityCheckingVisitor(compiler, unit);
+        initialSanityChecks.visit(unit.getRoot());
+        timer.stop();
+
+        timer = stats.start("analysis.populate", name);
+        PopulatingVisitor defSymsAndScopes = new PopulatingVisitor(compiler, compiler.symbolTable, unit);
+        defSymsAndScopes.visit(unit.getRoot());
+        timer.stop();
+        PExpBuildingListener<PExp> pexpAnnotator = new PExpBuildingListener<>(defSymsAndScopes.getTypeGraph(), unit);
+        SanityCheckingListener sanityChecker = new SanityCheckingListener(compiler, unit);
+        if (compiler.errMgr.getErrorCount() > initialErrCount) return false;
+
+        timer = stats.start("analysis.exps", name);
+        walker.walk(pexpAnnotator, unit.getRoot());
+        timer.stop();
+
+        timer = stats.start("analysis.semantics", name);
+        walker.walk(sanityChecker, unit.getRoot());
+        timer.stop();
+
+        timer = stats.start("analysis.clssftns", name);
+        MathClssftnLogger pl = new MathClssftnLogger(compiler, unit.mathClssftns);
+        ParseTreeWalker.DEFAULT.walk(pl, unit.getRoot());
+        timer.stop();
+
+        //a module loaded from its summary isn't checked again, so only summarize it if there was nothing to report
+        //(with modules analyzed in parallel, a warning from any of them is enough to hold this one back)
+        if (cache != null && compiler.errMgr.getWarningCount() == initialWarnCount) {
+            cache.saveSummary(unit);
+        }
+        return true;
+    }
+
+    /**
+     * Returns {@code true} if nothing downstream needs {@code unit}'s parse tree: it isn't a target (so it won't be
+     * verified), no session will hold on to it, and its generated code (if we're generating any) is up to date.
+     */
+    private boolean isLoadable(@NotNull AnnotatedModule unit) {
+        return !compiler.targetNames.contains(unit.getNameToken().getText()) && compiler.session == null &&
+                (compiler.genCode == null || CodeGenPipeline.isUpToDate(compiler, unit));
     }
 
-}
\ No newline at end of file
+}
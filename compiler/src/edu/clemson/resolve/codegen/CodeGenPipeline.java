@@ -2,10 +2,16 @@ package edu.clemson.resolve.codegen;
 
 import edu.clemson.resolve.compiler.AbstractCompilationPipeline;
 import edu.clemson.resolve.compiler.AnnotatedModule;
+import edu.clemson.resolve.compiler.CompilerStats;
+import edu.clemson.resolve.compiler.ModuleCache;
 import edu.clemson.resolve.RESOLVECompiler;
+import edu.clemson.resolve.semantics.ModuleIdentifier;
 import org.jetbrains.annotations.NotNull;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.*;
 
 public class CodeGenPipeline extends AbstractCompilationPipeline {
 
@@ -13,13 +19,69 @@ public class CodeGenPipeline extends AbstractCompilationPipeline {
         super(compiler, compilationUnits);
     }
 
+    /**
+     * Generates every module. Analysis is finished by now, so modules don't depend on one another here and are each
+     * built, converted and written on a pool bounded by {@code -threads}.
+     */
     @Override
     public void process() {
         if (compiler.genCode == null) return;
+        Set<ModuleIdentifier> externalFilesWritten = ConcurrentHashMap.newKeySet();
+        int threads = Math.min(compiler.getCompilationThreads(), compilationUnits.size());
+        if (threads <= 1) {
+            for (AnnotatedModule unit : compilationUnits) {
+                generate(unit, externalFilesWritten);
+            }
+            return;
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        List<Callable<Void>> tasks = new ArrayList<>();
         for (AnnotatedModule unit : compilationUnits) {
-            JavaCodeGenerator gen = new JavaCodeGenerator(compiler, unit);
-            gen.write(gen.generateModule(), gen.getOutputFileName());
-            gen.writeAllExternallyReferencedFiles();
+            tasks.add(() -> {
+                generate(unit, externalFilesWritten);
+                return null;
+            });
+        }
+        try {
+            for (Future<Void> f : pool.invokeAll(tasks)) {
+                f.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("code generation interrupted", e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Returns {@code true} if {@code unit}'s generated code is already sitting in the output directory and was
+     * generated from {@code unit} (and everything it uses) as it is now.
+     */
+    public static boolean isUpToDate(@NotNull RESOLVECompiler compiler, @NotNull AnnotatedModule unit) {
+        ModuleCache cache = compiler.outputDirectory != null ? compiler.moduleCache : null;
+        return cache != null && new JavaCodeGenerator(compiler, unit).outputFileExists() &&
+                cache.isUnchanged(unit, ModuleCache.Stage.CODEGEN, compiler.outputDirectory);
+    }
+
+    private void generate(@NotNull AnnotatedModule unit, @NotNull Set<ModuleIdentifier> externalFilesWritten) {
+        JavaCodeGenerator gen = new JavaCodeGenerator(compiler, unit);
+        //a module loaded from its summary was only loaded because its code is up to date (and it has no tree to
+        //generate from anyway); the external files it uses get written regardless, as they may have been deleted
+        ModuleCache cache = compiler.outputDirectory != null ? compiler.moduleCache : null;
+        if ((cache != null && cache.isLoaded(unit)) || isUpToDate(compiler, unit)) {
+            gen.writeAllExternallyReferencedFiles(externalFilesWritten);
+            return;
+        }
+        int initialErrCount = compiler.errMgr.getErrorCount();
+        CompilerStats.Timer timer = compiler.stats.start("codegen", unit.getNameToken().getText());
+        gen.write(gen.generateModule(), gen.getOutputFileName());
+        gen.writeAllExternallyReferencedFiles(externalFilesWritten);
+        timer.stop();
+        if (cache != null && compiler.errMgr.getErrorCount() == initialErrCount) {
+            cache.markDone(unit, ModuleCache.Stage.CODEGEN, compiler.outputDirectory);
         }
     }
-}
\ No newline at end of file
+}
@@ -19,6 +19,7 @@ import java.io.Writer;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.Set;
 import java.util.function.Function;
 
 class JavaCodeGenerator extends AbstractCodeGenerator {
@@ -51,10 +52,7 @@ class JavaCodeGenerator extends AbstractCodeGenerator {
                     outputFileName, new Function<String, File>() {
                 @Override
                 public File apply(String s) {
-                    Path p = moduleIdentifier.getPathRelativeToRootDir();
-                    String outputDir = compiler.outputDirectory;
-                    if (compiler.outputDirectory.equals(".")) outputDir = "out";
-                    return new File(outputDir, p.getParent().toString());
+                    return getOutputDirectory(moduleIdentifier);
                 }
             });
             STWriter wr = new AutoIndentWriter(w);
@@ -68,8 +66,28 @@ class JavaCodeGenerator extends AbstractCodeGenerator {
         }
     }
 
-    public void writeAllExternallyReferencedFiles() {
+    @NotNull
+    private File getOutputDirectory(@NotNull ModuleIdentifier moduleIdentifier) {
+        Path p = moduleIdentifier.getPathRelativeToRootDir();
+        String outputDir = compiler.outputDirectory;
+        if (compiler.outputDirectory.equals(".")) outputDir = "out";
+        return new File(outputDir, p.getParent().toString());
+    }
+
+    /** Returns {@code true} if the generated file for this module is already sitting in the output directory. */
+    boolean outputFileExists() {
+        return compiler.outputDirectory != null &&
+                new File(getOutputDirectory(module.getModuleIdentifier()), getOutputFileName()).exists();
+    }
+
+    /**
+     * Copies the external (java) files this module uses to the output directory, skipping any already in
+     * {@code written}. The set is shared across every module being generated so no file gets written twice (and
+     * possibly at the same time) when several modules reference it.
+     */
+    public void writeAllExternallyReferencedFiles(@NotNull Set<ModuleIdentifier> written) {
         for (ModuleIdentifier e : module.getDependencies().externalUses) {
+            if (!written.add(e)) continue;
             try {
                 ST code = templates.getInstanceOf("externalClassCode").add("code",
                         new String(Files.readAllBytes(Paths.get(e.getFile().getPath()))));
@@ -0,0 +1,128 @@
+package edu.clemson.resolve.compiler;
+
+import edu.clemson.resolve.proving.TheoremLibrary;
+import edu.clemson.resolve.semantics.MathSymbolTable;
+import edu.clemson.resolve.semantics.ModuleIdentifier;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * State that outlives a single {@link edu.clemson.resolve.RESOLVECompiler} run: one symbol table, plus the modules
+ * already analyzed into it and the theorems the prover has compiled from them. Each new compiler built on the session
+ * gets the analyzed module (parse tree, annotations and all) back from {@code parseModule} for every file that hasn't
+ * changed, and the analysis pipeline leaves those alone; only edited modules, and the modules depending on them, get
+ * parsed and populated again.
+ * <p>
+ * Compilers sharing a session must run one after the other, never at the same time.
+ */
+public class CompilerSession {
+
+    private static class AnalyzedModule {
+        final AnnotatedModule module;
+        final long lastModified, length;
+        final Set<Path> dependencies = new HashSet<>();
+
+        AnalyzedModule(@NotNull AnnotatedModule module, @NotNull File file) throws IOException {
+            this.module = module;
+            this.lastModified = file.lastModified();
+            this.length = file.length();
+            for (ModuleIdentifier e : module.getDependencies().getCombinedUses()) {
+                dependencies.add(e.getFile().getCanonicalFile().toPath());
+            }
+        }
+
+        boolean isStale(@NotNull File file) {
+            return !file.exists() || file.lastModified() != lastModified || file.length() != length;
+        }
+    }
+
+    @NotNull
+    private final MathSymbolTable symbolTable = new MathSymbolTable();
+    @NotNull
+    private final ParseCache parseCache = new ParseCache();
+    @NotNull
+    private final TheoremLibrary theoremLibrary = new TheoremLibrary();
+    @NotNull
+    private final Map<Path, AnalyzedModule> analyzed = new HashMap<>();
+
+    @NotNull
+    public MathSymbolTable getSymbolTable() {
+        return symbolTable;
+    }
+
+    /** Parse trees are kept across requests too, so a module invalidated only by a dependency isn't re-parsed. */
+    @NotNull
+    public ParseCache getParseCache() {
+        return parseCache;
+    }
+
+    /** Theorems stay compiled across requests, for as long as the modules stating them do. */
+    @NotNull
+    public TheoremLibrary getTheoremLibrary() {
+        return theoremLibrary;
+    }
+
+    /**
+     * Drops every module whose file was edited (or removed) since we analyzed it, along with any module that
+     * (transitively) uses one of those; their scopes are removed from the symbol table too, and their theorems from
+     * the theorem library.
+     */
+    public synchronized void invalidateStaleModules() {
+        Set<Path> stale = new HashSet<>();
+        for (Map.Entry<Path, AnalyzedModule> e : analyzed.entrySet()) {
+            if (e.getValue().isStale(e.getKey().toFile())) stale.add(e.getKey());
+        }
+        boolean changed = !stale.isEmpty();
+        while (changed) {
+            changed = false;
+            for (Map.Entry<Path, AnalyzedModule> e : analyzed.entrySet()) {
+                if (stale.contains(e.getKey())) continue;
+                for (Path dependency : e.getValue().dependencies) {
+                    if (stale.contains(dependency) || !analyzed.containsKey(dependency)) {
+                        stale.add(e.getKey());
+                        changed = true;
+                        break;
+                    }
+                }
+            }
+        }
+        for (Path p : stale) {
+            ModuleIdentifier id = analyzed.remove(p).module.getModuleIdentifier();
+            symbolTable.removeModule(id);
+            theoremLibrary.removeModule(id);
+        }
+    }
+
+    /** Returns the already analyzed module for the file at {@code canonicalPath}, if we have one. */
+    @Nullable
+    public synchronized AnnotatedModule getAnalyzedModule(@NotNull Path canonicalPath) {
+        AnalyzedModule result = analyzed.get(canonicalPath);
+        return result != null ? result.module : null;
+    }
+
+    public synchronized boolean isAnalyzed(@NotNull AnnotatedModule module) {
+        try {
+            AnalyzedModule e = analyzed.get(module.getModuleIdentifier().getFile().getCanonicalFile().toPath());
+            return e != null && e.module == module;
+        } catch (IOException ioe) {
+            return false;
+        }
+    }
+
+    /** Remembers {@code modules}, which have all just been analyzed into our symbol table without errors. */
+    public synchronized void recordAnalyzed(@NotNull Collection<AnnotatedModule> modules) {
+        for (AnnotatedModule module : modules) {
+            try {
+                File file = module.getModuleIdentifier().getFile().getCanonicalFile();
+                analyzed.put(file.toPath(), new AnalyzedModule(module, file));
+            } catch (IOException ioe) {
+                //can't tell when it changes, so don't keep it around
+            }
+        }
+    }
+}
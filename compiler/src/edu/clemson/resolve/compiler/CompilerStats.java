@@ -0,0 +1,191 @@
+package edu.clemson.resolve.compiler;
+
+import edu.clemson.resolve.RESOLVECompiler;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Wall time, CPU time and bytes allocated for each phase of a compile, per module. Every finished measurement is
+ * forwarded to the compiler's {@link RESOLVECompilerListener}s as it happens, and the totals can be written out as a
+ * json report (see {@code -Xstats}).
+ * <p>
+ * CPU time and allocation are read off the measuring thread, so a {@link Timer} has to be stopped on the thread that
+ * started it. Phases that fan out over a pool (proving, for instance) are timed per task on the workers; their
+ * totals are then sums over those tasks rather than elapsed time. Where the JVM can't report CPU time or allocation
+ * those figures come out as {@code -1}.</p>
+ */
+public class CompilerStats {
+
+    /** A single measurement of {@code phase}; {@code module} is {@code null} for phases spanning the whole compile. */
+    public static final class PhaseStats {
+        @NotNull
+        public final String phase;
+        @Nullable
+        public final String module;
+        public final long wallNanos, cpuNanos, allocatedBytes;
+
+        PhaseStats(@NotNull String phase, @Nullable String module, long wallNanos, long cpuNanos, long allocatedBytes) {
+            this.phase = phase;
+            this.module = module;
+            this.wallNanos = wallNanos;
+            this.cpuNanos = cpuNanos;
+            this.allocatedBytes = allocatedBytes;
+        }
+
+        @Override
+        public String toString() {
+            return phase + (module != null ? "(" + module + ")" : "") + ": " + wallNanos / 1000000 + " ms wall, " +
+                    cpuNanos / 1000000 + " ms cpu, " + allocatedBytes + " bytes";
+        }
+    }
+
+    /** A measurement in progress; see {@link #start}. */
+    public final class Timer {
+        private final String phase, module;
+        private final long thread, wallStart, cpuStart, allocatedStart;
+
+        private Timer(@NotNull String phase, @Nullable String module) {
+            this.phase = phase;
+            this.module = module;
+            this.thread = Thread.currentThread().getId();
+            this.cpuStart = cpuTime(thread);
+            this.allocatedStart = allocatedBytes(thread);
+            this.wallStart = System.nanoTime();
+        }
+
+        public void stop() {
+            long wall = System.nanoTime() - wallStart;
+            long cpu = cpuStart < 0 ? -1 : cpuTime(thread) - cpuStart;
+            long allocated = allocatedStart < 0 ? -1 : allocatedBytes(thread) - allocatedStart;
+            record(new PhaseStats(phase, module, wall, cpu, allocated));
+        }
+    }
+
+    private static final class Totals {
+        int count;
+        long wallNanos, cpuNanos, allocatedBytes;
+
+        void add(PhaseStats s) {
+            count++;
+            wallNanos += s.wallNanos;
+            cpuNanos = cpuNanos < 0 || s.cpuNanos < 0 ? -1 : cpuNanos + s.cpuNanos;
+            allocatedBytes = allocatedBytes < 0 || s.allocatedBytes < 0 ? -1 : allocatedBytes + s.allocatedBytes;
+        }
+    }
+
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+    @NotNull
+    private final RESOLVECompiler compiler;
+    private final long started = System.nanoTime();
+
+    /** Keyed by phase, then module (with "" standing in for a {@code null} module); both in first-seen order. */
+    private final Map<String, Map<String, Totals>> totals = new LinkedHashMap<>();
+
+    public CompilerStats(@NotNull RESOLVECompiler compiler) {
+        this.compiler = compiler;
+    }
+
+    @NotNull
+    public Timer start(@NotNull String phase, @Nullable String module) {
+        return new Timer(phase, module);
+    }
+
+    private void record(@NotNull PhaseStats s) {
+        synchronized (totals) {
+            totals.computeIfAbsent(s.phase, k -> new LinkedHashMap<>())
+                    .computeIfAbsent(s.module != null ? s.module : "", k -> new Totals()).add(s);
+        }
+        for (RESOLVECompilerListener l : compiler.getListeners()) {
+            l.phaseFinished(s);
+        }
+    }
+
+    /** Writes everything recorded so far to {@code file} as json: a total per phase, and the per module figures. */
+    public void writeJson(@NotNull File file) throws IOException {
+        File dir = file.getAbsoluteFile().getParentFile();
+        if (dir != null && !dir.exists()) dir.mkdirs();
+        StringBuilder sb = new StringBuilder();
+        sb.append("{\n");
+        sb.append("  \"version\": ").append(quote(RESOLVECompiler.VERSION)).append(",\n");
+        sb.append("  \"wallNanos\": ").append(System.nanoTime() - started).append(",\n");
+        sb.append("  \"phases\": [");
+        synchronized (totals) {
+            boolean firstPhase = true;
+            for (Map.Entry<String, Map<String, Totals>> phase : totals.entrySet()) {
+                Totals phaseTotal = new Totals();
+                for (Totals t : phase.getValue().values()) {
+                    phaseTotal.count += t.count;
+                    phaseTotal.wallNanos += t.wallNanos;
+                    phaseTotal.cpuNanos = phaseTotal.cpuNanos < 0 || t.cpuNanos < 0 ? -1 :
+                            phaseTotal.cpuNanos + t.cpuNanos;
+                    phaseTotal.allocatedBytes = phaseTotal.allocatedBytes < 0 || t.allocatedBytes < 0 ? -1 :
+                            phaseTotal.allocatedBytes + t.allocatedBytes;
+                }
+                sb.append(firstPhase ? "\n" : ",\n");
+                firstPhase = false;
+                sb.append("    {\"phase\": ").append(quote(phase.getKey())).append(", ");
+                appendTotals(sb, phaseTotal);
+                sb.append(", \"modules\": [");
+                boolean firstModule = true;
+                for (Map.Entry<String, Totals> module : phase.getValue().entrySet()) {
+                    if (module.getKey().isEmpty()) continue;
+                    sb.append(firstModule ? "\n" : ",\n");
+                    firstModule = false;
+                    sb.append("      {\"module\": ").append(quote(module.getKey())).append(", ");
+                    appendTotals(sb, module.getValue());
+                    sb.append("}");
+                }
+                sb.append(firstModule ? "]}" : "\n    ]}");
+            }
+        }
+        sb.append("\n  ]\n}\n");
+        try (Writer w = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8)) {
+            w.write(sb.toString());
+        }
+    }
+
+    private static void appendTotals(@NotNull StringBuilder sb, @NotNull Totals t) {
+        sb.append("\"count\": ").append(t.count)
+                .append(", \"wallNanos\": ").append(t.wallNanos)
+                .append(", \"cpuNanos\": ").append(t.cpuNanos)
+                .append(", \"allocatedBytes\": ").append(t.allocatedBytes);
+    }
+
+    @NotNull
+    private static String quote(@NotNull String s) {
+        StringBuilder sb = new StringBuilder("\"");
+        for (char c : s.toCharArray()) {
+            if (c == '"' || c == '\\') sb.append('\\').append(c);
+            else if (c < 0x20) sb.append(String.format("\\u%04x", (int) c));
+            else sb.append(c);
+        }
+        return sb.append('"').toString();
+    }
+
+    private static long cpuTime(long thread) {
+        try {
+            return THREADS.isThreadCpuTimeSupported() && THREADS.isThreadCpuTimeEnabled() ?
+                    THREADS.getThreadCpuTime(thread) : -1;
+        } catch (UnsupportedOperationException e) {
+            return -1;
+        }
+    }
+
+    private static long allocatedBytes(long thread) {
+        if (!(THREADS instanceof com.sun.management.ThreadMXBean)) return -1;
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) THREADS;
+        try {
+            return threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled() ?
+                    threads.getThreadAllocatedBytes(thread) : -1;
+        } catch (UnsupportedOperationException e) {
+            return -1;
+        }
+    }
+}
@@ -38,8 +38,8 @@ import org.stringtemplate.v4.ST;
  * A basic, default implementation of a listener for the compiler that reports warnings, errors, and other
  * miscellaneous info.
  * <p>
- * Note that this implementation simply outputs the information received directly to {@code stdout}
- * (or {@code stderr}); it doesn't try to save or otherwise preserve any of the information forwarded.</p>
+ * Note that this implementation simply outputs the information received directly to the compiler's {@code stdout}
+ * (or {@code stderr}) stream; it doesn't try to save or otherwise preserve any of the information forwarded.</p>
  */
 public class DefaultCompilerListener implements RESOLVECompilerListener {
 
@@ -56,7 +56,7 @@ public class DefaultCompilerListener implements RESOLVECompilerListener {
         if (compiler.errMgr.formatWantsSingleLineMessage()) {
             outputMsg = outputMsg.replace('\n', ' ');
         }
-        System.err.println(outputMsg);
+        compiler.err.println(outputMsg);
     }
 
     @Override
@@ -64,7 +64,7 @@ public class DefaultCompilerListener implements RESOLVECompilerListener {
         if (compiler.errMgr.formatWantsSingleLineMessage()) {
             msg = msg.replace('\n', ' ');
         }
-        System.out.println(msg);
+        compiler.out.println(msg);
     }
 
     @Override
@@ -74,6 +74,6 @@ public class DefaultCompilerListener implements RESOLVECompilerListener {
         if (compiler.errMgr.formatWantsSingleLineMessage()) {
             outputMsg = outputMsg.replace('\n', ' ');
         }
-        System.err.println(outputMsg);
+        compiler.err.println(outputMsg);
     }
 }
@@ -20,7 +20,7 @@ public class ErrorManager extends BaseErrorListener {
     private final STGroup format = new STGroupFile(FORMATS_DIR + "resolve" + STGroup.GROUP_FILE_EXTENSION);
 
     private final RESOLVECompiler compiler;
-    private int errorCount, warningCount;
+    private volatile int errorCount, warningCount;
 
     public Set<ErrorKind> errorTypes = EnumSet.noneOf(ErrorKind.class);
 
@@ -36,7 +36,7 @@ public class ErrorManager extends BaseErrorListener {
         return errorCount;
     }
 
-    public void resetCounts() {
+    public synchronized void resetCounts() {
         warningCount = 0;
         errorCount = 0;
     }
@@ -45,7 +45,11 @@ public class ErrorManager extends BaseErrorListener {
         compiler.info(msg);
     }
 
-    public ST getMessageTemplate(RESOLVEMessage msg) {
+    /**
+     * Pipelines work on several modules at once, so problems can be reported from more than one thread. The message
+     * formats share one (lazily loaded) template group, hence this and the other format getters are synchronized.
+     */
+    public synchronized ST getMessageTemplate(RESOLVEMessage msg) {
         ST messageST = msg.getMessageTemplate(compiler.longMessages);
         ST locationST = getLocationFormat();
         ST reportST = getReportFormat(msg.getErrorType().severity);
@@ -79,15 +83,15 @@ public class ErrorManager extends BaseErrorListener {
         return reportST;
     }
 
-    public ST getMessageFormat() {
+    public synchronized ST getMessageFormat() {
         return format.getInstanceOf("message");
     }
 
-    public ST getLocationFormat() {
+    public synchronized ST getLocationFormat() {
         return format.getInstanceOf("location");
     }
 
-    public ST getReportFormat(ErrorSeverity severity) {
+    public synchronized ST getReportFormat(ErrorSeverity severity) {
         ST st = format.getInstanceOf("report");
         st.add("type", severity.getText());
         return st;
@@ -152,12 +156,13 @@ public class ErrorManager extends BaseErrorListener {
         return location;
     }
 
-    public boolean formatWantsSingleLineMessage() {
+    public synchronized boolean formatWantsSingleLineMessage() {
         return format.getInstanceOf("wantsSingleLineMessage").render().equals("true");
     }
 
+    /** Synchronized since modules that don't depend on one another are analyzed (and report problems) concurrently. */
     @SuppressWarnings("fallthrough")
-    public void emit(ErrorKind kind, RESOLVEMessage msg) {
+    public synchronized void emit(ErrorKind kind, RESOLVEMessage msg) {
         switch (kind.severity) {
             case WARNING_ONE_OFF:
                 if (errorTypes.contains(kind)) {
@@ -0,0 +1,433 @@
+package edu.clemson.resolve.compiler;
+
+import edu.clemson.resolve.RESOLVECompiler;
+import edu.clemson.resolve.semantics.DumbMathClssftnHandler;
+import edu.clemson.resolve.semantics.MathSymbolTable;
+import edu.clemson.resolve.semantics.ModuleIdentifier;
+import edu.clemson.resolve.semantics.ModuleScopeSummary;
+import edu.clemson.resolve.semantics.NoSuchModuleException;
+import edu.clemson.resolve.semantics.programtype.ProgInvalidType;
+import edu.clemson.resolve.semantics.programtype.ProgVoidType;
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.CommonToken;
+import org.antlr.v4.runtime.ListTokenSource;
+import org.antlr.v4.runtime.ParserRuleContext;
+import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.TokenSource;
+import org.antlr.v4.runtime.misc.Pair;
+import org.antlr.v4.runtime.tree.ParseTree;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * An on-disk cache (kept under {@code -Xcache}) of what the compiler made of each module. A module is identified by a
+ * fingerprint: a hash of its source, the compiler version, and the fingerprints of everything it uses. So editing a
+ * module invalidates it along with every module that (transitively) depends on it, while an untouched core library
+ * keeps its entries from one run to the next.
+ * <p>
+ * Two things are kept. The first is a record of which modules made it cleanly through a given {@link Stage}; we use
+ * it to skip generating code that's already on disk. The second is a summary of each populated module's scope (its
+ * symbols, with their classifications, types and theorems, and the modules it imports), written just after the module
+ * is analyzed. The analysis pipeline {@link #loadSummary loads} an unchanged module from its summary instead of
+ * populating and checking it again.</p>
+ * <p>
+ * Symbols from different modules share classifications (and much else), and the prover relies on that sharing. So a
+ * summary doesn't copy anything a module it uses (or the global scope) holds; it refers to it by its position in that
+ * module's summary. A summary is only loaded when every summary it refers to was read or written this run, in the
+ * very form it was written against. Anything that doesn't hold up (an edited dependency, a summary written by another
+ * build of the compiler) just means the module gets populated as usual. Nothing is kept of the relationships
+ * {@link DumbMathClssftnHandler#addRelationship} records, as subtyping never consults them.</p>
+ */
+public class ModuleCache {
+
+    public static final String CACHE_FILE_NAME = "modules.cache";
+    public static final String SUMMARY_DIRECTORY_NAME = "summaries";
+
+    private static final String SUMMARY_FORMAT = "resolve module summary 1";
+
+    public static enum Stage {
+        /** The module's code was generated (into the output directory recorded with it). */
+        CODEGEN
+    }
+
+    @NotNull
+    private final File cacheFile, summaryDirectory;
+    @NotNull
+    private final MathSymbolTable symtab;
+    @NotNull
+    private final Properties entries = new Properties();
+    @NotNull
+    private final Map<ModuleIdentifier, String> fingerprints = new ConcurrentHashMap<>();
+    @NotNull
+    private final Map<ModuleIdentifier, AnnotatedModule> modules = new ConcurrentHashMap<>();
+
+    /**
+     * What the global scope holds and every summary read or written so far holds, in the order summaries refer to
+     * it, along with the stamp each summary was written with.
+     */
+    @Nullable
+    private Object[] globalObjects = null;
+    @NotNull
+    private final Map<String, Object[]> summaryObjects = new HashMap<>();
+    @NotNull
+    private final Map<String, String> summaryStamps = new HashMap<>();
+    @NotNull
+    private final Map<Object, SharedObject> sharedObjects = new IdentityHashMap<>();
+    @NotNull
+    private final Set<ModuleIdentifier> loaded = ConcurrentHashMap.newKeySet();
+
+    public ModuleCache(@NotNull File cacheDirectory, @NotNull MathSymbolTable symtab) {
+        this.cacheFile = new File(cacheDirectory, CACHE_FILE_NAME);
+        this.summaryDirectory = new File(cacheDirectory, SUMMARY_DIRECTORY_NAME);
+        this.symtab = symtab;
+        if (cacheFile.exists()) {
+            try (Reader r = new InputStreamReader(new FileInputStream(cacheFile), StandardCharsets.UTF_8)) {
+                entries.load(r);
+            } catch (IOException ioe) {
+                //a cache we can't read is the same as an empty one
+                entries.clear();
+            }
+        }
+    }
+
+    /**
+     * Computes fingerprints for {@code modules}, which must be ordered such that each module comes after all the
+     * modules it uses (as {@link RESOLVECompiler#sortTargetModulesByUsesReferences} orders them).
+     */
+    public void fingerprint(@NotNull List<AnnotatedModule> modules) throws IOException {
+        for (AnnotatedModule module : modules) {
+            MessageDigest digest = newDigest();
+            digest.update(RESOLVECompiler.VERSION.getBytes(StandardCharsets.UTF_8));
+            digest.update(Files.readAllBytes(module.getModuleIdentifier().getFile().toPath()));
+
+            //sort so the fingerprint doesn't depend on HashSet iteration order
+            SortedMap<String, String> dependencies = new TreeMap<>();
+            for (ModuleIdentifier e : module.getDependencies().getCombinedUses()) {
+                String fingerprint = fingerprints.get(e);
+                dependencies.put(e.getFile().getAbsolutePath(),
+                        fingerprint != null ? fingerprint : hashFile(e.getFile()));
+            }
+            for (ModuleIdentifier e : module.getDependencies().externalUses) {
+                dependencies.put(e.getFile().getAbsolutePath(), hashFile(e.getFile()));
+            }
+            for (Map.Entry<String, String> e : dependencies.entrySet()) {
+                digest.update(e.getKey().getBytes(StandardCharsets.UTF_8));
+                digest.update(e.getValue().getBytes(StandardCharsets.UTF_8));
+            }
+            fingerprints.put(module.getModuleIdentifier(), toHex(digest.digest()));
+            this.modules.put(module.getModuleIdentifier(), module);
+        }
+    }
+
+    /**
+     * Returns {@code true} iff {@code module} got through {@code stage} in an earlier run (with the same
+     * {@code qualifier}, if any) and neither it nor anything it depends on has changed since.
+     */
+    public boolean isUnchanged(@NotNull AnnotatedModule module, @NotNull Stage stage, @Nullable String qualifier) {
+        String fingerprint = fingerprints.get(module.getModuleIdentifier());
+        return fingerprint != null && fingerprint.equals(entries.getProperty(key(module, stage, qualifier)));
+    }
+
+    public void markDone(@NotNull AnnotatedModule module, @NotNull Stage stage, @Nullable String qualifier) {
+        String fingerprint = fingerprints.get(module.getModuleIdentifier());
+        if (fingerprint != null) entries.setProperty(key(module, stage, qualifier), fingerprint);
+    }
+
+    /** Returns {@code true} iff {@code module}'s scope came from its summary this run (so it has no annotations). */
+    public boolean isLoaded(@NotNull AnnotatedModule module) {
+        return loaded.contains(module.getModuleIdentifier());
+    }
+
+    /**
+     * Adds {@code module}'s scope to the symbol table from the summary an earlier run wrote, if there's one for the
+     * module as it is now.
+     *
+     * @return {@code false} if there isn't, in which case the module needs populating
+     */
+    public synchronized boolean loadSummary(@NotNull AnnotatedModule module) {
+        ModuleIdentifier id = module.getModuleIdentifier();
+        String fingerprint = fingerprints.get(id);
+        File file = summaryFile(id);
+        if (fingerprint == null || !file.exists()) return false;
+        shareGlobalObjects();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (!in.readUTF().equals(SUMMARY_FORMAT) || !in.readUTF().equals(fingerprint)) return false;
+            String stamp = in.readUTF();
+            for (int i = in.readInt(); i > 0; i--) {
+                String used = in.readUTF();
+                if (!in.readUTF().equals(summaryStamps.get(used))) return false;
+            }
+            SummaryInputStream objects = new SummaryInputStream(in);
+            ModuleScopeSummary summary = (ModuleScopeSummary) objects.readObject();
+            Object[] owned = (Object[]) objects.readObject();
+            symtab.loadModuleScope(id, summary);
+            share(key(id), stamp, owned);
+            loaded.add(id);
+            return true;
+        } catch (IOException | ClassNotFoundException | RuntimeException e) {
+            //written by some other build of the compiler, or damaged; either way we'll populate the module instead
+            return false;
+        }
+    }
+
+    /**
+     * Writes a summary of {@code module}'s scope, which must have just been populated (and checked) without any
+     * problems, for later runs to {@link #loadSummary load}. Nothing is written if a module it depends on was neither
+     * loaded nor summarized itself this run, as we'd have no way of referring to that module's symbols.
+     */
+    public synchronized void saveSummary(@NotNull AnnotatedModule module) {
+        ModuleIdentifier id = module.getModuleIdentifier();
+        String fingerprint = fingerprints.get(id);
+        if (fingerprint == null || !dependenciesShared(module, new HashSet<>())) return;
+        shareGlobalObjects();
+        File file = summaryFile(id);
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            SummaryOutputStream objects = new SummaryOutputStream(bytes);
+            objects.writeObject(symtab.getModuleScope(id).summarize());
+            Object[] owned = objects.owned.toArray();
+            objects.writeObject(owned);
+            objects.close();
+
+            String stamp = UUID.randomUUID().toString();
+            summaryDirectory.mkdirs();
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+                out.writeUTF(SUMMARY_FORMAT);
+                out.writeUTF(fingerprint);
+                out.writeUTF(stamp);
+                out.writeInt(objects.used.size());
+                for (Map.Entry<String, String> e : objects.used.entrySet()) {
+                    out.writeUTF(e.getKey());
+                    out.writeUTF(e.getValue());
+                }
+                bytes.writeTo(out);
+            }
+            share(key(id), stamp, owned);
+        } catch (IOException | NoSuchModuleException e) {
+            //no summary just means the module gets populated again next time
+            file.delete();
+        }
+    }
+
+    public void save() throws IOException {
+        File dir = cacheFile.getParentFile();
+        if (dir != null && !dir.exists()) dir.mkdirs();
+        try (Writer w = new OutputStreamWriter(new FileOutputStream(cacheFile), StandardCharsets.UTF_8)) {
+            entries.store(w, "RESOLVE module cache");
+        }
+    }
+
+    private boolean dependenciesShared(@NotNull AnnotatedModule module, @NotNull Set<ModuleIdentifier> visited) {
+        for (ModuleIdentifier e : module.getDependencies().getCombinedUses()) {
+            if (!visited.add(e)) continue;
+            AnnotatedModule dependency = modules.get(e);
+            if (dependency == null || !summaryStamps.containsKey(key(e)) || !dependenciesShared(dependency, visited)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Every summary refers to the built-in classifications and global symbols by their position here, so this has
+     * to come out the same for every symbol table: it's everything reachable from them, in the order we reach it.
+     */
+    private void shareGlobalObjects() {
+        if (globalObjects != null) return;
+        DumbMathClssftnHandler g = symtab.getTypeGraph();
+        List<Object> roots = new ArrayList<>(Arrays.asList(g.INVALID, g.CLS, g.SSET, g.EMPTY_SET, g.ENTITY, g.EL,
+                g.BOOLEAN, g.VOID, g.BOOLEAN_FUNCTION, g.EQUALITY_FUNCTION, g.POWERSET_FUNCTION, g.ARROW_FUNCTION,
+                g.CROSS_PROD_FUNCTION, ProgInvalidType.getInstance(g), ProgVoidType.getInstance(g)));
+        roots.addAll(symtab.getGlobalSymbols());
+        try {
+            SummaryOutputStream objects = new SummaryOutputStream(new ByteArrayOutputStream());
+            objects.writeObject(roots.toArray());
+            objects.close();
+            share(null, null, objects.owned.toArray());
+        } catch (IOException ioe) {
+            throw new RuntimeException(ioe);    //nothing's written anywhere, and builtins are all serializable
+        }
+    }
+
+    private void share(@Nullable String module, @Nullable String stamp, @NotNull Object[] owned) {
+        for (int i = 0; i < owned.length; i++) {
+            sharedObjects.put(owned[i], new SharedObject(module, i));
+        }
+        if (module == null) {
+            globalObjects = owned;
+        }
+        else {
+            summaryObjects.put(module, owned);
+            summaryStamps.put(module, stamp);
+        }
+    }
+
+    /** Writes out the objects a module's summary holds, substituting for those held elsewhere. */
+    private class SummaryOutputStream extends ObjectOutputStream {
+
+        /** Objects written here in full, in the order they were first reached. */
+        final List<Object> owned = new ArrayList<>();
+
+        /** The summaries (and their stamps) holding objects we refer to. */
+        final SortedMap<String, String> used = new TreeMap<>();
+
+        SummaryOutputStream(@NotNull OutputStream out) throws IOException {
+            super(out);
+            enableReplaceObject(true);
+        }
+
+        @Override
+        protected Object replaceObject(Object o) {
+            if (o == symtab.getTypeGraph()) return Builtin.TYPE_GRAPH;
+            if (o == symtab) return Builtin.SYMBOL_TABLE;
+            if (o instanceof Token) return new SavedToken((Token) o);
+            if (o instanceof ParserRuleContext) return new SavedTree((ParserRuleContext) o);
+            if (o instanceof ParseTree) return null;
+            if (o instanceof Enum || !o.getClass().getName().startsWith("edu.clemson.resolve.")) return o;
+
+            SharedObject shared = sharedObjects.get(o);
+            if (shared == null) {
+                owned.add(o);
+                return o;
+            }
+            if (shared.module != null) used.put(shared.module, summaryStamps.get(shared.module));
+            return shared;
+        }
+    }
+
+    /** Reads back what a {@link SummaryOutputStream} wrote, putting back what it substituted. */
+    private class SummaryInputStream extends ObjectInputStream {
+
+        SummaryInputStream(@NotNull InputStream in) throws IOException {
+            super(in);
+            enableResolveObject(true);
+        }
+
+        @Override
+        protected Object resolveObject(Object o) throws IOException {
+            if (o == Builtin.TYPE_GRAPH) return symtab.getTypeGraph();
+            if (o == Builtin.SYMBOL_TABLE) return symtab;
+            if (o instanceof SavedToken) return ((SavedToken) o).toToken();
+            if (o instanceof SavedTree) return ((SavedTree) o).toTree();
+            if (o instanceof SharedObject) {
+                SharedObject shared = (SharedObject) o;
+                Object[] objects = shared.module == null ? globalObjects : summaryObjects.get(shared.module);
+                if (objects == null || shared.index >= objects.length) {
+                    throw new InvalidObjectException("no object " + shared.index + " in " + shared.module);
+                }
+                return objects[shared.index];
+            }
+            return o;
+        }
+    }
+
+    private static enum Builtin {TYPE_GRAPH, SYMBOL_TABLE}
+
+    /** Stands in for an object held by another summary, or by the global scope if {@code module} is {@code null}. */
+    private static final class SharedObject implements Serializable {
+        @Nullable
+        final String module;
+        final int index;
+
+        SharedObject(@Nullable String module, int index) {
+            this.module = module;
+            this.index = index;
+        }
+    }
+
+    /** What's left of a token once the stream it came from is gone: enough to report a position in a file. */
+    private static final class SavedToken implements Serializable {
+        final int type, line, charPositionInLine;
+        @Nullable
+        final String text, sourceName;
+
+        SavedToken(@NotNull Token t) {
+            TokenSource source = t.getTokenSource();
+            this.type = t.getType();
+            this.text = t.getText();
+            this.line = t.getLine();
+            this.charPositionInLine = t.getCharPositionInLine();
+            this.sourceName = source != null ? source.getSourceName() : null;
+        }
+
+        @NotNull
+        Token toToken() {
+            CommonToken result = sourceName == null ? new CommonToken(type, text) :
+                    new CommonToken(new Pair<TokenSource, CharStream>(
+                            new ListTokenSource(Collections.emptyList(), sourceName), null),
+                            type, Token.DEFAULT_CHANNEL, -1, -1);
+            result.setText(text);
+            result.setLine(line);
+            result.setCharPositionInLine(charPositionInLine);
+            return result;
+        }
+    }
+
+    /** A symbol's defining tree, reduced to where it starts and stops. */
+    private static final class SavedTree implements Serializable {
+        @Nullable
+        final Token start, stop;
+
+        SavedTree(@NotNull ParserRuleContext t) {
+            this.start = t.getStart();
+            this.stop = t.getStop();
+        }
+
+        @NotNull
+        ParserRuleContext toTree() {
+            ParserRuleContext result = new ParserRuleContext();
+            result.start = start;
+            result.stop = stop;
+            return result;
+        }
+    }
+
+    @NotNull
+    private File summaryFile(@NotNull ModuleIdentifier id) {
+        String path = key(id);
+        return new File(summaryDirectory, id.getNameString() + "-" +
+                toHex(newDigest().digest(path.getBytes(StandardCharsets.UTF_8))).substring(0, 16) + ".summary");
+    }
+
+    @NotNull
+    private static String key(@NotNull ModuleIdentifier id) {
+        return id.getFile().getAbsolutePath();
+    }
+
+    @NotNull
+    private static String key(@NotNull AnnotatedModule module, @NotNull Stage stage, @Nullable String qualifier) {
+        String key = key(module.getModuleIdentifier()) + "|" + stage;
+        return qualifier != null ? key + "|" + qualifier : key;
+    }
+
+    @NotNull
+    private static String hashFile(@NotNull File f) throws IOException {
+        return toHex(newDigest().digest(Files.readAllBytes(f.toPath())));
+    }
+
+    @NotNull
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);  //every java platform is required to support SHA-256
+        }
+    }
+
+    @NotNull
+    private static String toHex(@NotNull byte[] bytes) {
+        StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            sb.append(String.format("%02x", b));
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,90 @@
+package edu.clemson.resolve.compiler;
+
+import edu.clemson.resolve.compiler.DependencyCollectingListener.DependencyHolder;
+import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.tree.ParseTree;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Parsed modules keyed by the canonical path of their source, so a file reached more than once (as a shared
+ * dependency, or by a later {@code sortTargetModulesByUsesReferences} call) is only lexed and parsed once. An entry
+ * is only used while the file's modification time and size still match what they were when we parsed it.
+ * <p>
+ * Only what parsing produced is kept: the tree, the module's name and its dependencies. Each hit wraps those in a new
+ * {@link AnnotatedModule}, so the annotations analysis hangs off a module never carry over into the next time it's
+ * analyzed.</p>
+ */
+public class ParseCache {
+
+    private static class Entry {
+        final ParseTree root;
+        final Token name;
+        final String fileName;
+        final DependencyHolder dependencies;
+        final FileTime lastModified;
+        final long size;
+
+        Entry(@NotNull AnnotatedModule module, @NotNull BasicFileAttributes attributes) {
+            this.root = module.getRoot();
+            this.name = module.getNameToken();
+            this.fileName = module.getFilePath();
+            this.dependencies = module.getDependencies();
+            this.lastModified = attributes.lastModifiedTime();
+            this.size = attributes.size();
+        }
+    }
+
+    private final Map<Path, Entry> modules = new HashMap<>();
+    private long hits, misses;
+
+    /**
+     * Returns a fresh, unanalyzed module for the tree previously parsed from {@code canonicalPath}, if the file hasn't
+     * changed since.
+     */
+    @Nullable
+    public synchronized AnnotatedModule get(@NotNull Path canonicalPath) {
+        Entry e = modules.get(canonicalPath);
+        if (e != null) {
+            try {
+                BasicFileAttributes attributes = Files.readAttributes(canonicalPath, BasicFileAttributes.class);
+                if (attributes.lastModifiedTime().equals(e.lastModified) && attributes.size() == e.size) {
+                    hits++;
+                    return new AnnotatedModule(e.root, e.name, e.fileName, false, e.dependencies);
+                }
+            } catch (IOException ioe) {
+                //fall through and let the caller try parsing it (and report whatever's wrong)
+            }
+            modules.remove(canonicalPath);
+        }
+        misses++;
+        return null;
+    }
+
+    /**
+     * Remembers {@code module} as parsed from {@code canonicalPath}, whose {@code attributes} were read before parsing
+     * began. Modules with syntax errors aren't kept, so the errors get reported again next time rather than silently
+     * producing nothing.
+     */
+    public synchronized void put(@NotNull Path canonicalPath, @NotNull BasicFileAttributes attributes,
+                                 @NotNull AnnotatedModule module) {
+        if (module.hasParseErrors) return;
+        modules.put(canonicalPath, new Entry(module, attributes));
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+}
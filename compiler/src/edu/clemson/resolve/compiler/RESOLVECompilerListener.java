@@ -38,4 +38,11 @@ public interface RESOLVECompilerListener {
     public void error(RESOLVEMessage msg);
 
     public void warning(RESOLVEMessage msg);
+
+    /**
+     * Called each time a phase of the compiler finishes with a module (or, for phases spanning the whole compile,
+     * finishes outright). Phases run concurrently, so this may be called from any thread, and at the same time.
+     */
+    public default void phaseFinished(CompilerStats.PhaseStats stats) {
+    }
 }
\ No newline at end of file
@@ -75,7 +75,7 @@ public class LogManager {
 
     private List<Record> records = new ArrayList<>();
 
-    public void log(String component, String msg) {
+    public synchronized void log(String component, String msg) {
         Record r = new Record();
         r.component = component;
         r.msg = msg;
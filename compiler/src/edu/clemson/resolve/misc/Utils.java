@@ -32,6 +32,7 @@ package edu.clemson.resolve.misc;
 
 import edu.clemson.resolve.RESOLVECompiler;
 import edu.clemson.resolve.parser.ResolveParser;
+import org.antlr.v4.runtime.ANTLRInputStream;
 import org.antlr.v4.runtime.CommonToken;
 import org.antlr.v4.runtime.Token;
 import org.antlr.v4.runtime.tree.ParseTree;
@@ -46,10 +47,15 @@ import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.*;
 import java.util.function.Function;
 import java.util.stream.Collectors;
@@ -312,6 +318,28 @@ public class Utils {
         return stringBuilder.toString();
     }
 
+    /**
+     * Reads the UTF-8 source at {@code path} into an {@link ANTLRInputStream} named after it. The whole file comes in
+     * with a single channel read into a buffer sized up front, then is decoded straight into the stream's char
+     * array; unlike {@code ANTLRFileStream} there's no intermediate reader, no buffer regrowth and no dependence on the
+     * platform's default charset.
+     */
+    @NotNull
+    public static ANTLRInputStream readSource(@NotNull Path path) throws IOException {
+        ByteBuffer bytes;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) throw new IOException("source file too large: " + path);
+            bytes = ByteBuffer.allocate((int) size);
+            while (bytes.hasRemaining() && channel.read(bytes) >= 0) ;
+        }
+        bytes.flip();
+        CharBuffer chars = StandardCharsets.UTF_8.decode(bytes);
+        ANTLRInputStream result = new ANTLRInputStream(chars.array(), chars.limit());
+        result.name = path.toString();
+        return result;
+    }
+
     public static void writeFile(@Nullable String dir, @Nullable String fileName, @Nullable String content) {
         try {
             org.antlr.v4.runtime.misc.Utils.writeFile(dir + File.separator + fileName, content, "UTF-8");
@@ -0,0 +1,202 @@
+package edu.clemson.resolve.proving;
+
+import java.util.Arrays;
+
+/**
+ * The atoms of a {@link ConjunctionOfNormalizedAtomicExpressions} (an operator applied to arguments, equal to a
+ * root; what a {@link NormalizedAtomicExpression} holds) kept in flat int arrays rather than as objects, and
+ * hash-consed: there's at most one live atom with a given operator and arguments, found by {@link #find}.
+ * <p>
+ * An atom is known by its id. Ids are handed out in order and never reused, so an atom that's {@link #kill}ed (when
+ * merging rewrites it into another) keeps its contents, and {@link #revive} can bring it back if the merge is rolled
+ * back. Killed atoms are never found, and are left out of {@link #size()}.</p>
+ */
+final class AtomStore {
+
+    // atom a is m_slab[m_start[a]] applied to m_slab[m_start[a] + 1] .. m_slab[m_start[a] + m_width[a] - 1]
+    private int[] m_slab;
+    private int m_slabSize = 0;
+    private int[] m_start;
+    private int[] m_width;
+    private int[] m_root;
+    private int[] m_hash;
+    private boolean[] m_live;
+    private int m_count = 0;
+    private int m_liveCount = 0;
+    // the live atoms by operator and arguments, open addressing with linear probing; entries are atom + 1, 0 empty
+    private int[] m_table;
+
+    AtomStore(int expected) {
+        int cap = 16;
+        while (cap < expected * 2) cap <<= 1;
+        m_table = new int[cap];
+        m_slab = new int[Math.max(expected, 4) * 4];
+        m_start = new int[Math.max(expected, 4)];
+        m_width = new int[m_start.length];
+        m_root = new int[m_start.length];
+        m_hash = new int[m_start.length];
+        m_live = new boolean[m_start.length];
+    }
+
+    /** A copy of {@code other} that can go on changing without affecting it; atoms keep their ids. */
+    AtomStore(AtomStore other) {
+        m_slab = other.m_slab.clone();
+        m_slabSize = other.m_slabSize;
+        m_start = other.m_start.clone();
+        m_width = other.m_width.clone();
+        m_root = other.m_root.clone();
+        m_hash = other.m_hash.clone();
+        m_live = other.m_live.clone();
+        m_count = other.m_count;
+        m_liveCount = other.m_liveCount;
+        m_table = other.m_table.clone();
+    }
+
+    /** How many atoms are live. */
+    int size() {
+        return m_liveCount;
+    }
+
+    /** How many ids have been handed out; every atom, live or not, is below this. */
+    int count() {
+        return m_count;
+    }
+
+    boolean isLive(int atom) {
+        return m_live[atom];
+    }
+
+    /** The number of the atom's positions: its operator, then its arguments. */
+    int width(int atom) {
+        return m_width[atom];
+    }
+
+    int arity(int atom) {
+        return m_width[atom] - 1;
+    }
+
+    /** What's at {@code position} of the atom: its operator at 0, then its arguments. */
+    int read(int atom, int position) {
+        return m_slab[m_start[atom] + position];
+    }
+
+    int root(int atom) {
+        return m_root[atom];
+    }
+
+    void setRoot(int atom, int root) {
+        m_root[atom] = root;
+    }
+
+    /** Whether {@code symbol} is the atom's operator or one of its arguments. */
+    boolean uses(int atom, int symbol) {
+        for (int i = m_start[atom], end = i + m_width[atom]; i < end; ++i) {
+            if (m_slab[i] == symbol) return true;
+        }
+        return false;
+    }
+
+    /** The live atom with operator and arguments {@code key[0]} .. {@code key[width - 1]}; -1 if there isn't one. */
+    int find(int[] key, int width) {
+        int hash = hash(key, 0, width);
+        int mask = m_table.length - 1;
+        for (int p = hash & mask; m_table[p] != 0; p = (p + 1) & mask) {
+            int a = m_table[p] - 1;
+            if (m_hash[a] == hash && sameAs(a, key, width)) return a;
+        }
+        return -1;
+    }
+
+    /**
+     * Adds a live atom with operator and arguments {@code key[0]} .. {@code key[width - 1]} and the given root,
+     * returning its id. There mustn't already be one (see {@link #find}).
+     */
+    int add(int[] key, int width, int root) {
+        if (m_count == m_start.length) {
+            int n = m_count * 2;
+            m_start = Arrays.copyOf(m_start, n);
+            m_width = Arrays.copyOf(m_width, n);
+            m_root = Arrays.copyOf(m_root, n);
+            m_hash = Arrays.copyOf(m_hash, n);
+            m_live = Arrays.copyOf(m_live, n);
+        }
+        if (m_slabSize + width > m_slab.length) {
+            m_slab = Arrays.copyOf(m_slab, Math.max(m_slab.length * 2, m_slabSize + width));
+        }
+        int a = m_count++;
+        System.arraycopy(key, 0, m_slab, m_slabSize, width);
+        m_start[a] = m_slabSize;
+        m_width[a] = width;
+        m_slabSize += width;
+        m_root[a] = root;
+        m_hash[a] = hash(key, 0, width);
+        revive(a);
+        return a;
+    }
+
+    /** Makes the atom no longer live. */
+    void kill(int atom) {
+        if (!m_live[atom]) return;
+        m_live[atom] = false;
+        m_liveCount--;
+        int mask = m_table.length - 1;
+        int p = m_hash[atom] & mask;
+        while (m_table[p] != atom + 1) {
+            p = (p + 1) & mask;
+        }
+        // shift back whatever in the run after p would no longer be found with p empty
+        for (int q = (p + 1) & mask; m_table[q] != 0; q = (q + 1) & mask) {
+            int home = m_hash[m_table[q] - 1] & mask;
+            if (((q - home) & mask) >= ((q - p) & mask)) {
+                m_table[p] = m_table[q];
+                p = q;
+            }
+        }
+        m_table[p] = 0;
+    }
+
+    /** Makes a killed atom live again. No other live atom may have the same operator and arguments. */
+    void revive(int atom) {
+        if (m_live[atom]) return;
+        m_live[atom] = true;
+        m_liveCount++;
+        if (m_liveCount * 2 > m_table.length) {
+            rehash(m_table.length * 2);
+        }
+        else {
+            insert(atom);
+        }
+    }
+
+    private void insert(int atom) {
+        int mask = m_table.length - 1;
+        int p = m_hash[atom] & mask;
+        while (m_table[p] != 0) {
+            p = (p + 1) & mask;
+        }
+        m_table[p] = atom + 1;
+    }
+
+    private void rehash(int capacity) {
+        m_table = new int[capacity];
+        for (int a = 0; a < m_count; ++a) {
+            if (m_live[a]) insert(a);
+        }
+    }
+
+    private boolean sameAs(int atom, int[] key, int width) {
+        if (m_width[atom] != width) return false;
+        for (int i = 0, s = m_start[atom]; i < width; ++i, ++s) {
+            if (m_slab[s] != key[i]) return false;
+        }
+        return true;
+    }
+
+    private static int hash(int[] key, int from, int width) {
+        int h = 1;
+        for (int i = from; i < from + width; ++i) {
+            h = 31 * h + key[i];
+        }
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,112 @@
+package edu.clemson.resolve.proving;
+
+import java.util.Arrays;
+
+/**
+ * A set of bindings (see {@link BindingSlots}) kept in an open addressing table, each binding's hash computed once
+ * when it's added. Iterates in insertion order, via {@link #size()} and {@link #get(int)}.
+ */
+final class BindingSet {
+
+    private int[][] m_items;
+    private int[] m_hashes;
+    private int m_size = 0;
+    // slots hold position in m_items + 1; 0 is empty
+    private int[] m_table;
+
+    BindingSet() {
+        this(16);
+    }
+
+    BindingSet(int expected) {
+        int cap = 16;
+        while (cap < expected * 2) cap <<= 1;
+        m_table = new int[cap];
+        m_items = new int[Math.max(expected, 4)][];
+        m_hashes = new int[m_items.length];
+    }
+
+    static int hash(int[] binding) {
+        int h = Arrays.hashCode(binding);
+        return h ^ (h >>> 16);
+    }
+
+    int size() {
+        return m_size;
+    }
+
+    boolean isEmpty() {
+        return m_size == 0;
+    }
+
+    int[] get(int i) {
+        return m_items[i];
+    }
+
+    int hashAt(int i) {
+        return m_hashes[i];
+    }
+
+    boolean contains(int[] binding, int hash) {
+        int mask = m_table.length - 1;
+        for (int p = hash & mask; m_table[p] != 0; p = (p + 1) & mask) {
+            int i = m_table[p] - 1;
+            if (m_hashes[i] == hash && Arrays.equals(m_items[i], binding)) return true;
+        }
+        return false;
+    }
+
+    boolean contains(int[] binding) {
+        return contains(binding, hash(binding));
+    }
+
+    boolean add(int[] binding, int hash) {
+        if (contains(binding, hash)) return false;
+        if (m_size == m_items.length) {
+            m_items = Arrays.copyOf(m_items, m_size * 2);
+            m_hashes = Arrays.copyOf(m_hashes, m_size * 2);
+        }
+        m_items[m_size] = binding;
+        m_hashes[m_size] = hash;
+        m_size++;
+        if (m_size * 2 > m_table.length) {
+            rehash();
+        }
+        else {
+            insert(m_size - 1);
+        }
+        return true;
+    }
+
+    boolean add(int[] binding) {
+        return add(binding, hash(binding));
+    }
+
+    void addAll(BindingSet other) {
+        for (int i = 0; i < other.m_size; ++i) {
+            add(other.m_items[i], other.m_hashes[i]);
+        }
+    }
+
+    void clear() {
+        Arrays.fill(m_table, 0);
+        Arrays.fill(m_items, 0, m_size, null);
+        m_size = 0;
+    }
+
+    private void insert(int i) {
+        int mask = m_table.length - 1;
+        int p = m_hashes[i] & mask;
+        while (m_table[p] != 0) {
+            p = (p + 1) & mask;
+        }
+        m_table[p] = i + 1;
+    }
+
+    private void rehash() {
+        m_table = new int[m_table.length * 2];
+        for (int i = 0; i < m_size; ++i) {
+            insert(i);
+        }
+    }
+}
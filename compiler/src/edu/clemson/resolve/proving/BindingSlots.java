@@ -0,0 +1,84 @@
+package edu.clemson.resolve.proving;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The wildcards of one theorem, each given a fixed slot. A binding for the theorem is then just an {@code int[]} with
+ * one entry per slot holding the index (in the VC's {@link Registry}) of the symbol the wildcard is bound to, or
+ * {@link #UNBOUND}, or {@link #ABSENT} for wildcards the binding says nothing about at all.
+ */
+final class BindingSlots {
+
+    static final int UNBOUND = -1;
+    static final int ABSENT = -2;
+
+    private final Registry m_theoremRegistry;
+    private final String[] m_names;
+    private final Map<String, Integer> m_slotByName;
+    // theorem registry index -> slot of its root symbol, or -1
+    private final int[] m_slotOfIndex;
+    // slot -> theorem registry index of its wildcard, or -1 for ones (like _g) the theorem registry doesn't have
+    private final int[] m_theoremIndex;
+
+    BindingSlots(Registry theoremRegistry, Iterable<String> wildcards) {
+        m_theoremRegistry = theoremRegistry;
+        m_slotByName = new HashMap<String, Integer>();
+        for (String w : wildcards) {
+            if (!m_slotByName.containsKey(w)) m_slotByName.put(w, m_slotByName.size());
+        }
+        m_names = new String[m_slotByName.size()];
+        m_theoremIndex = new int[m_names.length];
+        for (Map.Entry<String, Integer> e : m_slotByName.entrySet()) {
+            m_names[e.getValue()] = e.getKey();
+            Integer index = theoremRegistry.m_symbolToIndex.get(e.getKey());
+            m_theoremIndex[e.getValue()] = index != null ? index : -1;
+        }
+        m_slotOfIndex = new int[theoremRegistry.m_indexToSymbol.size()];
+        for (int i = 0; i < m_slotOfIndex.length; ++i) {
+            Integer slot = m_slotByName.get(theoremRegistry.getSymbolForIndex(i));
+            m_slotOfIndex[i] = slot != null ? slot : -1;
+        }
+    }
+
+    int size() {
+        return m_names.length;
+    }
+
+    String getName(int slot) {
+        return m_names[slot];
+    }
+
+    /** Returns the slot of the wildcard named {@code name}, or -1 if it isn't one. */
+    int slotOf(String name) {
+        Integer slot = m_slotByName.get(name);
+        return slot != null ? slot : -1;
+    }
+
+    /** Returns the slot of the wildcard the theorem symbol at {@code theoremIndex} stands for, or -1. */
+    int slotOfIndex(int theoremIndex) {
+        int root = m_theoremRegistry.findAndCompress(theoremIndex);
+        return root < m_slotOfIndex.length ? m_slotOfIndex[root] : slotOf(m_theoremRegistry.getSymbolForIndex(root));
+    }
+
+    int getTheoremIndex(int slot) {
+        return m_theoremRegistry.findAndCompress(m_theoremIndex[slot]);
+    }
+
+    int[] newBinding(int fill) {
+        int[] b = new int[m_names.length];
+        Arrays.fill(b, fill);
+        return b;
+    }
+
+    /** A readable form of {@code binding}: wildcard name to bound symbol, with "" for unbound wildcards. */
+    Map<String, String> toMap(int[] binding, Registry vcRegistry) {
+        Map<String, String> r = new HashMap<String, String>();
+        for (int i = 0; i < binding.length; ++i) {
+            if (binding[i] == ABSENT) continue;
+            r.put(m_names[i], binding[i] == UNBOUND ? "" : vcRegistry.getSymbolForIndex(binding[i]));
+        }
+        return r;
+    }
+}
@@ -2,6 +2,7 @@ package edu.clemson.resolve.proving;
 
 import edu.clemson.resolve.RESOLVECompiler;
 import edu.clemson.resolve.compiler.AnnotatedModule;
+import edu.clemson.resolve.compiler.CompilerStats;
 import edu.clemson.resolve.proving.absyn.PApply;
 import edu.clemson.resolve.proving.absyn.PExp;
 import edu.clemson.resolve.proving.absyn.PSymbol;
@@ -17,46 +18,70 @@ import edu.clemson.resolve.vcgen.VC;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
-import java.io.File;
-import java.io.FileWriter;
-import java.io.IOException;
+import java.io.*;
 import java.util.*;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public final class CongruenceClassProver {
 
     private static final long DEFAULT_TIMEOUT = 5000;
     private static final int DEFAULT_TRIES = -1;
+    private static final int DEFAULT_THREADS = 1;
     private static final boolean SHOW_RESULTS_IF_NOT_PROVED = true;
 
     private final List<VerificationConditionCongruenceClosureImpl> m_ccVCs = new ArrayList<>();
-    private final List<TheoremCongruenceClosureImpl> m_theorems = new ArrayList<>();
-    private final Set<String> m_nonQuantifiedTheoremSymbols = new HashSet<>();
-    private final Set<TheoremCongruenceClosureImpl> m_smallEndEquations = new HashSet<>();
+    private final List<TheoremSymbol> m_theoremSymbols = new ArrayList<>();
+
+    // shared by every vc, on whatever thread; see TheoremBank
+    private final TheoremBank m_bank;
 
     @NotNull
     private final ModuleScopeBuilder m_scope;
     @NotNull
     private final DumbMathClssftnHandler m_typeGraph;
 
-    private String m_results;
+    private final ProofTrace.Level m_traceLevel;
     private boolean printVCEachStep = false;
     private long timeout;
+    private final long maxSteps;
     private long totalTime = 0;
+    private final long moduleTimeout;
+    // replaced by one with the -moduleTimeout deadline when proving starts
+    private volatile ProofBudget m_moduleBudget;
 
     private final PerVCProverModel[] models;
     private final int numTriesBeforeQuitting;
+    // vcs proved at once; lowered by limitWorkers when other modules are being proved alongside this one
+    private int numThreads;
+    @Nullable
+    private final MathClssftn m_z, m_n;
     private final RESOLVECompiler compiler;
     private final AnnotatedModule tr;
     private ProverListener proverListener;
+    @Nullable
+    private final ProofCache m_proofCache;
+    private final boolean m_replayProofs;
+    // the ith vc's key in m_proofCache, if there is one
+    private final String[] m_proofCacheKeys;
+    // the strategies raced on each vc (see -portfolio); just the default one, unless asked otherwise
+    private final List<ProofStrategy> m_portfolio;
+    // runs all but the first strategy of the race, while proving (and only if there's more than one)
+    private ExecutorService m_portfolioPool;
 
     public CongruenceClassProver(@NotNull RESOLVECompiler compiler,
                                  @NotNull AnnotatedModule target,
                                  @NotNull DumbMathClssftnHandler g,
                                  @NotNull List<VC> vcs) {
         this.compiler = compiler;
-        this.timeout = compiler.timeout != null ? Long.parseLong(compiler.timeout) : DEFAULT_TIMEOUT;
+        this.maxSteps = compiler.proverSteps != null ? Long.parseLong(compiler.proverSteps) : 0;
+        //with a step limit (and no timeout asked for) the results shouldn't depend on how busy the machine is
+        this.timeout = compiler.timeout != null ? Long.parseLong(compiler.timeout) :
+                maxSteps > 0 ? 0 : DEFAULT_TIMEOUT;
+        this.moduleTimeout = compiler.moduleTimeout != null ? Long.parseLong(compiler.moduleTimeout) : 0;
         this.numTriesBeforeQuitting = compiler.tries != null ? Integer.parseInt(compiler.tries) : DEFAULT_TRIES;
+        int threads = compiler.proverThreads != null ? Integer.parseInt(compiler.proverThreads) : DEFAULT_THREADS;
+        this.numThreads = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
         this.totalTime = System.currentTimeMillis();
         this.m_typeGraph = g;
         try {
@@ -79,6 +104,18 @@ public final class CongruenceClassProver {
         if (compiler.proverListener != null) {
             this.proverListener = compiler.proverListener;
         }
+        this.m_moduleBudget = new ProofBudget(proverListener, compiler.proverCanceller, 0, 0);
+        this.m_traceLevel = ProofTrace.Level.parse(compiler.proofTrace);
+        if (compiler.proofTrace != null && ProofTrace.Level.named(compiler.proofTrace) == null) {
+            compiler.info("warning: unknown proof trace level " + compiler.proofTrace + ", using full; known ones " +
+                    "are " + Arrays.toString(ProofTrace.Level.values()).toLowerCase());
+        }
+        List<String> unknownStrategies = new ArrayList<>();
+        this.m_portfolio = ProofStrategy.parse(compiler.portfolio, unknownStrategies);
+        if (!unknownStrategies.isEmpty()) {
+            compiler.info("warning: ignoring unknown prover strategies " + unknownStrategies + "; known ones are " +
+                    ProofStrategy.all());
+        }
         List<VC> preprocessedVcs = preprocessVCs(vcs);
         //List<VC> preprocessedVcs = new ArrayList<>();
 
@@ -87,60 +124,93 @@ public final class CongruenceClassProver {
         //m_ccVCs.add(new VerificationConditionCongruenceClosureImpl(g, test, z, n));
 
         //preprocessedVcs.add(test);
-        int i = 0;
+        this.m_z = z;
+        this.m_n = n;
+        List<List<PExp>> antecedents = new ArrayList<>();
+        List<Integer> positions = new ArrayList<>();
         for (VC vc : preprocessedVcs) {
-            m_ccVCs.add(new VerificationConditionCongruenceClosureImpl(g, vc, z, n));
-            models[i++] = new PerVCProverModel(g, String.valueOf(vc.getNumber()),
+            antecedents.add(VerificationConditionCongruenceClosureImpl.getAntecedents(g, vc));
+            positions.add(positions.size());
+        }
+        VerificationConditionCongruenceClosureImpl[] closures =
+                new VerificationConditionCongruenceClosureImpl[preprocessedVcs.size()];
+        buildClosures(preprocessedVcs, antecedents, positions, 0, null, closures);
+        m_ccVCs.addAll(Arrays.asList(closures));
+        for (int i = 0; i < preprocessedVcs.size(); i++) {
+            VC vc = preprocessedVcs.get(i);
+            models[i] = new PerVCProverModel(g, String.valueOf(vc.getNumber()),
                     vc.getSequent().getLeftFormulas(),
                     vc.getSequent().getRightFormulas());
         }
-        List<TheoremSymbol> theoremSymbols = new ArrayList<>();
         try {
-            theoremSymbols.addAll(
+            m_theoremSymbols.addAll(
                     m_scope.query(new SymbolTypeQuery<TheoremSymbol>(TheoremSymbol.class,
                             MathSymbolTable.ImportStrategy.IMPORT_RECURSIVE,
                             MathSymbolTable.FacilityStrategy.FACILITY_IGNORE)));
         } catch (NoSuchModuleException|UnexpectedSymbolException e) {
         }
-        for (TheoremSymbol e : theoremSymbols) {
-            PExp assertion = Utilities.replacePExp(e.getAssertion(), m_typeGraph, z, n);
-            String eName = e.getName();
-            if (assertion.getTopLevelOperationName().equals("=B") && assertion.getQuantifiedVariables().size() > 0) {
-                addEqualityTheorem(true, assertion, eName + "_left"); // match left
-                addEqualityTheorem(false, assertion, eName + "_right"); // match right
-                //m_theorems.add(new TheoremCongruenceClosureImpl(g, assertion, assertion, assertion, false,
-                //false, eName + "_whole")); // match whole*/
+        TheoremBank bank = new TheoremBank(compiler.theoremLibrary);
+        m_bank = bank;
+        // the type graph doesn't change while proving, so every vc (and every copy of one, on whatever thread) can
+        // share what's known of whether the classifications the vcs start out with fit the theorems' wildcards
+        Set<MathClssftn> vcTypes = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (VerificationConditionCongruenceClosureImpl c : closures) {
+            vcTypes.addAll(c.getRegistry().m_indexToType);
+        }
+        Set<MathClssftn> wildcardTypes = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (TheoremCongruenceClosureImpl t : bank.m_theorems) {
+            addWildcardTypes(t.getRegistry(), wildcardTypes);
+        }
+        for (TheoremCongruenceClosureImpl t : bank.m_goalSearchingTheorems) {
+            addWildcardTypes(t.getRegistry(), wildcardTypes);
+        }
+        vcTypes.remove(null);
+        wildcardTypes.remove(null);
+        SubtypeCache subtypes = SubtypeCache.over(vcTypes, wildcardTypes);
+        for (VerificationConditionCongruenceClosureImpl c : closures) {
+            c.getRegistry().shareSubtypes(subtypes);
+        }
+        m_proofCache = compiler.proofCache;
+        m_replayProofs = compiler.replayProofs;
+        m_proofCacheKeys = new String[preprocessedVcs.size()];
+        if (m_proofCache != null) {
+            SortedMap<String, PExp> theorems = new TreeMap<>();
+            for (TheoremSymbol t : m_theoremSymbols) {
+                theorems.put(t.getModuleIdentifier() + "::" + t.getName(), t.getAssertion());
             }
-            else {
-                TheoremCongruenceClosureImpl t;
-                if (assertion.getTopLevelOperationName().equals("impliesB")) {
-
-                    //O.k. it seems we can safely assume the assertion (at the top level at least) will be an instance
-                    //of a function app (PApply) TODO: bp this(103) when m_theorems is size 7
-                    addGoalSearchingTheorem((PApply)assertion, eName);
-                    //first arg (.get(1)) of function implies, second arg (.get(2))
-                    t =
-                            new TheoremCongruenceClosureImpl(g, assertion,
-                                    assertion.getSubExpressions().get(1),
-                                    assertion.getSubExpressions().get(2),
-                                    assertion.getSubExpressions().get(2), true,
-                                    false, eName);
-                }
-                else {
-                    t =
-                            new TheoremCongruenceClosureImpl(g, assertion,
-                                    assertion, assertion, assertion, false,
-                                    false, eName);
-                }
-                m_theorems.add(t);
-                m_nonQuantifiedTheoremSymbols.addAll(t.getNonQuantifiedSymbols());
-                //addContrapositive(assertion, eName);
+            String settings = "timeout=" + timeout + ",steps=" + maxSteps;
+            //a single strategy other than the default searches differently too
+            if (!m_portfolio.equals(Collections.singletonList(ProofStrategy.DEFAULT))) {
+                settings += ",portfolio=" + m_portfolio;
             }
+            String setting = ProofCache.hashSetting(theorems, settings);
+            for (int i = 0; i < preprocessedVcs.size(); i++) {
+                m_proofCacheKeys[i] = ProofCache.key(
+                        canonicalForm(preprocessedVcs.get(i), antecedents.get(i), bank), setting);
+            }
+        }
+    }
+
+    private static void addWildcardTypes(Registry theorem, Set<MathClssftn> result) {
+        for (String s : theorem.getForAlls()) {
+            result.add(theorem.getTypeByIndex(theorem.getIndexForSymbol(s)));
+        }
+    }
+
+    // the vc as the prover will see it, in the form ProofCache keys it by
+    private String canonicalForm(VC vc, List<PExp> antecedents, TheoremBank bank) {
+        List<PExp> ants = new ArrayList<>();
+        for (PExp a : antecedents) {
+            ants.add(Utilities.replacePExp(a, m_typeGraph, m_z, m_n));
         }
-        if (n != null && z != null) {
-           sumConversion(n, z);
+        List<PExp> consequents = new ArrayList<>();
+        PExp consequent = m_typeGraph.formConjuncts(vc.getSequent().getRightFormulas());
+        if (consequent != null) {
+            for (PExp c : consequent.splitIntoConjuncts()) {
+                consequents.add(Utilities.replacePExp(c, m_typeGraph, m_z, m_n));
+            }
         }
-        m_results = "";
+        return ProofCache.canonicalForm(ants, consequents, bank.m_nonQuantifiedTheoremSymbols);
     }
 /*
     private VC buildTestVC1(Scope s, DumbMathClssftnHandler g, MathClssftn z, MathClssftn n) {
@@ -596,6 +666,61 @@ public final class CongruenceClassProver {
         return result;
     }*/
 
+    /**
+     * Builds the closures for the VCs at {@code positions}, all of which start off assuming the first {@code depth}
+     * antecedents, on top of {@code shared} (the closure of those). VCs from one assertive block mostly assume the
+     * same things, so antecedents more than one VC go on to assume in common are closed once into a closure of their
+     * own for those VCs to be built on in turn, rather than redoing the same merges for every VC.
+     */
+    private void buildClosures(@NotNull List<VC> vcs, @NotNull List<List<PExp>> antecedents,
+                               @NotNull List<Integer> positions, int depth,
+                               @Nullable VerificationConditionCongruenceClosureImpl shared,
+                               @NotNull VerificationConditionCongruenceClosureImpl[] closures) {
+        List<List<Integer>> groups = new ArrayList<>();
+        nextVC:
+        for (int p : positions) {
+            List<PExp> ants = antecedents.get(p);
+            if (ants.size() > depth) {
+                for (List<Integer> group : groups) {
+                    if (VerificationConditionCongruenceClosureImpl.sameAntecedent(ants.get(depth),
+                            antecedents.get(group.get(0)).get(depth))) {
+                        group.add(p);
+                        continue nextVC;
+                    }
+                }
+                groups.add(new ArrayList<>(Collections.singletonList(p)));
+            }
+            else {
+                closures[p] = new VerificationConditionCongruenceClosureImpl(m_typeGraph, vcs.get(p), m_z, m_n,
+                        shared);
+            }
+        }
+        for (List<Integer> group : groups) {
+            if (group.size() == 1) {
+                int p = group.get(0);
+                closures[p] = new VerificationConditionCongruenceClosureImpl(m_typeGraph, vcs.get(p), m_z, m_n,
+                        shared);
+                continue;
+            }
+            // go as far as the whole group agrees
+            List<PExp> first = antecedents.get(group.get(0));
+            int end = depth + 1;
+            extend:
+            for (; end < first.size(); end++) {
+                for (int p : group) {
+                    List<PExp> ants = antecedents.get(p);
+                    if (ants.size() <= end ||
+                            !VerificationConditionCongruenceClosureImpl.sameAntecedent(ants.get(end), first.get(end))) {
+                        break extend;
+                    }
+                }
+            }
+            VerificationConditionCongruenceClosureImpl groupShared = VerificationConditionCongruenceClosureImpl
+                    .forSharedAntecedents(m_typeGraph, first.subList(0, end), m_z, m_n, shared);
+            buildClosures(vcs, antecedents, group, end, groupShared, closures);
+        }
+    }
+
     private List<VC> preprocessVCs(List<VC> vcs) {
         List<VC> result = new ArrayList<>();
         for (VC vc : vcs) {
@@ -631,191 +756,394 @@ public final class CongruenceClassProver {
         return (MathClssftnWrappingSymbol)result;
     }
 
-    private void addEqualityTheorem(boolean matchLeft, PExp theorem, String thName) {
-        PExp lhs, rhs;
-        List<? extends PExp> subExps = theorem.getSubExpressions();
-        if (theorem instanceof PApply) {
-            subExps = ((PApply) theorem).getArguments();
-        }
-        if (matchLeft) {
-            lhs = subExps.get(0);
-            rhs = subExps.get(1);
-        }
-        else {
-            lhs = subExps.get(1);
-            rhs = subExps.get(0);
-        }
+    /**
+     * The theorems available to the VCs of this module, compiled into their congruence closure form (by the
+     * compiler's {@link TheoremLibrary}, so each is only compiled the once however many modules, or requests to a
+     * compiler server, use it). Nothing
+     * here changes while proving: matching a theorem against a VC goes by a cursor the VC's
+     * {@link TheoremIndex.View} keeps, so every VC, on any thread, uses this one bank.
+     */
+    private final class TheoremBank {
+
+        private final List<TheoremCongruenceClosureImpl> m_theorems = new ArrayList<>();
+        private final Set<String> m_nonQuantifiedTheoremSymbols = new HashSet<>();
+        private final Set<TheoremCongruenceClosureImpl> m_smallEndEquations = new HashSet<>();
+        private final List<TheoremCongruenceClosureImpl> m_goalSearchingTheorems = new ArrayList<>();
+        private final TheoremIndex m_index;
 
-        //if lhs is a PApply lhs.getSubexpressions will be at least size 1 (for function name exp portion) + at least
-        //one for an argument. If there were zero args, it wouldn't have been a PApply. It would've been built as a
-        //PSymbol. So in other words, I think this logic will still hold up.
-        if (lhs.getSubExpressions().size() > 0 || rhs.getSubExpressions().size() > 0) {
-            TheoremCongruenceClosureImpl t =
-                    new TheoremCongruenceClosureImpl(m_typeGraph, theorem, lhs, rhs, theorem, false, false, thName);
-            m_theorems.add(t);
-            if (lhs.getSymbolNames().size() < rhs.getSymbolNames().size()) {
-                m_smallEndEquations.add(t);
+        TheoremBank(TheoremLibrary library) {
+            for (TheoremSymbol e : m_theoremSymbols) {
+                add(library.get(e, m_typeGraph, m_z, m_n));
             }
+            if (m_n != null && m_z != null) {
+                add(library.getSumConversion(m_typeGraph, m_z, m_n));
+            }
+            m_index = new TheoremIndex(m_theorems);
+        }
+
+        private void add(TheoremLibrary.Entry e) {
+            m_theorems.addAll(e.m_theorems);
+            m_nonQuantifiedTheoremSymbols.addAll(e.m_nonQuantifiedSymbols);
+            m_smallEndEquations.addAll(e.m_smallEndEquations);
+            m_goalSearchingTheorems.addAll(e.m_goalSearchingTheorems);
         }
     }
 
-    // forall x. p(x) -> q(x) to
-    // forall x,y,_g.((q(x) = _g) )
-    //              -> (_g = (p(x) or _g))
-    // the idea is to find q(x) = g, then add all p(x,y) we can find to goal
-    private void addGoalSearchingTheorem(PApply theorem, String name) {
-        // search method will do a search for each current goal, replacing _g with goal in the binding map
-
-        //create a goal symbol
-        PSymbol goal = new PSymbol.PSymbolBuilder("_g")
-                .quantification(Quantification.UNIVERSAL)
-                .mathClssfctn(m_typeGraph.BOOLEAN)
-                .build();
+    /** How many VCs this prover would work on at once, left to itself (see {@code -proverThreads}). */
+    public int getWorkerCount() {
+        return numThreads;
+    }
 
-        //create q(x) = _g
-        PApply ant = new PApply.PApplyBuilder(Utilities.buildEqBName(m_typeGraph))
-                .arguments(theorem.getArguments().get(1), goal)
-                .applicationType(m_typeGraph.BOOLEAN)
-                .build();
+    /** How many threads each VC takes while it's being proved: one per strategy raced (see {@code -portfolio}). */
+    public int getStrategyCount() {
+        return m_portfolio.size();
+    }
 
-        //create p(x) or _g
-        PApply pOrG = new PApply.PApplyBuilder(Utilities.buildOrBName(m_typeGraph))
-                .arguments(theorem.getSubExpressions().get(1), goal)
-                .applicationType(m_typeGraph.BOOLEAN)
-                .build();
+    /** Has {@link #start} work on no more than {@code workers} (but at least one) VCs at once. */
+    public void limitWorkers(int workers) {
+        numThreads = Math.max(1, Math.min(numThreads, workers));
+    }
 
-        //create (p(x) or _g) = _g
-        PApply consequent = new PApply.PApplyBuilder(Utilities.buildEqBName(m_typeGraph))
-                .arguments(pOrG, goal)
-                .applicationType(m_typeGraph.BOOLEAN)
-                .build();
+    //START
 
-        TheoremCongruenceClosureImpl t =
-                new TheoremCongruenceClosureImpl(m_typeGraph, theorem, ant,
-                        consequent, consequent, true, false, name + "_goalSearch");
-        m_theorems.add(t);
+    public void start() throws IOException {
+        m_moduleBudget = new ProofBudget(proverListener, compiler.proverCanceller, moduleTimeout, 0);
+        if (m_portfolio.size() > 1) m_portfolioPool = Executors.newCachedThreadPool();
+        try (Writer proofFile = new BufferedWriter(new FileWriter(new File(proofFileName())))) {
+            proofFile.write("Proofs for " + m_scope.getModuleIdentifier() + " generated " + new Date() + "\n\n");
+            OrderedResults results = new OrderedResults(proofFile);
+            proveAll(results);
+            proofFile.write("\n");
+            totalTime = System.currentTimeMillis() - totalTime;
+            String summary = results.summary + "Elapsed time from construction: " + totalTime + " ms" + "\n";
+            if (m_proofCache != null) {
+                summary += "Proof cache hits: " + results.totals.proofCacheHits + " of " +
+                        results.totals.proofCacheLookups + " (" +
+                        Math.round(100 * results.totals.getProofCacheHitRate()) + "%)\n";
+            }
+            if (m_portfolio.size() > 1) {
+                List<String> wins = new ArrayList<>();
+                for (ProofStrategy s : m_portfolio) {
+                    wins.add(s.getName() + " " + results.portfolioWins.getOrDefault(s, 0));
+                }
+                summary += "Portfolio wins: " + String.join(", ", wins) + "\n";
+            }
+            String div = ProofTrace.divLine("Summary");
+            compiler.out.println(div + summary + div);
+        } finally {
+            if (m_portfolioPool != null) {
+                m_portfolioPool.shutdownNow();
+                m_portfolioPool = null;
+            }
+        }
     }
 
-    // Temporarily coding conversion theorem for natural / integer addition
-    // forall x,y:N, +N(x,y) = +Z(x,y) match left only
-    void sumConversion(MathClssftn n, MathClssftn z) {
+    // proves each VC, handing results over as they come
+    private void proveAll(OrderedResults results) throws IOException {
+        if (numThreads == 1 || m_ccVCs.size() < 2) {
+            for (int i = 0; i < m_ccVCs.size(); i++) {
+                results.finish(i, results.isSkipped(i) ? VCOutcome.SKIPPED : proveVC(i));
+            }
+        }
+        else {
+            ForkJoinPool pool = new ForkJoinPool(Math.min(numThreads, m_ccVCs.size()));
+            List<Callable<Void>> tasks = new ArrayList<>();
+            for (int i = 0; i < m_ccVCs.size(); i++) {
+                final int vcIndex = i;
+                tasks.add(() -> {
+                    results.finish(vcIndex, results.isSkipped(vcIndex) ? VCOutcome.SKIPPED : proveVC(vcIndex));
+                    return null;
+                });
+            }
+            try {
+                for (Future<Void> f : pool.invokeAll(tasks)) {
+                    f.get();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("prover interrupted", e);
+            } catch (ExecutionException e) {
+                throw new RuntimeException(e.getCause());
+            } finally {
+                pool.shutdownNow();
+            }
+        }
+        results.rethrow();
+    }
 
-        PSymbol x = new PSymbol.PSymbolBuilder("x")
-                .quantification(Quantification.UNIVERSAL)
-                .mathClssfctn(n)
-                .build();
+    /** Proves the {@code i}th VC on the calling thread. */
+    private VCOutcome proveVC(int i) {
+        VerificationConditionCongruenceClosureImpl vcc = m_ccVCs.get(i);
+        VCOutcome result = new VCOutcome();
+        CompilerStats.Timer timer = compiler.stats.start("prove", tr.getNameToken().getText());
+        long startTime = System.nanoTime();
+        ProofBudget budget = m_moduleBudget.child(timeout, maxSteps);
+        result.trace = new ProofTrace(m_traceLevel, vcc.m_name);
+        if (budget.check()) {
+            result.status = VerificationConditionCongruenceClosureImpl.STATUS.CANCELLED;
+        }
+        else {
+            ProofCache.Entry cached = m_proofCache != null ? m_proofCache.lookup(m_proofCacheKeys[i]) : null;
+            if (cached != null && (!m_replayProofs || cached.status != VerificationConditionCongruenceClosureImpl
+                    .STATUS.PROVED || replay(vcc, m_bank, cached.theorems, budget))) {
+                result.status = cached.status;
+                result.fromCache = true;
+                result.trace.cacheHit(cached, m_replayProofs &&
+                        cached.status == VerificationConditionCongruenceClosureImpl.STATUS.PROVED);
+            }
+            else {
+                List<String> applied = new ArrayList<>();
+                result.status = provePortfolio(vcc, m_bank, result, applied, budget);
+                if (m_proofCache != null && !budget.isCancelled()) {
+                    //without a timeout, the step limit alone decides where the prover gives up
+                    m_proofCache.record(m_proofCacheKeys[i], result.status, applied, timeout == 0 && maxSteps > 0);
+                }
+            }
+        }
+        result.delayMS = TimeUnit.MILLISECONDS.convert(System.nanoTime() - startTime, TimeUnit.NANOSECONDS);
+        timer.stop();
+        return result;
+    }
 
-        PSymbol y = new PSymbol.PSymbolBuilder("y")
-                .quantification(Quantification.UNIVERSAL)
-                .mathClssfctn(n)
-                .build();
+    /** What became of a single VC, and (unless it was skipped) the trace of how. */
+    private static final class VCOutcome {
+        static final VCOutcome SKIPPED = new VCOutcome();
 
-        PSymbol nPlusName = new PSymbol.PSymbolBuilder("+N")
-                .mathClssfctn(new MathFunctionClssftn(m_typeGraph, n, n, n))
-                .build();
-        //+N(x,y)
-        PApply nPlusApp = new PApply.PApplyBuilder(nPlusName)
-                .arguments(x, y)
-                .applicationType(n)
-                .build();
+        VerificationConditionCongruenceClosureImpl.STATUS status;
+        ProofTrace trace;
+        long delayMS;
+        boolean fromCache;
+        // the strategy whose outcome this is
+        ProofStrategy strategy;
+    }
 
-        PSymbol zPlusName = new PSymbol.PSymbolBuilder("+Z")
-                .mathClssfctn(new MathFunctionClssftn(m_typeGraph, z, z, z))
-                .build();
-        //+Z(x,y)
-        PApply zPlusApp = new PApply.PApplyBuilder(zPlusName)
-                .arguments(x, y)
-                .applicationType(z)
-                .build();
+    private static boolean isProof(VerificationConditionCongruenceClosureImpl.STATUS status) {
+        return status == VerificationConditionCongruenceClosureImpl.STATUS.PROVED ||
+                status == VerificationConditionCongruenceClosureImpl.STATUS.FALSE_ASSUMPTION;
+    }
 
-        //+N(x,y) =B +Z(x,y)
-        PApply eq = new PApply.PApplyBuilder(Utilities.buildEqBName(m_typeGraph))
-                .arguments(nPlusApp, zPlusApp)
-                .applicationType(m_typeGraph.BOOLEAN)
-                .build();
-        String name = "Integer / Natural Sum Conversion";
-        addEqualityTheorem(true, eq, name + "_left");
-        addEqualityTheorem(false, eq, name + "_right");
+    /**
+     * Proves {@code vcc} with every strategy in the portfolio at once, all with the theorems of {@code bank}: the
+     * first on {@code vcc} itself (on the calling thread), the others on copies of it, each with a share of
+     * {@code budget} of its own. The first strategy to prove it calls the rest off, and the outcome that counts is
+     * that of the first strategy listed to have proved it, or just the first strategy's if none did. The trace and
+     * theorems applied of whichever strategy that is end up in {@code result} and {@code applied}.
+     */
+    private VerificationConditionCongruenceClosureImpl.STATUS provePortfolio(
+            VerificationConditionCongruenceClosureImpl vcc, TheoremBank bank, VCOutcome result,
+            List<String> applied, ProofBudget budget) {
+        result.strategy = m_portfolio.get(0);
+        if (m_portfolio.size() == 1) {
+            return prove(vcc, bank, result.trace, applied, budget, result.strategy);
+        }
+        Race race = new Race(vcc, result.trace, applied, budget);
+        List<Future<?>> others = new ArrayList<>();
+        for (int s = 1; s < m_portfolio.size(); s++) {
+            final int strategy = s;
+            others.add(m_portfolioPool.submit(() -> race.run(strategy, bank)));
+        }
+        race.run(0, bank);
+        try {
+            for (Future<?> f : others) {
+                f.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("prover interrupted", e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        }
+        // of the strategies that got a proof in before being called off, the first listed counts
+        int w = 0;
+        while (w < race.statuses.length && !isProof(race.statuses[w])) w++;
+        if (w == race.statuses.length) w = 0;
+        result.strategy = m_portfolio.get(w);
+        result.trace = race.traces[w];
+        if (w != 0) {
+            applied.clear();
+            applied.addAll(race.applied.get(w));
+        }
+        return race.statuses[w];
     }
 
-    //START
+    /**
+     * The strategies of the portfolio racing on one VC, each with a VC, trace and budget of its own. The first to
+     * prove the VC calls the others off.
+     */
+    private final class Race {
+        final VerificationConditionCongruenceClosureImpl[] vcs =
+                new VerificationConditionCongruenceClosureImpl[m_portfolio.size()];
+        final ProofTrace[] traces = new ProofTrace[m_portfolio.size()];
+        final ProofBudget[] budgets = new ProofBudget[m_portfolio.size()];
+        final List<List<String>> applied = new ArrayList<>();
+        final VerificationConditionCongruenceClosureImpl.STATUS[] statuses =
+                new VerificationConditionCongruenceClosureImpl.STATUS[m_portfolio.size()];
+        private final AtomicInteger winner = new AtomicInteger(-1);
+
+        // the copies are all made here, before anything starts changing vcc
+        Race(VerificationConditionCongruenceClosureImpl vcc, ProofTrace trace, List<String> applied,
+             ProofBudget budget) {
+            for (int s = 0; s < m_portfolio.size(); s++) {
+                vcs[s] = s == 0 ? vcc : new VerificationConditionCongruenceClosureImpl(vcc);
+                traces[s] = s == 0 ? trace : new ProofTrace(m_traceLevel, vcc.m_name);
+                budgets[s] = budget.child(0, maxSteps);
+                this.applied.add(s == 0 ? applied : new ArrayList<>());
+            }
+        }
 
-    public void start() throws IOException {
+        void run(int s, TheoremBank bank) {
+            statuses[s] = prove(vcs[s], bank, traces[s], applied.get(s), budgets[s], m_portfolio.get(s));
+            if (isProof(statuses[s]) && winner.compareAndSet(-1, s)) {
+                for (int other = 0; other < budgets.length; other++) {
+                    if (other != s) budgets[other].cancel();
+                }
+            }
+        }
+    }
 
-        String summary = "";
-        int i = 0;
-        int numUnproved = 0;
-        for (VerificationConditionCongruenceClosureImpl vcc : m_ccVCs) {
-            //printVCEachStep = true;
-            //if (!vcc.m_name.equals("0_2")) continue;
-            long startTime = System.nanoTime();
-            String whyQuit = "";
-            // Skip proof loop
-            if (numTriesBeforeQuitting >= 0 && numUnproved >= numTriesBeforeQuitting) {
-                if (proverListener != null) {
-                    proverListener.vcResult(false, models[i], new Metrics(0, 0));
+    /**
+     * Applies the named theorems to {@code vcc} in turn, each until an instantiation of it changes something, to
+     * check a proof found in the cache still goes through. If it doesn't, {@code vcc} is left the way it was.
+     */
+    private boolean replay(VerificationConditionCongruenceClosureImpl vcc, TheoremBank bank, List<String> theorems,
+                           ProofBudget budget) {
+        vcc.checkpoint();
+        TheoremIndex.View view = bank.m_index.newView(vcc);
+        for (String name : theorems) {
+            boolean changed = false;
+            for (int p : bank.m_index.getTheoremsNamed(name)) {
+                TheoremCongruenceClosureImpl.Cursor t = view.cursorAt(p);
+                t.applyTo(budget);
+                for (PExpWithScore m = t.getNext(); m != null && !changed && !budget.step(); m = t.getNext()) {
+                    changed = vcc.getConjunct().addExpressionAndTrackChanges(m.m_theorem, budget, null);
                 }
-                summary += vcc.m_name + " skipped\n";
-                ++i;
-                continue;
+                if (changed) break;
+            }
+            if (!changed || vcc.isProved() != VerificationConditionCongruenceClosureImpl.STATUS.STILL_EVALUATING) {
+                break;
+            }
+        }
+        if (vcc.isProved() == VerificationConditionCongruenceClosureImpl.STATUS.PROVED) {
+            vcc.release();
+            return true;
+        }
+        vcc.rollback();
+        return false;
+    }
+
+    /**
+     * Reports VC outcomes strictly in VC order regardless of which worker finishes first. This way the summary, the
+     * {@code -numTries} cutoff, and the {@link ProverListener#vcResult} callbacks all see exactly the sequence a
+     * single threaded run would have produced; workers only ever get ahead of the cutoff speculatively, and anything
+     * they finish past it is reported as skipped.
+     */
+    private final class OrderedResults {
+        private final Writer proofFile;
+        private IOException writeFailure;
+        private final VCOutcome[] finished = new VCOutcome[m_ccVCs.size()];
+        private final StringBuilder summary = new StringBuilder();
+        private int next = 0;
+        private int numUnproved = 0;
+        private final Metrics totals = new Metrics(0, 0);
+        // how many VCs each strategy proved first, when there's a race (cached outcomes don't count)
+        private final Map<ProofStrategy, Integer> portfolioWins = new HashMap<>();
+        private volatile int skipFrom = numTriesBeforeQuitting == 0 ? 0 : Integer.MAX_VALUE;
+
+        OrderedResults(Writer proofFile) {
+            this.proofFile = proofFile;
+        }
+
+        boolean isSkipped(int i) {
+            return i >= skipFrom;
+        }
+
+        synchronized void finish(int i, @NotNull VCOutcome outcome) {
+            finished[i] = outcome;
+            while (next < finished.length && finished[next] != null) {
+                report(next, finished[next]);
+                finished[next++] = null;
             }
+        }
 
-            VerificationConditionCongruenceClosureImpl.STATUS proved = null;
-            if (isCancelled()) {
+        private void report(int i, VCOutcome outcome) {
+            VerificationConditionCongruenceClosureImpl vcc = m_ccVCs.get(i);
+            if (isSkipped(i)) {
+                if (proverListener != null) {
+                    synchronized (proverListener) {
+                        proverListener.vcResult(false, models[i], new Metrics(0, 0));
+                    }
+                }
+                summary.append(vcc.m_name).append(" skipped\n");
+                return;
+            }
+            VerificationConditionCongruenceClosureImpl.STATUS proved = outcome.status;
+            String whyQuit = "";
+            if (proved.equals(VerificationConditionCongruenceClosureImpl.STATUS.CANCELLED)) {
                 whyQuit += "Cancelled";
-                proved = VerificationConditionCongruenceClosureImpl.STATUS.CANCELLED;
+                numUnproved++;
+            }
+            else if (proved.equals(VerificationConditionCongruenceClosureImpl.STATUS.PROVED)) {
+                whyQuit += " Proved ";
+            }
+            else if (proved.equals(VerificationConditionCongruenceClosureImpl.STATUS.FALSE_ASSUMPTION)) {
+                whyQuit += " Proved (Assumption(s) false) ";
+            }
+            else if (proved.equals(VerificationConditionCongruenceClosureImpl.STATUS.STILL_EVALUATING)) {
+                whyQuit += " Out of theorems, or timed out ";
                 numUnproved++;
             }
             else {
-                proved = prove(vcc);
-                if (proved.equals(VerificationConditionCongruenceClosureImpl.STATUS.PROVED)) {
-                    whyQuit += " Proved ";
-                }
-                else if (proved.equals(VerificationConditionCongruenceClosureImpl.STATUS.FALSE_ASSUMPTION)) {
-                    whyQuit += " Proved (Assumption(s) false) ";
-                }
-                else if (proved.equals(VerificationConditionCongruenceClosureImpl.STATUS.STILL_EVALUATING)) {
-                    whyQuit += " Out of theorems, or timed out ";
-                    numUnproved++;
-                }
-                else {
-                    whyQuit += " Goal false "; // this isn't currently reachable
-                }
+                whyQuit += " Goal false "; // this isn't currently reachable
+            }
+            if (outcome.fromCache) {
+                whyQuit += "(cached) ";
+            }
+            else if (m_portfolio.size() > 1 && isProof(proved)) {
+                whyQuit += "(by " + outcome.strategy.getName() + ") ";
+                portfolioWins.merge(outcome.strategy, 1, Integer::sum);
+            }
+            writeTrace(outcome.trace);
+            summary.append(vcc.m_name).append(whyQuit).append(" time: ").append(outcome.delayMS).append(" ms\n");
+            Metrics metrics = new Metrics(outcome.delayMS, timeout);
+            if (m_portfolio.size() > 1 && !outcome.fromCache && isProof(proved)) {
+                metrics.proofStrategy = outcome.strategy.getName();
+            }
+            if (m_proofCache != null && proved != VerificationConditionCongruenceClosureImpl.STATUS.CANCELLED) {
+                metrics.proofCacheLookups = 1;
+                metrics.proofCacheHits = outcome.fromCache ? 1 : 0;
+                totals.accumulate(metrics);
             }
-            long endTime = System.nanoTime();
-            long delayNS = endTime - startTime;
-            long delayMS = TimeUnit.MILLISECONDS.convert(delayNS, TimeUnit.NANOSECONDS);
-            summary += vcc.m_name + whyQuit + " time: " + delayMS + " ms\n";
             if (proverListener != null) {
-                this.proverListener
-                        .vcResult(
-                                (proved == (VerificationConditionCongruenceClosureImpl.STATUS.PROVED) ||
-                                        (proved == VerificationConditionCongruenceClosureImpl.STATUS.FALSE_ASSUMPTION)),
-                                models[i], new Metrics(delayMS, timeout));
+                //the listener is shared by every module's prover, and modules are proved at the same time
+                synchronized (proverListener) {
+                    proverListener.vcResult(
+                            (proved == (VerificationConditionCongruenceClosureImpl.STATUS.PROVED) ||
+                                    (proved == VerificationConditionCongruenceClosureImpl.STATUS.FALSE_ASSUMPTION)),
+                            models[i], metrics);
+                }
+            }
+            if (numTriesBeforeQuitting >= 0 && numUnproved >= numTriesBeforeQuitting) {
+                skipFrom = i + 1;
             }
-            i++;
-
         }
-        totalTime = System.currentTimeMillis() - totalTime;
-        summary += "Elapsed time from construction: " + totalTime + " ms" + "\n";
-        String div = divLine("Summary");
-        summary = div + summary + div;
-        System.out.println(m_results + summary);
-        outputProofFile();
-    }
 
-    private String divLine(String label) {
-        if (label.length() > 78) {
-            label = label.substring(0, 77);
+        // the trace goes to the proof file, and is echoed on the compiler's stdout, as soon as it's this vc's turn
+        private void writeTrace(ProofTrace trace) {
+            if (writeFailure != null || trace.getLevel() == ProofTrace.Level.OFF) return;
+            try {
+                trace.writeTo(proofFile);
+                synchronized (compiler.out) {
+                    trace.writeTo(compiler.out);
+                }
+            } catch (IOException ioe) {
+                writeFailure = ioe;
+            }
         }
-        label = " " + label + " ";
-        char[] div = new char[80];
-        Arrays.fill(div, '=');
-        int start = 40 - label.length() / 2;
-        for (int i = start, j = 0; j < label.length(); ++i, ++j) {
-            div[i] = label.charAt(j);
+
+        /** Throws the exception (if any) writing the proof file failed with. */
+        synchronized void rethrow() throws IOException {
+            if (writeFailure != null) throw writeFailure;
         }
-        return new String(div) + "\n";
     }
 
     /* while not proved do
@@ -826,106 +1154,99 @@ public final class CongruenceClassProver {
                 add inserted expression to exclusion list
                 choose new top rank
      */
-    protected VerificationConditionCongruenceClosureImpl.STATUS prove(
-            VerificationConditionCongruenceClosureImpl vcc) {
-        ArrayList<TheoremCongruenceClosureImpl> theoremsForThisVC = new ArrayList<>();
-        theoremsForThisVC.addAll(m_theorems);
-        long startTime = System.currentTimeMillis();
-        long endTime = timeout + startTime;
+    private VerificationConditionCongruenceClosureImpl.STATUS prove(
+            VerificationConditionCongruenceClosureImpl vcc, TheoremBank bank, ProofTrace trace,
+            List<String> applied, ProofBudget budget, ProofStrategy strategy) {
+        TheoremIndex.View theoremsForThisVC = bank.m_index.newView(vcc);
+        if (!strategy.m_goalSearching) {
+            for (TheoremCongruenceClosureImpl t : bank.m_goalSearchingTheorems) {
+                theoremsForThisVC.remove(t);
+            }
+        }
+        boolean full = trace.isFull();
+        long startTime = full ? System.currentTimeMillis() : 0;
         Map<String, Integer> theoremAppliedCount = new HashMap<>();
         VerificationConditionCongruenceClosureImpl.STATUS status = vcc.isProved();
-        String div = divLine(vcc.m_name);
-        String theseResults = div + ("Before app of theorems: " + vcc + "\n");
+        trace.began(vcc);
 
         int iteration = 0;
+        //NOTE: DAN, DONE ON A PER VC BASIS. A thm prioritizer per vc.
+        TheoremPrioritizer rankedTheorems =
+                new TheoremPrioritizer(theoremsForThisVC, theoremAppliedCount, vcc,
+                        bank.m_nonQuantifiedTheoremSymbols, strategy.m_smallEndBias ? bank.m_smallEndEquations :
+                        Collections.<TheoremCongruenceClosureImpl>emptySet());
         // ++++++ Create new PQ for instantiated theorems
         chooseNewTheorem: while (status
                 .equals(VerificationConditionCongruenceClosureImpl.STATUS.STILL_EVALUATING)
-                && System.currentTimeMillis() <= endTime && !isCancelled()) {
-            long time_at_theorem_pq_creation = System.currentTimeMillis();
-            // ++++++ Creates new PQ with all the theorems
-
-            //NOTE: DAN, DONE ON A PER VC BASIS. A thm prioritizer per vc.
-            TheoremPrioritizer rankedTheorems =
-                    new TheoremPrioritizer(theoremsForThisVC,
-                            theoremAppliedCount, vcc,
-                            m_nonQuantifiedTheoremSymbols, m_smallEndEquations);
-            int max_Theorems_to_choose = 1;
+                && !budget.check()) {
+            // a round counts as a step even if nothing comes of it, so a step limit is all it takes to end the search
+            budget.step();
+            long time_at_theorem_pq_creation = full ? System.currentTimeMillis() : 0;
+            // ++++++ Re-ranks all the theorems (only rescoring those the last round could have affected)
+            rankedTheorems.refresh();
+            int max_Theorems_to_choose = strategy.m_width;
             int num_Theorems_chosen = 0;
-            while (!isCancelled() && !rankedTheorems.m_pQueue.isEmpty()
+            while (!budget.isExhausted() && !rankedTheorems.isEmpty()
                     && status
                     .equals(VerificationConditionCongruenceClosureImpl.STATUS.STILL_EVALUATING)
-                    && (num_Theorems_chosen < max_Theorems_to_choose || rankedTheorems.m_pQueue
-                    .peek().m_score <= 1)) {
+                    && (num_Theorems_chosen < max_Theorems_to_choose || rankedTheorems.peekScore() <= strategy.m_threshold)) {
                 // +++++++ Chooses top of uninstantiated theorem PQ
-                long time_at_selection = System.currentTimeMillis();
-                int theoremScore = rankedTheorems.m_pQueue.peek().m_score;
+                long time_at_selection = full ? System.currentTimeMillis() : 0;
+                int theoremScore = rankedTheorems.peekScore();
                 TheoremCongruenceClosureImpl cur = rankedTheorems.poll();
+                budget.step();
                 // Mark as used
                 int count = 0;
                 if (theoremAppliedCount.containsKey(cur.m_name)) count = theoremAppliedCount.get(cur.m_name);
                 theoremAppliedCount.put(cur.m_name, ++count);
                 // We are using it, even if it makes no difference
-                int instThMatches = cur.applyTo(vcc, endTime);
-                PExpWithScore tMatch = cur.getNext();
+                TheoremCongruenceClosureImpl.Cursor matches = theoremsForThisVC.cursorFor(cur);
+                int instThMatches = matches.applyTo(budget);
+                PExpWithScore tMatch = matches.getNext();
                 if (tMatch != null) {
-                    String substitutionMade = "";
-                    int innerctr = 0;
-                    long t2 = System.currentTimeMillis();
-                    substitutionMade =
-                            vcc.getConjunct().addExpressionAndTrackChanges(
-                                    tMatch.m_theorem, endTime,
-                                    tMatch.m_theoremDefinitionString);
+                    ProofTrace.Merges merges = full ? new ProofTrace.Merges() : null;
+                    boolean substitutionMade =
+                            vcc.getConjunct().addExpressionAndTrackChanges(tMatch.m_theorem, budget, merges);
                     if (cur.m_noQuants) {
                         theoremsForThisVC.remove(cur);
                     }
-                    if (!substitutionMade.equals("")) {
-                        long curTime = System.currentTimeMillis();
-                        theseResults +=
-                                "Iter:"
-                                        + iteration++
-                                        + "."
-                                        + (innerctr++)
-                                        + " Iter Time: "
-                                        + (curTime - time_at_theorem_pq_creation)
-                                        + " Search Time for this theorem: "
-                                        + (curTime - time_at_selection)
-                                        + " Elapsed Time: "
-                                        + (curTime - startTime) + "\n["
-                                        + theoremScore + "]" + cur.m_name
-                                        + "\n" + tMatch.toString() + "\t"
-                                        + substitutionMade + "\n\n";
-                        if (printVCEachStep) theseResults += vcc.toString();
+                    if (substitutionMade) {
+                        applied.add(cur.m_name);
+                        if (full) {
+                            long curTime = System.currentTimeMillis();
+                            trace.applied(iteration, curTime - time_at_theorem_pq_creation,
+                                    curTime - time_at_selection, curTime - startTime, theoremScore, cur.m_name,
+                                    tMatch, merges, printVCEachStep ? vcc : null);
+                        }
+                        else {
+                            trace.applied(iteration, 0, 0, 0, theoremScore, cur.m_name, null, null, null);
+                        }
+                        iteration++;
                         status = vcc.isProved();
                         num_Theorems_chosen++;
                         //continue chooseNewTheorem;
                     }
-                    if (substitutionMade == "") {
-                        theseResults +=
-                                "Emptied queue for "
-                                        + cur.m_name
-                                        + " with no new results ["
-                                        + (System.currentTimeMillis() - time_at_selection)
-                                        + "ms]\n\n";
+                    else if (full) {
+                        trace.nothingNew(cur.m_name, System.currentTimeMillis() - time_at_selection, true);
                     }
                 }
-                else {
-                    theseResults +=
-                            "Could not find any matches for "
-                                    + cur.m_name
-                                    + "["
-                                    + (System.currentTimeMillis() - time_at_selection)
-                                    + "ms]\n\n";
+                else if (full) {
+                    trace.nothingNew(cur.m_name, System.currentTimeMillis() - time_at_selection, false);
                 }
             }
         }
-        m_results += theseResults + div;
-        return vcc.isProved();
+        status = vcc.isProved();
+        trace.finished(status, budget.getSteps());
+        return status;
 
     }
 
+    /**
+     * True once the listener asks us to stop or this module has used up its {@code -moduleTimeout} budget; VCs we
+     * haven't finished by then are reported as cancelled.
+     */
     public boolean isCancelled() {
-        return proverListener != null && proverListener.isCancelled();
+        return m_moduleBudget.check();
     }
 
 
@@ -935,13 +1256,4 @@ public final class CongruenceClassProver {
         String tempFilePath = filePath.substring(0, temp);
         return tempFilePath + ".proof";
     }
-
-    private void outputProofFile() throws IOException {
-        FileWriter w = new FileWriter(new File(proofFileName()));
-        w.write("Proofs for " + m_scope.getModuleIdentifier() + " generated " + new Date() + "\n\n");
-        w.write(m_results);
-        w.write("\n");
-        w.flush();
-        w.close();
-    }
 }
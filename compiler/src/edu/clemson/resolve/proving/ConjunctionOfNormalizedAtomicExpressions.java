@@ -6,19 +6,30 @@ import edu.clemson.resolve.proving.absyn.PSymbol;
 import edu.clemson.resolve.semantics.MathClssftn;
 import edu.clemson.resolve.semantics.MathFunctionClssftn;
 import edu.clemson.resolve.semantics.Quantification;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.util.*;
 
 public class ConjunctionOfNormalizedAtomicExpressions {
 
     private final Registry m_registry;
-    protected final Map<NormalizedAtomicExpression, NormalizedAtomicExpression> m_expSet;
-    protected long m_timeToEnd = -1;
+    // the atoms of the conjunction, and where each symbol is used in them
+    protected final AtomStore m_atoms;
+    protected final UseIndex m_uses;
+    // what merges are counted against while a theorem instantiation is added; null otherwise
+    @Nullable
+    private ProofBudget m_budget = null;
     protected boolean m_evaluates_to_false = false;
     private int f_num = 0;
-    private String m_current_justification = "";
-    protected final Map<Integer, Map<Integer, Set<NormalizedAtomicExpression>>> m_useMap;
+    // where merges are noted while a theorem instantiation is added for a full trace; null otherwise
+    @Nullable
+    private ProofTrace.Merges m_merges = null;
     protected final VerificationConditionCongruenceClosureImpl m_VC;
+    // an atom being looked up, so that doesn't take an array of its own
+    private int[] m_key = new int[8];
+    // the atoms a symbol being merged away was used in
+    private int[] m_merging = new int[16];
 
     /**
      * @param registry the Registry symbols contained in the conjunction will
@@ -27,32 +38,67 @@ public class ConjunctionOfNormalizedAtomicExpressions {
     public ConjunctionOfNormalizedAtomicExpressions(Registry registry,
                                                     VerificationConditionCongruenceClosureImpl vc) {
         m_registry = registry;
-        m_expSet = new HashMap<NormalizedAtomicExpression, NormalizedAtomicExpression>(2048, .5f);
-        m_useMap = new HashMap<Integer, Map<Integer, Set<NormalizedAtomicExpression>>>(2048, .5f);
+        m_atoms = new AtomStore(vc != null ? 1024 : 16);
+        m_uses = new UseIndex(vc != null ? 1024 : 16);
         m_VC = vc; // null if this is a theorem
     }
 
+    /**
+     * A copy of {@code other} over {@code registry}, itself a copy of {@code other}'s registry, for {@code vc} to go
+     * on adding to. Atoms keep their ids.
+     */
+    protected ConjunctionOfNormalizedAtomicExpressions(ConjunctionOfNormalizedAtomicExpressions other,
+                                                       Registry registry,
+                                                       VerificationConditionCongruenceClosureImpl vc) {
+        m_registry = registry;
+        m_atoms = new AtomStore(other.m_atoms);
+        m_uses = new UseIndex(other.m_uses);
+        m_VC = vc;
+        m_evaluates_to_false = other.m_evaluates_to_false;
+        f_num = other.f_num;
+    }
+
     protected int size() {
-        return m_expSet.size();
+        return m_atoms.size();
+    }
+
+    /**
+     * Starts a checkpoint that {@link #rollback()} can later bring this conjunction, its registry and its VC's goals
+     * back to; returns how many checkpoints are now open. Checkpoints nest.
+     */
+    protected int checkpoint() {
+        return m_registry.m_trail.checkpoint();
+    }
+
+    /** Undoes everything added or merged since the most recent checkpoint, and closes it. */
+    protected void rollback() {
+        m_registry.m_trail.rollback();
     }
 
-    protected void clear() {
-        m_expSet.clear();
+    /** Closes the most recent checkpoint, keeping what was done since. */
+    protected void release() {
+        m_registry.m_trail.release();
     }
 
     protected Registry getRegistry() {
         return m_registry;
     }
 
-    protected String addExpressionAndTrackChanges(PExp expression,
-                                                  long timeToEnd, String justification) {
-        m_timeToEnd = timeToEnd;
-        m_timeToEnd = Long.MAX_VALUE;
-        m_current_justification = justification;
-        String rString = "";
-        rString += addExpression(expression);
-        m_current_justification = "";
-        return rString;
+    /**
+     * Adds {@code expression}, counting each merge it leads to as a step of {@code budget} (and noting it in
+     * {@code merges}, if given), and returns whether that changed anything. The merges are seen through even if the
+     * budget runs out partway: stopping in the middle would leave the use map out of step with the registry.
+     */
+    protected boolean addExpressionAndTrackChanges(PExp expression, @NotNull ProofBudget budget,
+                                                   @Nullable ProofTrace.Merges merges) {
+        m_budget = budget;
+        m_merges = merges;
+        try {
+            return addExpression(expression);
+        } finally {
+            m_budget = null;
+            m_merges = null;
+        }
     }
 
     protected PExp find(PExp exp) {
@@ -86,15 +132,16 @@ public class ConjunctionOfNormalizedAtomicExpressions {
         String op =
                 m_registry.getRootSymbolForSymbol(exp.getTopLevelOperationName());
         if (!irreducable && !op.equals("")) {
-            int[] ia;
-            ia = new int[args.size() + 1];
+            int width = args.size() + 1;
+            int[] ia = key(width);
             ia[0] = m_registry.getIndexForSymbol(op);
-            for (int i = 1; i < ia.length; ++i) {
+            for (int i = 1; i < width; ++i) {
                 ia[i] = m_registry.getIndexForSymbol(args.get(i - 1).getTopLevelOperationName());
             }
-            NormalizedAtomicExpression na = new NormalizedAtomicExpression(getRegistry(), ia);
-            if (m_expSet.containsKey(na) && m_expSet.get(na).readRoot() >= 0) {
-                int r = m_expSet.get(na).readRoot();
+            normalize(ia, width);
+            int na = m_atoms.find(ia, width);
+            if (na >= 0 && m_atoms.root(na) >= 0) {
+                int r = m_atoms.root(na);
                 String rs = m_registry.getSymbolForIndex(r);
                 return new PSymbol.PSymbolBuilder(rs).mathClssfctn(m_registry.getTypeByIndex(r)).build();
             }
@@ -117,10 +164,10 @@ public class ConjunctionOfNormalizedAtomicExpressions {
         }
     }
 
-    // Top level
-    protected String addExpression(PExp expression) {
-        if (m_evaluates_to_false || (m_timeToEnd > 0 && System.currentTimeMillis() > m_timeToEnd)) {
-            return "";
+    // Top level; returns whether any merges were made (or a contradiction found)
+    protected boolean addExpression(PExp expression) {
+        if (m_evaluates_to_false) {
+            return false;
         }
         String name = expression.getTopLevelOperationName();
 
@@ -130,21 +177,19 @@ public class ConjunctionOfNormalizedAtomicExpressions {
             return mergeOperators(lhs, rhs);
         }
         else if ((name.equals("andB") || name.equals("∧B")) && expression instanceof PApply) {
-            String r = "";
-            r += addExpression(expression.getSubExpressions().get(1));
-            r += addExpression(expression.getSubExpressions().get(2));
-            return r;
+            boolean r = addExpression(expression.getSubExpressions().get(1));
+            return addExpression(expression.getSubExpressions().get(2)) | r;
         }
         else {
             MathClssftn type = expression.getMathClssftn();
             int root = addFormula(expression);
             if (m_evaluates_to_false)
-                return "";
+                return false;
             if (type.isBoolean()) {
                 return mergeOperators(m_registry.getIndexForSymbol("true"), root);
             }
         }
-        return "";
+        return false;
     }
 
     // adds a particular symbol to the registry
@@ -152,7 +197,8 @@ public class ConjunctionOfNormalizedAtomicExpressions {
     //NOTE: Changed the parameter here to PExp to facilitate both PSymbol and PApply
     protected int addPsymbol(PExp ps) {
         String name = ps.getTopLevelOperationName();
-        if (m_registry.m_symbolToIndex.containsKey(name)) return m_registry.m_symbolToIndex.get(name);
+        Integer existing = m_registry.m_symbolToIndex.get(name);
+        if (existing != null) return existing;
         MathClssftn type = ps.getMathClssftn();
         Registry.Usage usage = Registry.Usage.SINGULAR_VARIABLE;
         if (ps.isLiteral()) {
@@ -204,8 +250,8 @@ public class ConjunctionOfNormalizedAtomicExpressions {
             else {*/
             // insert =(lhs,rhs) = someNewRoot
             int questEq = m_registry.getIndexForSymbol("=B");
-            NormalizedAtomicExpression pred =
-                    new NormalizedAtomicExpression(getRegistry(), new int[] { questEq, lhs, rhs });
+            int[] pred = new int[] { questEq, lhs, rhs };
+            normalize(pred, pred.length);
             return addAtomicFormula(pred);
             // }
         }
@@ -238,42 +284,44 @@ public class ConjunctionOfNormalizedAtomicExpressions {
             int root = addFormula(p);
             ne[pos++] = root;
         }
-        NormalizedAtomicExpression newExpr =
-                new NormalizedAtomicExpression(getRegistry(), ne);
         if (m_evaluates_to_false) {
             return -1;
         }
-        newExpr = newExpr.rootOps();
-        return addAtomicFormula(newExpr);
+        for (int i = 0; i < ne.length; ++i) {
+            ne[i] = m_registry.findAndCompress(ne[i]);
+        }
+        normalize(ne, ne.length);
+        return addAtomicFormula(ne);
     }
 
     /**
-     * @param atomicFormula one sided expression. (= new root) is appended and
+     * @param atomicFormula one sided expression, normalized: operator and arguments, all roots, and the arguments
+     *                      in order if the operator is commutative. (= new root) is appended and
      *                      expression is inserted if no match of the side is found. Otherwise
      *                      current root is returned.
      * @return current integer value of root symbol that represents the input.
      */
-    private int addAtomicFormula(NormalizedAtomicExpression atomicFormula) {
+    private int addAtomicFormula(int[] atomicFormula) {
         // Return root if atomic formula is present
-        if (m_expSet.containsKey(atomicFormula)) return m_expSet.get(atomicFormula).readRoot();
+        int existing = m_atoms.find(atomicFormula, atomicFormula.length);
+        if (existing >= 0) return m_atoms.root(existing);
         // no such formula exists
-        MathClssftn typeOfFormula = m_registry.getTypeByIndex(atomicFormula.readPosition(0));
+        MathClssftn typeOfFormula = m_registry.getTypeByIndex(atomicFormula[0]);
         // this is the full type and is necessarily a function type
 
         MathClssftn rangeType = ((MathFunctionClssftn) typeOfFormula).getRangeClssftn();
         String symName =
-                m_registry.getSymbolForIndex(atomicFormula.readPosition(0));
+                m_registry.getSymbolForIndex(atomicFormula[0]);
         assert rangeType != null : symName + " has null type";
         // if any of the symbols in atomicFormula are variables (FORALL) make created symbol a variable
         boolean isVar = false;
-        if (atomicFormula.hasVarOps()) {
+        if (hasVarOps(atomicFormula)) {
             isVar = true;
         }
         int rhs = m_registry.makeSymbol(rangeType, isVar);
-        atomicFormula.writeToRoot(rhs);
+        int atom = addExprToSet(atomicFormula, atomicFormula.length, rhs);
         Stack<Integer> hTank = new Stack<Integer>();
-        applyBuiltInLogic(atomicFormula, hTank);
-        addExprToSet(atomicFormula);
+        applyBuiltInLogic(atom, hTank);
         while (!hTank.isEmpty()) {
             mergeOperators(hTank.pop(), hTank.pop());
         }
@@ -281,28 +329,29 @@ public class ConjunctionOfNormalizedAtomicExpressions {
 
     }
 
-    protected String mergeOperators(int a, int b) {
+    // returns whether any merges were made (or a contradiction found)
+    protected boolean mergeOperators(int a, int b) {
         int t = m_registry.getIndexForSymbol("true");
         int f = m_registry.getIndexForSymbol("false");
 
-        String rString = "";
-        if (m_evaluates_to_false
-                || (m_timeToEnd > 0 && System.currentTimeMillis() > m_timeToEnd)) {
-            return rString;
+        boolean merged = false;
+        if (m_evaluates_to_false) {
+            return false;
         }
         a = m_registry.findAndCompress(a);
         b = m_registry.findAndCompress(b);
         if (a == b)
-            return "";
+            return false;
+        int firstMerge = m_merges != null ? m_merges.size() : 0;
         Stack<Integer> holdingTank = new Stack<Integer>();
         holdingTank.push(a);
         holdingTank.push(b);
 
         while (holdingTank != null && !holdingTank.empty()) {
-            if (m_evaluates_to_false
-                    || (m_timeToEnd > 0 && System.currentTimeMillis() > m_timeToEnd)) {
-                return rString;
+            if (m_evaluates_to_false) {
+                return merged;
             }
+            if (m_budget != null) m_budget.step();
             int opB = m_registry.findAndCompress(holdingTank.pop());
             int opA = m_registry.findAndCompress(holdingTank.pop());
             if (opA == opB)
@@ -316,23 +365,25 @@ public class ConjunctionOfNormalizedAtomicExpressions {
             }
             if ((opA == t && opB == f)) {
                 m_evaluates_to_false = true;
-                return "contradiction detected " + rString;
+                if (m_registry.m_trail.isRecording()) m_registry.m_trail.record(() -> m_evaluates_to_false = false);
+                if (m_merges != null) m_merges.contradiction(firstMerge);
+                return true;
+            }
+            merged = true;
+            if (m_merges != null) {
+                m_merges.merged(m_registry.getSymbolForIndex(opA), m_registry.getSymbolForIndex(opB));
             }
-            rString +=
-                    m_registry.getSymbolForIndex(opA) + "/"
-                            + m_registry.getSymbolForIndex(opB) + ",";
             Stack<Integer> mResult = mergeOnlyArgumentOperators(opA, opB);
             String bstring = m_registry.getSymbolForIndex(opB);
             if (m_VC != null && m_VC.m_goal.contains(bstring)) {
-                m_VC.m_goal.remove(bstring);
-                m_VC.m_goal.add(m_registry.getSymbolForIndex(opA));
+                m_VC.replaceGoal(bstring, m_registry.getSymbolForIndex(opA));
             }
             m_registry.substitute(opA, opB);
             if (mResult != null)
                 holdingTank.addAll(mResult);
 
         }
-        return rString;
+        return merged;
     }
 
     // need to choose literals over vars for theorem matching purposes
@@ -348,63 +399,86 @@ public class ConjunctionOfNormalizedAtomicExpressions {
         return a < b ? a : b;
     }
 
-    private void addMapUse(int symk, NormalizedAtomicExpression nae) {
-        if (!m_useMap.containsKey(symk))
-            m_useMap.put(symk,
-                    new HashMap<Integer, Set<NormalizedAtomicExpression>>());
-        Map<Integer, Set<NormalizedAtomicExpression>> posMapRef =
-                m_useMap.get(symk);
-        int[] pos = nae.getPositionsFor(symk);
-        for (int i = 0; i < pos.length; ++i) {
-            int p = pos[i];
-            if (!posMapRef.containsKey(p))
-                posMapRef.put(p, new HashSet<NormalizedAtomicExpression>());
-            posMapRef.get(p).add(nae);
+    // whether any of the symbols are (or stand for) quantified variables
+    private boolean hasVarOps(int[] atom) {
+        for (int i = 0; i < atom.length; ++i) {
+            String s = m_registry.getSymbolForIndex(atom[i]);
+            if (s.startsWith("¢v")) {
+                return true;
+            }
+            Registry.Usage us = m_registry.getUsage(s);
+            if (us == Registry.Usage.FORALL
+                    || us == Registry.Usage.HASARGS_FORALL) {
+                return true;
+            }
         }
+        return false;
     }
 
-    private void addExprToSet(NormalizedAtomicExpression nae) {
-        for (int i : nae.getOpIds()) {
-            addMapUse(i, nae);
+    // puts the arguments of a commutative operator in order, the way NormalizedAtomicExpression does
+    private void normalize(int[] atom, int width) {
+        if (m_registry.isCommutative(atom[0])) {
+            Arrays.sort(atom, 1, width);
         }
-        int root = nae.readRoot();
+    }
+
+    // m_key, with room for an atom of the given width
+    private int[] key(int width) {
+        if (m_key.length < width) m_key = new int[width * 2];
+        return m_key;
+    }
+
+    private void addMapUse(int symk, int position, int atom) {
+        if (m_uses.add(symk, position, atom) && m_registry.m_trail.isRecording()) {
+            m_registry.m_trail.record(() -> m_uses.remove(symk, position, atom));
+        }
+    }
+
+    // adds the atom, with root, to the conjunction; returns its id
+    private int addExprToSet(int[] key, int width, int root) {
         assert root >= 0 : "adding unrooted expression to conj";
-        addMapUse(root, nae);
-        m_expSet.put(nae, nae);
+        int atom = m_atoms.add(key, width, root);
+        if (m_registry.m_trail.isRecording()) m_registry.m_trail.record(() -> m_atoms.kill(atom));
+        for (int p = 0; p < width; ++p) {
+            addMapUse(key[p], p, atom);
+        }
+        addMapUse(root, UseIndex.ROOT, atom);
+        return atom;
     }
 
-    private void removeMapUse(int symK, NormalizedAtomicExpression nae) {
-        if (m_useMap.containsKey(symK)) {
-            m_useMap.get(symK).remove(nae);
+    private void removeMapUse(int symK, int position, int atom) {
+        if (m_uses.remove(symK, position, atom) && m_registry.m_trail.isRecording()) {
+            m_registry.m_trail.record(() -> m_uses.add(symK, position, atom));
         }
     }
 
-    private void removeExprFromSet(NormalizedAtomicExpression nae) {
-        for (int i : nae.getOpIds()) {
-            removeMapUse(i, nae);
+    private void removeExprFromSet(int atom) {
+        for (int p = 0; p < m_atoms.width(atom); ++p) {
+            removeMapUse(m_atoms.read(atom, p), p, atom);
         }
-        removeMapUse(nae.readRoot(), nae);
-        m_expSet.remove(nae);
+        removeMapUse(m_atoms.root(atom), UseIndex.ROOT, atom);
+        m_atoms.kill(atom);
+        if (m_registry.m_trail.isRecording()) m_registry.m_trail.record(() -> m_atoms.revive(atom));
     }
 
-    private void applyBuiltInLogic(NormalizedAtomicExpression nm,
+    private void applyBuiltInLogic(int nm,
                                    Stack<Integer> tank) {
         // turn off if this is not part of a VC
         if (m_VC == null)
             return;
-        int arity = nm.getArity();
+        int arity = m_atoms.arity(nm);
         if (arity != 2)
             return;
-        String op = nm.readSymbol(0);
-        int arg1 = nm.readPosition(1);
-        int rhs = nm.readRoot();
+        String op = m_registry.getSymbolForIndex(m_atoms.read(nm, 0));
+        int arg1 = m_atoms.read(nm, 1);
+        int rhs = m_atoms.root(nm);
         if (rhs < 0)
             return;
         int tr = m_registry.getIndexForSymbol("true");
         int fl = m_registry.getIndexForSymbol("false");
         // =,true,false,not.  recorded first in reg. logic relation args (and, or, =) are ordered.
 
-        int arg2 = nm.readPosition(2);
+        int arg2 = m_atoms.read(nm, 2);
         // arity 2 guard: return if all constant
         if ((arg1 == tr || arg1 == fl) && (arg2 == tr || arg2 == fl)
                 && (rhs == tr || rhs == fl))
@@ -556,58 +630,50 @@ public class ConjunctionOfNormalizedAtomicExpressions {
 
     }
 
-    protected Set<NormalizedAtomicExpression> getUses(int symk) {
-        HashSet<NormalizedAtomicExpression> rSet =
-                new HashSet<NormalizedAtomicExpression>();
-        Map<Integer, Set<NormalizedAtomicExpression>> usesByPos =
-                m_useMap.get(symk);
-        for (Map.Entry<Integer, Set<NormalizedAtomicExpression>> me : usesByPos
-                .entrySet()) {
-            rSet.addAll(me.getValue());
-        }
-        return rSet;
-    }
-
-    protected Set<NormalizedAtomicExpression> getUses(int symk, int pos) {
-        HashSet<NormalizedAtomicExpression> rSet =
-                new HashSet<NormalizedAtomicExpression>();
-        rSet.addAll(m_useMap.get(symk).get(pos));
-        return rSet;
-    }
-
     // Return list of modified predicates by their position. Only these can cause new merges.
     // b is replaced by a
     protected Stack<Integer> mergeOnlyArgumentOperators(int a, int b) {
-        if (m_evaluates_to_false
-                || (m_timeToEnd > 0 && System.currentTimeMillis() > m_timeToEnd)) {
+        if (m_evaluates_to_false) {
             return null;
         }
-        if (m_useMap.get(b) == null) {
+        UseIndex.Postings bUsesByPosition = m_uses.detach(b);
+        if (bUsesByPosition == null) {
             return null;
         }
+        UndoTrail trail = m_registry.m_trail;
+        if (trail.isRecording()) trail.record(() -> m_uses.attach(b, bUsesByPosition));
         Stack<Integer> coincidentalMergeHoldingTank = new Stack<Integer>();
-        // todo: make sure m_useMap reflects root usage of b
-        Set<NormalizedAtomicExpression> bUses = getUses(b);
-        m_useMap.remove(b);
-        nextUse: for (NormalizedAtomicExpression nm : bUses) {
-            int oldRoot = nm.readRoot();
+        if (m_merging.length < UseIndex.count(bUsesByPosition)) {
+            m_merging = new int[UseIndex.count(bUsesByPosition) * 2];
+        }
+        int[] bUses = m_merging;
+        int numUses = UseIndex.atoms(bUsesByPosition, bUses);
+        for (int u = 0; u < numUses; ++u) {
+            int nm = bUses[u];
+            int oldRoot = m_atoms.root(nm);
             assert oldRoot > 0;
-            NormalizedAtomicExpression ne = nm.replaceOperator(b, a); // also changes root if b
-            if (nm == ne) {
+            if (!m_atoms.uses(nm, b)) {
                 // no change in atom, so only root is b
                 assert oldRoot == b;
-                addMapUse(a, nm);
+                m_atoms.setRoot(nm, a);
+                if (trail.isRecording()) trail.record(() -> m_atoms.setRoot(nm, oldRoot));
+                addMapUse(a, UseIndex.ROOT, nm);
                 applyBuiltInLogic(nm, coincidentalMergeHoldingTank);
-
             }
             else {
-                assert ne != nm;
-                assert ne.hashCode() != nm.hashCode();
+                // the atom with b replaced by a
+                int width = m_atoms.width(nm);
+                int[] ne = key(width);
+                for (int i = 0; i < width; ++i) {
+                    int s = m_atoms.read(nm, i);
+                    ne[i] = s == b ? a : s;
+                }
+                normalize(ne, width);
                 removeExprFromSet(nm);
                 // Check for existence of the rewritten atom in conj. Add new cong if roots are different.
-                if (m_expSet.containsKey(ne)) {
-                    ne = m_expSet.get(ne);
-                    int neroot = ne.readRoot();
+                int existing = m_atoms.find(ne, width);
+                if (existing >= 0) {
+                    int neroot = m_atoms.root(existing);
                     if (oldRoot != neroot
                             && !((oldRoot == a || oldRoot == b) && (neroot == a || neroot == b))) {
                         // dont put a and b on stack, already doing a/b
@@ -616,57 +682,29 @@ public class ConjunctionOfNormalizedAtomicExpressions {
                     }
                 }
                 else {
-                    ne.writeToRoot(oldRoot);
-                    addExprToSet(ne);
-                    applyBuiltInLogic(ne, coincidentalMergeHoldingTank);
+                    int added = addExprToSet(ne, width, oldRoot == b ? a : oldRoot);
+                    applyBuiltInLogic(added, coincidentalMergeHoldingTank);
                 }
             }
         }
         return coincidentalMergeHoldingTank;
     }
 
-    protected Set<NormalizedAtomicExpression> multiKeyUseMapSearch(
-            Set<String> keys) {
-
-        Set<NormalizedAtomicExpression> resultSet =
-                new HashSet<NormalizedAtomicExpression>();
-        boolean firstkey = true;
-        for (String k : keys) {
-            int rKey = m_registry.getIndexForSymbol(k);
-            if (!m_useMap.containsKey(rKey)) {
-                return null;
-            }
-            Set<NormalizedAtomicExpression> tResults = getUses(rKey);
-            if (tResults == null || tResults.isEmpty())
-                return null;
-            if (firstkey) {
-                resultSet = tResults;
-                firstkey = false;
-            }
-            else { // result is intersection
-                resultSet.retainAll(tResults);
-            }
-        }
-        return resultSet;
-    }
-
-    protected Set<java.util.Map<String, String>> getMatchesForOverrideSet(NormalizedAtomicExpression expr,
-                                                                          Set<Map<String, String>> foreignSymbolOverrideSet) {
-        Set<java.util.Map<String, String>> rSet = new HashSet<Map<String, String>>();
-        for (Map<String, String> fs_m : foreignSymbolOverrideSet) {
-            Set<java.util.Map<String, String>> results = getBindingsForSearchExpr(expr, fs_m);
-            if (results != null && results.size() != 0)
-                rSet.addAll(results);
+    protected BindingSet getMatchesForOverrideSet(NormalizedAtomicExpression expr, BindingSet foreignSymbolOverrideSet,
+                                                  BindingSlots slots) {
+        BindingSet rSet = new BindingSet();
+        for (int i = 0; i < foreignSymbolOverrideSet.size(); ++i) {
+            getBindingsForSearchExpr(expr, foreignSymbolOverrideSet.get(i), slots, rSet);
         }
         return rSet;
     }
 
-    protected Set<Map<String, String>> getBindingsForSearchExpr(NormalizedAtomicExpression expr,
-                                                                Map<String, String> foreignSymbolOverride) {
-        int[] searchKeys = expr.rootedLiterals(foreignSymbolOverride, m_registry);
-        if (searchKeys == null) return null;
-        String[] unMappedWildCards = expr.unMappedWildcards(foreignSymbolOverride);
-        Set<Map<String, String>> rSet;
+    // adds the bindings extending foreignSymbolOverride under which expr matches something here to rSet
+    protected void getBindingsForSearchExpr(NormalizedAtomicExpression expr, int[] foreignSymbolOverride,
+                                            BindingSlots slots, BindingSet rSet) {
+        int[] searchKeys = expr.rootedLiterals(foreignSymbolOverride, slots, m_registry);
+        if (searchKeys == null) return;
+        int[] unMappedWildCards = expr.unMappedWildcards(foreignSymbolOverride, slots);
         boolean isCommutOp = expr.getRegistry().isCommutative(expr.readPosition(0));
         // only supporting arity 2 commutative search
         // do additional search with swapped args if only one arg is blank
@@ -678,91 +716,101 @@ public class ConjunctionOfNormalizedAtomicExpressions {
                     int t = searchKeys[1];
                     searchKeys[1] = searchKeys[2];
                     searchKeys[2] = t;
-                    return computeBindings(
-                            getExprsMatchingAtPosition(searchKeys),
-                            foreignSymbolOverride, unMappedWildCards, expr.getRegistry());
+                    computeBindings(searchKeys,
+                            foreignSymbolOverride, unMappedWildCards, slots, expr.getRegistry(), rSet);
+                    return;
                 }
             }
             else {
                 // only one blank. 2 searches
-                rSet =
-                        computeBindings(getExprsMatchingAtPosition(searchKeys),
-                                foreignSymbolOverride, unMappedWildCards, expr.getRegistry());
+                computeBindings(searchKeys,
+                        foreignSymbolOverride, unMappedWildCards, slots, expr.getRegistry(), rSet);
                 int t = searchKeys[1];
-                String s = unMappedWildCards[1];
+                int s = unMappedWildCards[1];
                 searchKeys[1] = searchKeys[2];
                 unMappedWildCards[1] = unMappedWildCards[2];
                 searchKeys[2] = t;
                 unMappedWildCards[2] = s;
-                rSet.addAll(computeBindings(
-                        getExprsMatchingAtPosition(searchKeys),
-                        foreignSymbolOverride, unMappedWildCards, expr
-                                .getRegistry()));
-                return rSet;
+                computeBindings(searchKeys,
+                        foreignSymbolOverride, unMappedWildCards, slots, expr.getRegistry(), rSet);
+                return;
             }
         }
-        return computeBindings(getExprsMatchingAtPosition(searchKeys),
-                foreignSymbolOverride, unMappedWildCards, expr.getRegistry());
+        computeBindings(searchKeys,
+                foreignSymbolOverride, unMappedWildCards, slots, expr.getRegistry(), rSet);
     }
 
-    private Set<Map<String, String>> computeBindings(
-            Set<NormalizedAtomicExpression> filteredSet,
-            Map<String, String> baseMap, String[] unmappedWildcards,
-            Registry searchReg) {
-
-        Set<Map<String, String>> rSet =
-                new HashSet<Map<String, String>>(filteredSet.size(), .5f);
-        next: for (NormalizedAtomicExpression e : filteredSet) {
-            Map<String, String> bmap = new HashMap<String, String>(baseMap);
+    // binds the wildcards to what's at their positions in each atom that has the symbols searchKey gives (-1 for any)
+    // at the same positions (the last being the root)
+    private void computeBindings(int[] searchKey, int[] baseMap,
+                                 int[] unmappedWildcards, BindingSlots slots, Registry searchReg, BindingSet rSet) {
+        if (searchKey[0] < 0) return;
+        // the atoms are those on every posting list the key picks out: go through the shortest, looking up the rest
+        int root = searchKey.length - 1;
+        int shortest = -1;
+        int shortestSize = Integer.MAX_VALUE;
+        for (int p = 0; p < searchKey.length; ++p) {
+            if (searchKey[p] < 0) continue;
+            int n = m_uses.size(searchKey[p], p == root ? UseIndex.ROOT : p);
+            if (n == 0) return; // k not used in position p anywhere
+            if (n < shortestSize) {
+                shortest = p;
+                shortestSize = n;
+            }
+        }
+        int shortestKey = searchKey[shortest];
+        int shortestPosition = shortest == root ? UseIndex.ROOT : shortest;
+        next: for (int j = 0; j < shortestSize; ++j) {
+            int e = m_uses.get(shortestKey, shortestPosition, j);
+            if (m_atoms.width(e) != root) continue;
+            for (int p = 0; p < searchKey.length; ++p) {
+                if (p == shortest || searchKey[p] < 0) continue;
+                if (!m_uses.contains(searchKey[p], p == root ? UseIndex.ROOT : p, e)) continue next;
+            }
+            int[] bmap = baseMap.clone();
             for (int i = 0; i < unmappedWildcards.length; ++i) {
-                String wc = unmappedWildcards[i];
-                String ac =
-                        (i < unmappedWildcards.length - 1 ? e.readSymbol(i)
-                                : m_registry.getSymbolForIndex(e.readRoot()));
-                if (wc.equals("")) continue;
-                if (!bmap.get(wc).equals("") && !bmap.get(wc).equals(ac)) continue next; // this clause ensures usage of same symbol where required.
-                MathClssftn wildType = searchReg.getTypeByIndex(searchReg.getIndexForSymbol(wc));
-                MathClssftn localType =
-                        m_registry.getTypeByIndex(m_registry
-                                .getIndexForSymbol(ac));
+                int wc = unmappedWildcards[i];
+                if (wc < 0) continue;
+                int ac = m_registry.findAndCompress(i < root ? m_atoms.read(e, i) : m_atoms.root(e));
+                if (bmap[wc] != BindingSlots.UNBOUND && bmap[wc] != ac) continue next; // this clause ensures usage of same symbol where required.
+                MathClssftn wildType = searchReg.getTypeByIndex(slots.getTheoremIndex(wc));
+                MathClssftn localType = m_registry.getTypeByIndex(ac);
                 if (!m_registry.isSubtype(localType, wildType))
                     continue next;
-                bmap.put(wc, ac);
+                bmap[wc] = ac;
             }
             rSet.add(bmap);
         }
-        return rSet;
     }
 
-    private Set<NormalizedAtomicExpression> getExprsMatchingAtPosition(
-            int[] searchKey) {
-        HashSet<NormalizedAtomicExpression> rSet =
-                new HashSet<NormalizedAtomicExpression>();
-        for (int p = 0; p < searchKey.length; ++p) {
-            int k = searchKey[p];
-            if (k < 0)
-                continue;
-            if (!m_useMap.containsKey(k))
-                return rSet; // k is not used in the conjunction, but is still in Registry. Can happen with =, not, etc.
-            int x = (p < searchKey.length - 1) ? p : -1;
-            if (!m_useMap.get(k).containsKey(x)) // k not used in position p anywhere
-                return rSet;
+    /** The atoms, as expressions over the registry, in the order they were added. */
+    protected List<NormalizedAtomicExpression> getAtoms() {
+        List<NormalizedAtomicExpression> result = new ArrayList<NormalizedAtomicExpression>(m_atoms.size());
+        for (int a = 0; a < m_atoms.count(); ++a) {
+            if (!m_atoms.isLive(a)) continue;
+            int[] ops = new int[m_atoms.width(a)];
+            for (int i = 0; i < ops.length; ++i) {
+                ops[i] = m_atoms.read(a, i);
+            }
+            NormalizedAtomicExpression e = new NormalizedAtomicExpression(m_registry, ops);
+            e.writeToRoot(m_atoms.root(a));
+            result.add(e);
         }
+        return result;
+    }
 
-        for (int p = 0; p < searchKey.length; ++p) {
-            int k = searchKey[p];
-            if (k < 0)
-                continue;
-            if (p == 0)
-                rSet.addAll(m_useMap.get(k).get(p));
-            else if (p == searchKey.length - 1)//last element which is root class
-                rSet.retainAll(getUses(k, -1));
-            else
-                rSet.retainAll(getUses(k, p));
-
+    // the way NormalizedAtomicExpression puts it
+    private String atomToString(int atom) {
+        StringBuilder r = new StringBuilder(m_registry.getSymbolForIndex(m_atoms.read(atom, 0))).append('(');
+        for (int i = 1; i < m_atoms.width(atom); ++i) {
+            if (i > 1) r.append(',');
+            r.append(m_registry.getSymbolForIndex(m_atoms.read(atom, i)));
         }
-        return rSet;
-
+        r.append(')');
+        if (m_atoms.root(atom) >= 0) {
+            r.append('=').append(m_registry.getSymbolForIndex(m_atoms.root(atom)));
+        }
+        return r.toString();
     }
 
     @Override
@@ -775,8 +823,8 @@ public class ConjunctionOfNormalizedAtomicExpressions {
             r += m_registry.m_typeToSetOfOperators.get(key) + "\n\n";
         }
 
-        for (NormalizedAtomicExpression cur : m_expSet.keySet()) {
-            r += cur.toString() + "\n";
+        for (int a = 0; a < m_atoms.count(); ++a) {
+            if (m_atoms.isLive(a)) r += atomToString(a) + "\n";
         }
         return r;
     }
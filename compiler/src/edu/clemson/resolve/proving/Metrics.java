@@ -10,6 +10,10 @@ public class Metrics {
     public BigInteger numTimesBacktracked;
 
     public long ruleCount, rulesTried;
+    /** VCs looked up in the {@link ProofCache}, and how many of those it already had an answer for. */
+    public long proofCacheLookups, proofCacheHits;
+    /** When the prover raced several strategies (see {@link ProofStrategy}), the one that proved the VC. */
+    public String proofStrategy;
     public ProverListener progressListener;
 
     public ActionCanceller actionCanceller;
@@ -33,6 +37,13 @@ public class Metrics {
     public void accumulate(Metrics m) {
         numProofsConsidered = numProofsConsidered.add(m.numProofsConsidered);
         numTimesBacktracked = numTimesBacktracked.add(m.numTimesBacktracked);
+        proofCacheLookups += m.proofCacheLookups;
+        proofCacheHits += m.proofCacheHits;
+    }
+
+    /** The fraction of cache lookups that were hits; 0 if there weren't any lookups. */
+    public double getProofCacheHitRate() {
+        return proofCacheLookups == 0 ? 0 : (double) proofCacheHits / proofCacheLookups;
     }
 
     public long getTimeout() {
@@ -48,6 +59,9 @@ public class Metrics {
         numProofsConsidered = BigInteger.ZERO;
         ruleCount = 0;
         rulesTried = 0;
+        proofCacheLookups = 0;
+        proofCacheHits = 0;
+        proofStrategy = null;
         myProofDuration = 0;
         myTimeout = 0;
     }
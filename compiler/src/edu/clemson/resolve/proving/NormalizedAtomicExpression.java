@@ -25,9 +25,16 @@ public class NormalizedAtomicExpression {
     private int m_classConstant;
     private int arity; // number of arguments
     private final Registry m_registry;
-    private Map<String, Integer> m_opMmap;
-    private Set<Integer> m_opIdSet;
-    private Map<String, Integer> m_argMmap;
+    // the operator view (see operatorIds()): the root of each position, the root of the root last; the distinct
+    // ones sorted, with how often each is there at all and as an argument; and the registry as it was when they were
+    // worked out, as its merge and rollback counts
+    private int[] m_rootAt;
+    private int[] m_opIds;
+    private int[] m_opCounts;
+    private int[] m_argCounts;
+    private int m_opIdsCount;
+    private int m_viewMerges;
+    private int m_viewRollbacks;
 
     public NormalizedAtomicExpression(Registry registry, int[] intArray) {
         m_registry = registry;
@@ -59,57 +66,100 @@ public class NormalizedAtomicExpression {
         return m_registry;
     }
 
-    protected Set<Integer> getOpIds() {
-        if (m_opIdSet != null) {
-            return m_opIdSet;
-        }
-        m_opIdSet = new HashSet<Integer>();
-        for (int i = 0; i < m_expression.length; ++i) {
-            m_opIdSet.add(m_expression[i]);
-        }
-        int r = readRoot();
-        m_opIdSet.add(r);
-        return m_opIdSet;
+    /**
+     * The roots of the symbols in this (operator, arguments and root) in increasing order, without repeats; only the
+     * first {@link #operatorIdCount()} entries mean anything. Worked out once and kept until the registry merges one
+     * of them (or a rollback undoes such a merge), so it mustn't be changed.
+     */
+    protected int[] operatorIds() {
+        refreshOperatorView();
+        return m_opIds;
     }
 
-    protected Map<String, Integer> getOperatorsAsStrings(boolean justArguments) {
-        if (justArguments && m_argMmap != null) {
-            return new HashMap<String, Integer>(m_argMmap);
-        }
-        if (!justArguments && m_opMmap != null) {
-            return new HashMap<String, Integer>(m_opMmap);
-        }
-        m_argMmap = new HashMap<String, Integer>();
-        for (int i = 1; i < m_expression.length; ++i) {
-            String curOp = readSymbol(i);
-            if (m_argMmap.containsKey(curOp)) {
-                m_argMmap.put(curOp, m_argMmap.get(curOp) + 1);
-            }
-            else
-                m_argMmap.put(curOp, 1);
-        }
-        m_opMmap = new HashMap<String, Integer>(m_argMmap);
-        String fSym = readSymbol(0);
-        String rSym = m_registry.getSymbolForIndex(readRoot());
-        if (m_opMmap.containsKey(fSym)) {
-            m_opMmap.put(fSym, m_opMmap.get(fSym) + 1);
+    protected int operatorIdCount() {
+        refreshOperatorView();
+        return m_opIdsCount;
+    }
+
+    /** Whether the root of {@code rootId} is anywhere in this: operator, argument or root. */
+    protected boolean containsOperator(int rootId) {
+        return countOf(rootId) > 0;
+    }
+
+    /** Whether the root of {@code rootId} is one of the arguments. */
+    protected boolean containsArgument(int rootId) {
+        return argumentCountOf(rootId) > 0;
+    }
+
+    /** How many of the positions (operator, arguments and root) have {@code rootId} as their root. */
+    protected int countOf(int rootId) {
+        refreshOperatorView();
+        int at = Arrays.binarySearch(m_opIds, 0, m_opIdsCount, rootId);
+        return at < 0 ? 0 : m_opCounts[at];
+    }
+
+    /** How many of the arguments have {@code rootId} as their root. */
+    protected int argumentCountOf(int rootId) {
+        refreshOperatorView();
+        int at = Arrays.binarySearch(m_opIds, 0, m_opIdsCount, rootId);
+        return at < 0 ? 0 : m_argCounts[at];
+    }
+
+    private void refreshOperatorView() {
+        int merges = m_registry.getMergeCount();
+        int rollbacks = m_registry.m_trail.getRollbacks();
+        if (m_rootAt != null && merges == m_viewMerges && rollbacks == m_viewRollbacks) {
+            return;
         }
-        else {
-            m_opMmap.put(fSym, 1);
+        if (m_rootAt == null || !rootsUnchanged()) {
+            buildOperatorView();
         }
-        if (m_opMmap.containsKey(rSym)) {
-            m_opMmap.put(rSym, m_opMmap.get(rSym) + 1);
+        m_viewMerges = merges;
+        m_viewRollbacks = rollbacks;
+    }
+
+    private boolean rootsUnchanged() {
+        for (int i = 0; i <= arity; ++i) {
+            if (m_rootAt[i] != m_registry.findAndCompress(m_expression[i])) return false;
         }
-        else {
-            m_opMmap.put(rSym, 1);
+        return m_rootAt[arity + 1] == rootOfRoot();
+    }
+
+    private void buildOperatorView() {
+        int n = arity + 2;
+        if (m_rootAt == null) {
+            m_rootAt = new int[n];
+            m_opIds = new int[n];
+            m_opCounts = new int[n];
+            m_argCounts = new int[n];
         }
-        if (justArguments) {
-            return new HashMap<String, Integer>(m_argMmap);
+        for (int i = 0; i <= arity; ++i) {
+            m_rootAt[i] = m_registry.findAndCompress(m_expression[i]);
         }
-        else {
-            return new HashMap<String, Integer>(m_opMmap);
+        m_rootAt[arity + 1] = rootOfRoot();
+        m_opIdsCount = 0;
+        for (int i = 0; i < n; ++i) {
+            int r = m_rootAt[i];
+            if (r < 0) continue;
+            int at = Arrays.binarySearch(m_opIds, 0, m_opIdsCount, r);
+            if (at < 0) {
+                at = -(at + 1);
+                System.arraycopy(m_opIds, at, m_opIds, at + 1, m_opIdsCount - at);
+                System.arraycopy(m_opCounts, at, m_opCounts, at + 1, m_opIdsCount - at);
+                System.arraycopy(m_argCounts, at, m_argCounts, at + 1, m_opIdsCount - at);
+                m_opIds[at] = r;
+                m_opCounts[at] = 0;
+                m_argCounts[at] = 0;
+                m_opIdsCount++;
+            }
+            m_opCounts[at]++;
+            if (i > 0 && i <= arity) m_argCounts[at]++;
         }
+    }
 
+    // -1 while there's no root
+    private int rootOfRoot() {
+        return m_classConstant < 0 ? -1 : m_registry.findAndCompress(m_classConstant);
     }
 
     public int readPosition(int position) {
@@ -136,53 +186,46 @@ public class NormalizedAtomicExpression {
     }
 
     // -1 meaning wildcard.
-    public int[] rootedLiterals(Map<String, String> overMap, Registry vc_Reg) {
+    public int[] rootedLiterals(int[] binding, BindingSlots slots, Registry vc_Reg) {
         int[] rArray = new int[m_expression.length + 1];
         for (int i = 0; i <= m_expression.length; ++i) {
             int expI =
                     (i < m_expression.length) ? m_expression[i]
                             : m_classConstant;
-            String k = m_registry.getSymbolForIndex(expI);
-            String v = (overMap.containsKey(k)) ? overMap.get(k) : k;
-            if (v.equals("")) {
+            int slot = slots.slotOfIndex(expI);
+            int v = slot >= 0 ? binding[slot] : BindingSlots.ABSENT;
+            if (v == BindingSlots.UNBOUND) {
                 rArray[i] = -1;
             }
-            else if (!vc_Reg.m_symbolToIndex.containsKey(v)) {
-                return null;
+            else if (v != BindingSlots.ABSENT) {
+                rArray[i] = vc_Reg.findAndCompress(v);
             }
             else {
-                rArray[i] = vc_Reg.getIndexForSymbol(v);
+                // not bound by the theorem, so it has to mean the same symbol in the vc
+                Integer vcIndex = vc_Reg.m_symbolToIndex.get(m_registry.getSymbolForIndex(expI));
+                if (vcIndex == null) return null;
+                rArray[i] = vc_Reg.findAndCompress(vcIndex);
             }
         }
         return rArray;
     }
 
-    // "" meaning mapped.
-    public String[] unMappedWildcards(Map<String, String> overMap) {
-        String[] rArray = new String[m_expression.length + 1];
-        for (int i = 0; i < m_expression.length; ++i) {
-            String ks = m_registry.getSymbolForIndex(m_expression[i]);
-            if (overMap.containsKey(ks) && overMap.get(ks).equals("")) {
-                rArray[i] = ks;
-            }
-            else
-                rArray[i] = "";
-        }
-        String ks = m_registry.getSymbolForIndex(m_classConstant);
-        if (overMap.containsKey(ks) && overMap.get(ks).equals("")) {
-            rArray[m_expression.length] = ks;
+    // slot of the wildcard at each position that binding leaves unbound; -1 meaning mapped.
+    public int[] unMappedWildcards(int[] binding, BindingSlots slots) {
+        int[] rArray = new int[m_expression.length + 1];
+        for (int i = 0; i <= m_expression.length; ++i) {
+            int expI =
+                    (i < m_expression.length) ? m_expression[i]
+                            : m_classConstant;
+            int slot = slots.slotOfIndex(expI);
+            rArray[i] = slot >= 0 && binding[slot] == BindingSlots.UNBOUND ? slot : -1;
         }
-        else
-            rArray[m_expression.length] = "";
         return rArray;
     }
 
     public NormalizedAtomicExpression replaceOperator(int orig, int repl) {
         if (orig == repl)
             return this;
-        if (!getOpIds().contains(orig)) {
-            return this;
-        }
         int[] na = new int[m_expression.length];
         boolean changed = false;
         for (int i = 0; i < m_expression.length; ++i) {
@@ -207,8 +250,7 @@ public class NormalizedAtomicExpression {
     }
 
     protected void writeToRoot(int root) {
-        m_opMmap = null;
-        m_opIdSet = null;
+        m_viewMerges = -1; // so the view checks its roots again
         m_classConstant = root;
     }
 
@@ -285,11 +327,11 @@ public class NormalizedAtomicExpression {
 
     public int numberOfQuants() {
         int c = 0;
-        for (String k : getOperatorsAsStrings(false).keySet()) {
-            if (m_registry.getUsage(k).equals(Registry.Usage.FORALL)
-                    || m_registry.getUsage(k).equals(
-                    Registry.Usage.HASARGS_FORALL)
-                    || m_registry.getUsage(k).equals(Registry.Usage.CREATED)) {
+        int[] ids = operatorIds();
+        for (int i = 0, n = operatorIdCount(); i < n; ++i) {
+            Registry.Usage us = m_registry.getUsage(m_registry.getSymbolForIndex(ids[i]));
+            if (us.equals(Registry.Usage.FORALL) || us.equals(Registry.Usage.HASARGS_FORALL)
+                    || us.equals(Registry.Usage.CREATED)) {
                 c++;
             }
         }
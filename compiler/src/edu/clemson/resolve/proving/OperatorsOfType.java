@@ -0,0 +1,119 @@
+package edu.clemson.resolve.proving;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * The symbols of a {@link Registry} that were added with some classification or one of its subtypes, and the roots
+ * they now have: what {@link Registry#getRootsMatchingType} answers with. The registry keeps it up to date as symbols
+ * are added and merged, so it's only ever worked out from scratch once.
+ * <p>
+ * The roots are walked with {@link #size} and {@link #get}, in increasing order; nothing here allocates once the
+ * arrays are big enough.</p>
+ */
+final class OperatorsOfType {
+
+    // the symbols themselves, by index
+    private final BitSet m_members;
+    // how many members have each index as their root
+    private int[] m_count;
+    // the indices with a count, sorted
+    private int[] m_roots;
+    private int m_size = 0;
+
+    OperatorsOfType(int expectedSymbols) {
+        m_members = new BitSet(expectedSymbols);
+        m_count = new int[Math.max(expectedSymbols, 16)];
+        m_roots = new int[16];
+    }
+
+    /** A copy of {@code other} that can go on changing without affecting it. */
+    OperatorsOfType(OperatorsOfType other) {
+        m_members = (BitSet) other.m_members.clone();
+        m_count = other.m_count.clone();
+        m_roots = other.m_roots.clone();
+        m_size = other.m_size;
+    }
+
+    /** How many roots there are. */
+    int size() {
+        return m_size;
+    }
+
+    /** The {@code i}th smallest root. */
+    int get(int i) {
+        return m_roots[i];
+    }
+
+    boolean containsRoot(int root) {
+        return countOf(root) > 0;
+    }
+
+    /** How many of the symbols have {@code root} as their root. */
+    int countOf(int root) {
+        return root < m_count.length ? m_count[root] : 0;
+    }
+
+    /** Whether the symbol with index {@code symbol} is one of these. */
+    boolean isMember(int symbol) {
+        return m_members.get(symbol);
+    }
+
+    /** Adds the symbol with index {@code symbol}, whose root is {@code root}. */
+    void add(int symbol, int root) {
+        m_members.set(symbol);
+        addRoot(root, 1);
+    }
+
+    /** Takes back {@link #add}. */
+    void remove(int symbol, int root) {
+        m_members.clear(symbol);
+        removeRoot(root, 1);
+    }
+
+    /**
+     * Notes that {@code from} is no longer a root, its symbols now having {@code to} as theirs; returns how many there
+     * were, which {@link #unmove} needs.
+     */
+    int move(int to, int from) {
+        int n = countOf(from);
+        if (n > 0) {
+            removeRoot(from, n);
+            addRoot(to, n);
+        }
+        return n;
+    }
+
+    /** Takes back the {@link #move} that returned {@code n}. */
+    void unmove(int to, int from, int n) {
+        if (n > 0) {
+            removeRoot(to, n);
+            addRoot(from, n);
+        }
+    }
+
+    private void addRoot(int root, int n) {
+        if (root >= m_count.length) {
+            m_count = Arrays.copyOf(m_count, Math.max(m_count.length * 2, root + 1));
+        }
+        if (m_count[root] == 0) {
+            if (m_size == m_roots.length) {
+                m_roots = Arrays.copyOf(m_roots, m_size * 2);
+            }
+            int at = -(Arrays.binarySearch(m_roots, 0, m_size, root) + 1);
+            System.arraycopy(m_roots, at, m_roots, at + 1, m_size - at);
+            m_roots[at] = root;
+            m_size++;
+        }
+        m_count[root] += n;
+    }
+
+    private void removeRoot(int root, int n) {
+        m_count[root] -= n;
+        if (m_count[root] == 0) {
+            int at = Arrays.binarySearch(m_roots, 0, m_size, root);
+            System.arraycopy(m_roots, at + 1, m_roots, at, m_size - at - 1);
+            m_size--;
+        }
+    }
+}
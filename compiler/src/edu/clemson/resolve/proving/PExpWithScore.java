@@ -2,29 +2,41 @@ package edu.clemson.resolve.proving;
 
 import edu.clemson.resolve.proving.absyn.PExp;
 
+import java.util.Collections;
 import java.util.Map;
-import java.util.Set;
 
 public class PExpWithScore implements Comparable<PExpWithScore> {
 
     protected PExp m_theorem;
     protected String m_theoremDefinitionString;
     protected Integer m_score = 1;
-    protected Set<String> m_theorem_symbols;
-    protected Map<String, String> m_bMap;
+    // the binding the theorem was instantiated with, only made readable if someone asks (see getBindings)
+    private final int[] m_binding;
+    private final BindingSlots m_slots;
+    private final Registry m_vcRegistry;
 
-    public PExpWithScore(PExp theorem, Map<String, String> bMap,
-                         String justification) {
+    public PExpWithScore(PExp theorem, String justification) {
+        this(theorem, null, null, null, justification);
+    }
+
+    PExpWithScore(PExp theorem, int[] binding, BindingSlots slots, Registry vcRegistry, String justification) {
         m_theorem = theorem;
         m_theoremDefinitionString = justification;
-        m_theorem_symbols = m_theorem.getSymbolNames();
-        m_bMap = bMap;
+        m_binding = binding;
+        m_slots = slots;
+        m_vcRegistry = vcRegistry;
+    }
+
+    /** Wildcard name to the symbol it was bound to. */
+    public Map<String, String> getBindings() {
+        if (m_binding == null) return Collections.emptyMap();
+        return m_slots.toMap(m_binding, m_vcRegistry);
     }
 
     @Override
     public String toString() {
         return m_theoremDefinitionString + "\n" + "\t[" + m_score + "]" + " "
-                + m_theorem.toString() + "\t" + m_bMap + "\n";
+                + m_theorem.toString() + "\t" + getBindings() + "\n";
     }
 
     @Override
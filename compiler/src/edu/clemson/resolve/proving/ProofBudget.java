@@ -0,0 +1,116 @@
+package edu.clemson.resolve.proving;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * How much more work the prover may put into something: a wall-clock deadline, a number of steps, or both, along with
+ * a way to call the whole thing off. A module gets one, and each of its VCs gets a {@link #child} of that; a VC's
+ * budget runs out with its own limits or its module's, whichever comes first.
+ * <p>
+ * {@link #step()} is meant for the prover's innermost loops, so it only counts: the clock (and the
+ * {@link ProverListener}, and the parent) are consulted every {@link #CHECK_INTERVAL} steps, and otherwise only when
+ * {@link #check()} is called. A step limit on the other hand is enforced exactly, so a VC proved under a step limit
+ * alone is proved the same way however loaded the machine is.</p>
+ * <p>
+ * Like the VC it's spent on, a VC's budget is used by one thread at a time; a module's budget is only ever checked
+ * (or cancelled) from more than one.</p>
+ */
+public final class ProofBudget {
+
+    /** How many steps go by between looks at the clock. */
+    static final int CHECK_INTERVAL = 256;
+
+    @Nullable
+    private final ProofBudget m_parent;
+    @Nullable
+    private final ProverListener m_listener;
+    @Nullable
+    private final ActionCanceller m_canceller;
+    private final boolean m_hasDeadline;
+    private final long m_deadline;
+    private final long m_maxSteps;
+
+    private long m_steps = 0;
+    private int m_untilCheck = CHECK_INTERVAL;
+    private volatile boolean m_exhausted = false;
+    private volatile boolean m_cancelled = false;
+
+    /**
+     * A budget of {@code timeoutMS} milliseconds from now and {@code maxSteps} steps (either can be {@code 0}, for no
+     * limit) that's also cancelled whenever {@code listener} or {@code canceller} (if given) says so.
+     */
+    public ProofBudget(@Nullable ProverListener listener, @Nullable ActionCanceller canceller,
+                       long timeoutMS, long maxSteps) {
+        this(null, listener, canceller, timeoutMS, maxSteps);
+    }
+
+    private ProofBudget(@Nullable ProofBudget parent, @Nullable ProverListener listener,
+                        @Nullable ActionCanceller canceller, long timeoutMS, long maxSteps) {
+        m_parent = parent;
+        m_listener = listener;
+        m_canceller = canceller;
+        m_hasDeadline = timeoutMS > 0;
+        m_deadline = System.nanoTime() + TimeUnit.NANOSECONDS.convert(timeoutMS, TimeUnit.MILLISECONDS);
+        m_maxSteps = maxSteps;
+    }
+
+    /** A budget drawn from this one, of at most {@code timeoutMS} milliseconds and {@code maxSteps} steps. */
+    @NotNull
+    public ProofBudget child(long timeoutMS, long maxSteps) {
+        return new ProofBudget(this, null, null, timeoutMS, maxSteps);
+    }
+
+    /**
+     * Counts a step. Returns whether the budget has run out, as far as is known without looking at the clock (which
+     * happens here every {@link #CHECK_INTERVAL} steps).
+     */
+    public boolean step() {
+        if (++m_steps >= m_maxSteps && m_maxSteps > 0) m_exhausted = true;
+        if (--m_untilCheck > 0) return m_exhausted;
+        m_untilCheck = CHECK_INTERVAL;
+        return check();
+    }
+
+    /** Whether the budget has run out, as of the last time anyone looked. Doesn't read the clock. */
+    public boolean isExhausted() {
+        return m_exhausted;
+    }
+
+    /** Looks at the clock, the listener and the parent now, returning whether the budget has run out. */
+    public boolean check() {
+        if (m_exhausted) return true;
+        if (m_parent != null && m_parent.check()) {
+            m_cancelled = true;
+        }
+        else if ((m_listener != null && m_listener.isCancelled()) ||
+                (m_canceller != null && !m_canceller.amRunning())) {
+            m_cancelled = true;
+        }
+        if (m_cancelled || (m_hasDeadline && System.nanoTime() - m_deadline > 0)) {
+            m_exhausted = true;
+        }
+        return m_exhausted;
+    }
+
+    /** Stops anything spending this budget (or one drawn from it) at its next check. */
+    public void cancel() {
+        m_cancelled = true;
+        m_exhausted = true;
+    }
+
+    /**
+     * Whether the budget was cut short (cancelled, or drawn from one that ran out) rather than running through its
+     * own time or steps: whatever was being done with it didn't get all it was promised.
+     */
+    public boolean isCancelled() {
+        return m_cancelled;
+    }
+
+    /** How many steps have been counted against this budget. */
+    public long getSteps() {
+        return m_steps;
+    }
+}
@@ -0,0 +1,268 @@
+package edu.clemson.resolve.proving;
+
+import edu.clemson.resolve.RESOLVECompiler;
+import edu.clemson.resolve.proving.absyn.PApply;
+import edu.clemson.resolve.proving.absyn.PExp;
+import edu.clemson.resolve.proving.absyn.PSymbol;
+import edu.clemson.resolve.semantics.Quantification;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+/**
+ * An on-disk record (kept under {@code -Xcache}, next to the {@link edu.clemson.resolve.compiler.ModuleCache}) of what
+ * the prover made of each VC it has seen: the status it ended with and the names of the theorems whose application
+ * changed something, in order.
+ * <p>
+ * A VC is looked up by a hash of its canonical form (see {@link #canonicalForm}) together with a hash of everything
+ * else the outcome depends on: the theorems in scope, the compiler version and the prover settings. So the cache
+ * survives VCs being renumbered or reordered, or their antecedents being shuffled, or their local variables being
+ * renamed; a change to any theorem in scope invalidates everything proved with it.</p>
+ * <p>
+ * Only outcomes the prover came to on its own are worth keeping: VCs it was cancelled on are never recorded. Nor is a
+ * VC it gave up on when a wall-clock timeout was in force, as a less busy machine might well have proved it; one it
+ * gave up on under a {@code -proverSteps} limit alone is, so an unchanged VC isn't searched all over again every run
+ * (see {@link #record}).</p>
+ */
+public class ProofCache {
+
+    public static final String CACHE_FILE_NAME = "proofs.cache";
+
+    /** A recorded outcome: how the VC ended up, and the theorems that got it there. */
+    public static final class Entry {
+        @NotNull
+        public final VerificationConditionCongruenceClosureImpl.STATUS status;
+        @NotNull
+        public final List<String> theorems;
+
+        Entry(@NotNull VerificationConditionCongruenceClosureImpl.STATUS status, @NotNull List<String> theorems) {
+            this.status = status;
+            this.theorems = theorems;
+        }
+    }
+
+    private static final String SEPARATOR = "\t";
+
+    @NotNull
+    private final File cacheFile;
+    @NotNull
+    private final Properties entries = new Properties();
+    private boolean changed = false;
+
+    public ProofCache(@NotNull File cacheDirectory) {
+        this.cacheFile = new File(cacheDirectory, CACHE_FILE_NAME);
+        if (cacheFile.exists()) {
+            try (Reader r = new InputStreamReader(new FileInputStream(cacheFile), StandardCharsets.UTF_8)) {
+                entries.load(r);
+            } catch (IOException ioe) {
+                //a cache we can't read is the same as an empty one
+                entries.clear();
+            }
+        }
+    }
+
+    @Nullable
+    public Entry lookup(@NotNull String key) {
+        String value = entries.getProperty(key);
+        if (value == null) return null;
+        String[] parts = value.split(SEPARATOR, -1);
+        VerificationConditionCongruenceClosureImpl.STATUS status;
+        try {
+            status = VerificationConditionCongruenceClosureImpl.STATUS.valueOf(parts[0]);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+        List<String> theorems = new ArrayList<>();
+        for (int i = 1; i < parts.length; i++) {
+            if (!parts[i].isEmpty()) theorems.add(parts[i]);
+        }
+        return new Entry(status, theorems);
+    }
+
+    /**
+     * Records how the VC with {@code key} turned out. {@code deterministic} says whether it would turn out the same
+     * however fast the machine was (the prover had a step limit and no timeout); if not, only a proof is recorded.
+     */
+    public void record(@NotNull String key, @NotNull VerificationConditionCongruenceClosureImpl.STATUS status,
+                       @NotNull List<String> theorems, boolean deterministic) {
+        if (status == VerificationConditionCongruenceClosureImpl.STATUS.CANCELLED) return;
+        if (!deterministic && status != VerificationConditionCongruenceClosureImpl.STATUS.PROVED &&
+                status != VerificationConditionCongruenceClosureImpl.STATUS.FALSE_ASSUMPTION) {
+            return;
+        }
+        StringBuilder value = new StringBuilder(status.name());
+        for (String t : theorems) {
+            value.append(SEPARATOR).append(t.replace(SEPARATOR, " "));
+        }
+        synchronized (entries) {
+            entries.setProperty(key, value.toString());
+            changed = true;
+        }
+    }
+
+    public void save() throws IOException {
+        synchronized (entries) {
+            if (!changed) return;
+            File dir = cacheFile.getParentFile();
+            if (dir != null && !dir.exists()) dir.mkdirs();
+            try (Writer w = new OutputStreamWriter(new FileOutputStream(cacheFile), StandardCharsets.UTF_8)) {
+                entries.store(w, "RESOLVE proof cache");
+            }
+            changed = false;
+        }
+    }
+
+    /** The key for a VC with the given canonical form, proved in the setting hashed by {@link #hashSetting}. */
+    @NotNull
+    public static String key(@NotNull String canonicalForm, @NotNull String setting) {
+        return setting.substring(0, 16) + toHex(newDigest().digest(canonicalForm.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * Hashes what, apart from the VC itself, decides how proving it turns out: the theorems available (given as
+     * name and assertion, the latter rendered with its classifications as {@link #canonicalForm} renders formulas),
+     * the compiler version and the prover {@code settings}.
+     */
+    @NotNull
+    public static String hashSetting(@NotNull SortedMap<String, PExp> theorems, @NotNull String settings) {
+        MessageDigest digest = newDigest();
+        digest.update(RESOLVECompiler.VERSION.getBytes(StandardCharsets.UTF_8));
+        digest.update(settings.getBytes(StandardCharsets.UTF_8));
+        for (Map.Entry<String, PExp> e : theorems.entrySet()) {
+            digest.update(e.getKey().getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            String assertion = render(e.getValue(), null, Collections.<String>emptySet());
+            digest.update(assertion.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+        }
+        return toHex(digest.digest());
+    }
+
+    /**
+     * Renders a sequent so that any two sequents rendered the same are the same up to the order of their formulas
+     * and a consistent renaming of their variables, neither of which changes what the prover can show. Formulas
+     * should be given the way the prover sees them (after {@link Utilities#replacePExp}); symbols are written the way
+     * its registry names them, by name and classification.
+     * <p>
+     * Only plain variables are renamed: symbols that aren't literals, quantified, applied, or among the
+     * {@code fixedSymbols} (the ones theorems mention, which could match them by name). A sequent containing anything
+     * other than symbols and applications keeps its names.</p>
+     */
+    @NotNull
+    public static String canonicalForm(@NotNull List<PExp> antecedents, @NotNull List<PExp> consequents,
+                                       @NotNull Set<String> fixedSymbols) {
+        boolean rename = true;
+        for (PExp e : antecedents) rename &= isSymbolsAndApplications(e);
+        for (PExp e : consequents) rename &= isSymbolsAndApplications(e);
+        if (!rename) {
+            return sorted(antecedents, null, fixedSymbols) + "⊢" + sorted(consequents, null, fixedSymbols);
+        }
+        //number the variables in order of appearance, once the formulas are put in an order that doesn't depend on
+        //what the variables are called (as far as that's possible: ties go by the names after all)
+        Map<String, String> names = new HashMap<>();
+        for (PExp e : byShape(antecedents, fixedSymbols)) number(e, fixedSymbols, names);
+        for (PExp e : byShape(consequents, fixedSymbols)) number(e, fixedSymbols, names);
+        return sorted(antecedents, names, fixedSymbols) + "⊢" + sorted(consequents, names, fixedSymbols);
+    }
+
+    private static List<PExp> byShape(List<PExp> formulas, Set<String> fixedSymbols) {
+        List<PExp> result = new ArrayList<>(formulas);
+        Map<PExp, String> shapes = new IdentityHashMap<>();
+        Map<PExp, String> plain = new IdentityHashMap<>();
+        for (PExp e : result) {
+            shapes.put(e, render(e, Collections.<String, String>emptyMap(), fixedSymbols));
+            plain.put(e, render(e, null, fixedSymbols));
+        }
+        result.sort(Comparator.comparing((PExp e) -> shapes.get(e)).thenComparing(plain::get));
+        return result;
+    }
+
+    private static String sorted(List<PExp> formulas, @Nullable Map<String, String> names, Set<String> fixedSymbols) {
+        List<String> rendered = new ArrayList<>();
+        for (PExp e : formulas) rendered.add(render(e, names, fixedSymbols));
+        Collections.sort(rendered);
+        return String.join("\n", rendered);
+    }
+
+    private static boolean isSymbolsAndApplications(PExp e) {
+        if (e instanceof PSymbol) return true;
+        if (!(e instanceof PApply)) return false;
+        for (PExp s : e.getSubExpressions()) {
+            if (!isSymbolsAndApplications(s)) return false;
+        }
+        return true;
+    }
+
+    private static boolean isVariable(PSymbol s, Set<String> fixedSymbols) {
+        return !s.isLiteral() && s.getQuantification() == Quantification.NONE &&
+                !fixedSymbols.contains(s.getName()) && !s.getName().equals("true") && !s.getName().equals("false");
+    }
+
+    private static void number(PExp e, Set<String> fixedSymbols, Map<String, String> names) {
+        if (e instanceof PSymbol) {
+            PSymbol s = (PSymbol) e;
+            if (isVariable(s, fixedSymbols) && !names.containsKey(s.getName())) {
+                names.put(s.getName(), "v" + names.size());
+            }
+        }
+        else if (e instanceof PApply) {
+            for (PExp a : ((PApply) e).getArguments()) number(a, fixedSymbols, names);
+        }
+    }
+
+    // names null: leave variables be; empty: blank them all out; otherwise rename them as it says
+    private static String render(PExp e, @Nullable Map<String, String> names, Set<String> fixedSymbols) {
+        if (e instanceof PSymbol) {
+            PSymbol s = (PSymbol) e;
+            String name = s.getName();
+            if (names != null && isVariable(s, fixedSymbols)) {
+                name = names.isEmpty() ? "_" : names.get(name);
+            }
+            if (s.getQuantification() != Quantification.NONE) name = s.getQuantification() + " " + name;
+            return name + ":" + s.getMathClssftn();
+        }
+        if (e instanceof PApply) {
+            PApply a = (PApply) e;
+            StringBuilder sb = new StringBuilder("(");
+            sb.append(renderFunction(a.getFunctionPortion(), names, fixedSymbols));
+            for (PExp arg : a.getArguments()) {
+                sb.append(' ').append(render(arg, names, fixedSymbols));
+            }
+            return sb.append("):").append(a.getMathClssftn()).toString();
+        }
+        StringBuilder sb = new StringBuilder("[").append(e.getClass().getSimpleName()).append(' ').append(e);
+        for (PExp sub : e.getSubExpressions()) {
+            sb.append(' ').append(render(sub, names, fixedSymbols));
+        }
+        return sb.append("]:").append(e.getMathClssftn()).toString();
+    }
+
+    // the function being applied is never renamed: the prover keys its congruences on the name
+    private static String renderFunction(PExp f, @Nullable Map<String, String> names, Set<String> fixedSymbols) {
+        if (f instanceof PSymbol) return ((PSymbol) f).getName() + ":" + f.getMathClssftn();
+        return render(f, names, fixedSymbols);
+    }
+
+    @NotNull
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);  //every java platform is required to support SHA-256
+        }
+    }
+
+    @NotNull
+    private static String toHex(@NotNull byte[] bytes) {
+        StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            sb.append(String.format("%02x", b));
+        }
+        return sb.toString();
+    }
+}
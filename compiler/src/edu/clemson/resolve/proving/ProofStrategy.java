@@ -0,0 +1,100 @@
+package edu.clemson.resolve.proving;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The knobs of the prover's search: how many theorems it applies before re-ranking them all, the score at or below
+ * which it keeps applying theorems anyway, whether equations that rewrite toward the smaller side get ranked a bit
+ * lower, and whether it uses the goal-searching forms of implications at all.
+ * <p>
+ * {@link #DEFAULT} is how the prover has always searched. The rest exist to be raced against it (see
+ * {@code -portfolio}): a VC that times out one way is often quick another.</p>
+ */
+public final class ProofStrategy {
+
+    public static final ProofStrategy DEFAULT = new ProofStrategy("default", 1, 1, true, true);
+    /** Applies a few theorems a round rather than re-ranking after each. */
+    public static final ProofStrategy WIDE = new ProofStrategy("wide", 3, 1, true, true);
+    /** Keeps going with any theorem that ranks reasonably well, without re-ranking. */
+    public static final ProofStrategy EAGER = new ProofStrategy("eager", 1, 5, true, true);
+    /** Doesn't favor equations that rewrite toward the smaller side. */
+    public static final ProofStrategy PLAIN = new ProofStrategy("plain", 1, 1, false, true);
+    /** Does without the goal-searching forms of implications. */
+    public static final ProofStrategy NO_GOAL = new ProofStrategy("nogoal", 1, 1, true, false);
+
+    private static final List<ProofStrategy> ALL =
+            Collections.unmodifiableList(Arrays.asList(DEFAULT, WIDE, EAGER, PLAIN, NO_GOAL));
+
+    @NotNull
+    private final String m_name;
+    final int m_width;
+    final int m_threshold;
+    final boolean m_smallEndBias;
+    final boolean m_goalSearching;
+
+    private ProofStrategy(@NotNull String name, int width, int threshold, boolean smallEndBias,
+                          boolean goalSearching) {
+        m_name = name;
+        m_width = width;
+        m_threshold = threshold;
+        m_smallEndBias = smallEndBias;
+        m_goalSearching = goalSearching;
+    }
+
+    @NotNull
+    public String getName() {
+        return m_name;
+    }
+
+    /** Every strategy there is, {@link #DEFAULT} first. */
+    @NotNull
+    public static List<ProofStrategy> all() {
+        return ALL;
+    }
+
+    /** The strategy called {@code name}, if there is one. */
+    @Nullable
+    public static ProofStrategy named(@NotNull String name) {
+        for (ProofStrategy s : ALL) {
+            if (s.m_name.equalsIgnoreCase(name.trim())) return s;
+        }
+        return null;
+    }
+
+    /**
+     * The strategies named (comma separated) in {@code spec}, in order and without repeats; "all" names every one of
+     * them. Names that aren't recognized are left out, and are added to {@code unknown}. With none left, there's just
+     * {@link #DEFAULT}.
+     */
+    @NotNull
+    public static List<ProofStrategy> parse(@Nullable String spec, @NotNull List<String> unknown) {
+        List<ProofStrategy> result = new ArrayList<>();
+        if (spec != null) {
+            for (String name : spec.split(",")) {
+                if (name.trim().isEmpty()) continue;
+                List<ProofStrategy> named = name.trim().equalsIgnoreCase("all") ? ALL :
+                        named(name) != null ? Collections.singletonList(named(name)) : null;
+                if (named == null) {
+                    unknown.add(name.trim());
+                    continue;
+                }
+                for (ProofStrategy s : named) {
+                    if (!result.contains(s)) result.add(s);
+                }
+            }
+        }
+        if (result.isEmpty()) result.add(DEFAULT);
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return m_name;
+    }
+}
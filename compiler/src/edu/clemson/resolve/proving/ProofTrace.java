@@ -0,0 +1,292 @@
+package edu.clemson.resolve.proving;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * What the prover did on one VC, kept as a list of events to be written out (with {@link #writeTo}) once the VC's
+ * turn comes in the {@code .proof} file.
+ * <p>
+ * How much gets kept depends on the {@link Level}: {@link Level#FULL} has every theorem tried and every merge it led
+ * to, {@link Level#SUMMARY} just the theorems that changed something and how it all ended, and {@link Level#OFF}
+ * nothing at all. The prover asks {@link #isFull()} before working anything out for an event only a full trace
+ * keeps, so with the trace off the search itself doesn't build a single string for it.</p>
+ */
+public final class ProofTrace {
+
+    public enum Level {
+        OFF, SUMMARY, FULL;
+
+        /** The level named by {@code s} (as given to {@code -proofTrace}); anything unrecognized means full. */
+        @NotNull
+        public static Level parse(@Nullable String s) {
+            Level result = s != null ? named(s) : null;
+            return result != null ? result : FULL;
+        }
+
+        /** The level named by {@code s}, ignoring case, if there is one. */
+        @Nullable
+        public static Level named(@NotNull String s) {
+            for (Level l : values()) {
+                if (l.name().equalsIgnoreCase(s)) return l;
+            }
+            return null;
+        }
+    }
+
+    /**
+     * The merges adding a theorem instantiation led to, kept symbol then replaced symbol, and where among them (if
+     * anywhere) the assumptions turned out to be contradictory.
+     */
+    static final class Merges {
+        private final List<String> m_symbols = new ArrayList<>();
+        private int m_contradictionAt = -1;
+
+        void merged(String kept, String replaced) {
+            m_symbols.add(kept);
+            m_symbols.add(replaced);
+        }
+
+        /** Notes a contradiction, found by the merges made since the {@code from}th one. */
+        void contradiction(int from) {
+            m_contradictionAt = from;
+        }
+
+        int size() {
+            return m_symbols.size() / 2;
+        }
+
+        private void writeTo(Appendable out) throws IOException {
+            for (int i = 0; i <= size(); i++) {
+                if (i == m_contradictionAt) out.append("contradiction detected ");
+                if (i == size()) break;
+                out.append(m_symbols.get(2 * i)).append('/').append(m_symbols.get(2 * i + 1)).append(',');
+            }
+        }
+    }
+
+    private interface Event {
+        void writeTo(Appendable out) throws IOException;
+    }
+
+    private static final class Began implements Event {
+        private final String m_vc;
+
+        Began(String vc) {
+            m_vc = vc;
+        }
+
+        @Override
+        public void writeTo(Appendable out) throws IOException {
+            out.append("Before app of theorems: ").append(m_vc).append("\n");
+        }
+    }
+
+    private static final class Applied implements Event {
+        private final int m_iteration;
+        private final long m_iterTime, m_searchTime, m_elapsed;
+        private final int m_score;
+        private final String m_theorem;
+        private final String m_instantiation;
+        private final Merges m_merges;
+        @Nullable
+        private final String m_vcAfter;
+
+        Applied(int iteration, long iterTime, long searchTime, long elapsed, int score, String theorem,
+                String instantiation, Merges merges, @Nullable String vcAfter) {
+            m_iteration = iteration;
+            m_iterTime = iterTime;
+            m_searchTime = searchTime;
+            m_elapsed = elapsed;
+            m_score = score;
+            m_theorem = theorem;
+            m_instantiation = instantiation;
+            m_merges = merges;
+            m_vcAfter = vcAfter;
+        }
+
+        @Override
+        public void writeTo(Appendable out) throws IOException {
+            out.append("Iter:").append(String.valueOf(m_iteration)).append(".0")
+                    .append(" Iter Time: ").append(String.valueOf(m_iterTime))
+                    .append(" Search Time for this theorem: ").append(String.valueOf(m_searchTime))
+                    .append(" Elapsed Time: ").append(String.valueOf(m_elapsed))
+                    .append("\n[").append(String.valueOf(m_score)).append("]").append(m_theorem)
+                    .append("\n").append(m_instantiation).append("\t");
+            m_merges.writeTo(out);
+            out.append("\n\n");
+            if (m_vcAfter != null) out.append(m_vcAfter);
+        }
+    }
+
+    private static final class AppliedName implements Event {
+        private final String m_theorem;
+
+        AppliedName(String theorem) {
+            m_theorem = theorem;
+        }
+
+        @Override
+        public void writeTo(Appendable out) throws IOException {
+            out.append("Applied ").append(m_theorem).append("\n");
+        }
+    }
+
+    private static final class NothingNew implements Event {
+        private final String m_theorem;
+        private final long m_searchTime;
+        private final boolean m_matched;
+
+        NothingNew(String theorem, long searchTime, boolean matched) {
+            m_theorem = theorem;
+            m_searchTime = searchTime;
+            m_matched = matched;
+        }
+
+        @Override
+        public void writeTo(Appendable out) throws IOException {
+            if (m_matched) {
+                out.append("Emptied queue for ").append(m_theorem).append(" with no new results [")
+                        .append(String.valueOf(m_searchTime)).append("ms]\n\n");
+            }
+            else {
+                out.append("Could not find any matches for ").append(m_theorem).append("[")
+                        .append(String.valueOf(m_searchTime)).append("ms]\n\n");
+            }
+        }
+    }
+
+    private static final class CacheHit implements Event {
+        private final ProofCache.Entry m_entry;
+        private final boolean m_replayed;
+
+        CacheHit(ProofCache.Entry entry, boolean replayed) {
+            m_entry = entry;
+            m_replayed = replayed;
+        }
+
+        @Override
+        public void writeTo(Appendable out) throws IOException {
+            out.append("Proof cache hit: ").append(m_entry.status.name()).append(m_replayed ? " (replayed)" : "")
+                    .append(m_entry.theorems.isEmpty() ? "" : " using\n")
+                    .append(String.join("\n", m_entry.theorems)).append("\n");
+        }
+    }
+
+    private static final class Finished implements Event {
+        private final VerificationConditionCongruenceClosureImpl.STATUS m_status;
+        private final long m_steps;
+
+        Finished(VerificationConditionCongruenceClosureImpl.STATUS status, long steps) {
+            m_status = status;
+            m_steps = steps;
+        }
+
+        @Override
+        public void writeTo(Appendable out) throws IOException {
+            out.append("Status: ").append(m_status.name()).append("\n")
+                    .append("Steps taken: ").append(String.valueOf(m_steps)).append("\n");
+        }
+    }
+
+    @NotNull
+    private final Level m_level;
+    @NotNull
+    private final String m_vcName;
+    private final List<Event> m_events = new ArrayList<>();
+
+    public ProofTrace(@NotNull Level level, @NotNull String vcName) {
+        m_level = level;
+        m_vcName = vcName;
+    }
+
+    @NotNull
+    public Level getLevel() {
+        return m_level;
+    }
+
+    /** Whether everything is being kept; nothing that's only for a full trace needs working out otherwise. */
+    public boolean isFull() {
+        return m_level == Level.FULL;
+    }
+
+    /** The search on {@code vc} is starting. */
+    void began(@NotNull VerificationConditionCongruenceClosureImpl vc) {
+        if (isFull()) m_events.add(new Began(vc.toString()));
+    }
+
+    /**
+     * An instantiation of a theorem changed the VC, by way of {@code merges}. Only the theorem's name is needed short
+     * of a full trace (and the rest should be left {@code null}).
+     */
+    void applied(int iteration, long iterTime, long searchTime, long elapsed, int score, @NotNull String theorem,
+                 @Nullable PExpWithScore instantiation, @Nullable Merges merges,
+                 @Nullable VerificationConditionCongruenceClosureImpl vcAfter) {
+        if (isFull()) {
+            m_events.add(new Applied(iteration, iterTime, searchTime, elapsed, score, theorem,
+                    String.valueOf(instantiation), merges != null ? merges : new Merges(),
+                    vcAfter != null ? vcAfter.toString() : null));
+        }
+        else if (m_level == Level.SUMMARY) {
+            m_events.add(new AppliedName(theorem));
+        }
+    }
+
+    /** The theorem's instantiations (if {@code matched} it had any) changed nothing. */
+    void nothingNew(@NotNull String theorem, long searchTime, boolean matched) {
+        if (isFull()) m_events.add(new NothingNew(theorem, searchTime, matched));
+    }
+
+    /** The outcome came from the {@link ProofCache} instead (and the proof in it was {@code replayed}, or not). */
+    void cacheHit(@NotNull ProofCache.Entry entry, boolean replayed) {
+        if (m_level != Level.OFF) m_events.add(new CacheHit(entry, replayed));
+    }
+
+    /** The search is over, with {@code status} after {@code steps} steps. */
+    void finished(@NotNull VerificationConditionCongruenceClosureImpl.STATUS status, long steps) {
+        if (m_level != Level.OFF) m_events.add(new Finished(status, steps));
+    }
+
+    /** Writes out the trace (nothing at all if it's off), set off by lines naming the VC. */
+    public void writeTo(@NotNull Appendable out) throws IOException {
+        if (m_level == Level.OFF || m_events.isEmpty()) return;
+        String div = divLine(m_vcName);
+        out.append(div);
+        for (Event e : m_events) {
+            e.writeTo(out);
+        }
+        out.append(div);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        try {
+            writeTo(sb);
+        } catch (IOException e) {
+            throw new RuntimeException(e);  //StringBuilders don't throw these
+        }
+        return sb.toString();
+    }
+
+    /** {@code label}, centered in a line of '=' 80 characters wide. */
+    @NotNull
+    static String divLine(@NotNull String label) {
+        if (label.length() > 78) {
+            label = label.substring(0, 77);
+        }
+        label = " " + label + " ";
+        char[] div = new char[80];
+        Arrays.fill(div, '=');
+        int start = 40 - label.length() / 2;
+        for (int i = start, j = 0; j < label.length(); ++i, ++j) {
+            div[i] = label.charAt(j);
+        }
+        return new String(div) + "\n";
+    }
+}
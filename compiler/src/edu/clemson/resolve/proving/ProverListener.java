@@ -1,5 +1,10 @@
 package edu.clemson.resolve.proving;
 
+/**
+ * Hears how proving goes. One listener is shared by the provers of every module being compiled, which can be proving
+ * at the same time: {@link #vcResult} is only ever called by one of them at a time (and, for each module, in VC
+ * order), but {@link #isCancelled} can be called from any number of threads at once, so it must be thread-safe.
+ */
 public interface ProverListener {
 
     public void progressUpdate(double progess);
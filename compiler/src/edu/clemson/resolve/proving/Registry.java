@@ -18,6 +18,7 @@ import edu.clemson.resolve.semantics.MathFunctionClssftn;
 
 import java.util.*;
 import java.util.Map.Entry;
+import java.util.regex.Pattern;
 
 /**
  * Created by mike on 4/3/2014.
@@ -26,20 +27,30 @@ public class Registry {
 
     public final String m_ccFormat = "¢c%03d";
     public final String m_cvFormat = "¢v%03d";
-    public TreeMap<String, Integer> m_symbolToIndex;
+    private static final Pattern CONTROL_CHARS = Pattern.compile("\\p{Cc}");
+    public Map<String, Integer> m_symbolToIndex;
     public Map<MathClssftn, TreeSet<String>> m_typeToSetOfOperators;
     public ArrayList<String> m_indexToSymbol;
     public ArrayList<MathClssftn> m_indexToType;
-    public ArrayList<Integer> m_symbolIndexParentArray;
+    /**
+     * Union-find parent of each symbol index; entries past {@code m_indexToSymbol.size()} are unused capacity. Plain
+     * ints so finds don't box, and grown by doubling.
+     */
+    private int[] m_parent = new int[64];
     public Stack<Integer> m_unusedIndices;
     private int m_uniqueCounter = 0;
+    // times substitute() has run; a rollback doesn't take it back
+    private int m_merges = 0;
     protected DumbMathClssftnHandler m_typeGraph;
     protected Map<String, Set<Integer>> m_appliedTheoremDependencyGraph;
     protected Set<String> m_lambda_names;
     protected Set<String> m_partTypes;
     protected Map<Integer, ArrayList<Integer>> m_partTypeParentArray;
     protected Set<String> m_commutative_operators;
-    protected Map<String, Boolean> m_cached_isSubtype;
+    protected SubtypeCache m_subtypes;
+    // what getRootsMatchingType has been asked for, kept up to date since
+    private final Map<MathClssftn, OperatorsOfType> m_operatorsOfType =
+            new HashMap<MathClssftn, OperatorsOfType>();
 
     public static enum Usage {
 
@@ -50,13 +61,14 @@ public class Registry {
     protected final Map<String, Usage> m_symbolToUsage;
     private final Set<String> m_foralls;
     protected Map<String, MathClssftn> m_typeDictionary;
+    /** Undoes changes back to a checkpoint; shared by the conjunction (and VC) built over this registry. */
+    protected final UndoTrail m_trail = new UndoTrail();
 
     public Registry(DumbMathClssftnHandler g) {
-        m_symbolToIndex = new TreeMap<String, Integer>();
+        m_symbolToIndex = new HashMap<String, Integer>(256);
         m_typeToSetOfOperators = new HashMap<MathClssftn, TreeSet<String>>();
         m_indexToSymbol = new ArrayList<String>();
         m_indexToType = new ArrayList<MathClssftn>();
-        m_symbolIndexParentArray = new ArrayList<Integer>();
         m_unusedIndices = new Stack<Integer>();
         m_symbolToUsage = new HashMap<String, Usage>(2048, .5f); // entries won't change
         m_foralls = new HashSet<String>();
@@ -80,54 +92,86 @@ public class Registry {
         m_commutative_operators.add("orB");
         m_commutative_operators.add("∨B");
 
-        m_cached_isSubtype = new HashMap<String, Boolean>();
+        m_subtypes = new SubtypeCache(null);
     }
 
-    public boolean isSubtype(MathClssftn a, MathClssftn b) {
-        String catKey = a.toString() + "," + b.toString();
-        if (m_cached_isSubtype.containsKey(catKey)) {
-            return m_cached_isSubtype.get(catKey);
+    /** A copy of {@code other} that can go on changing without affecting it (or being affected by it). */
+    public Registry(Registry other) {
+        m_symbolToIndex = new HashMap<String, Integer>(other.m_symbolToIndex);
+        m_typeToSetOfOperators = new HashMap<MathClssftn, TreeSet<String>>();
+        for (Entry<MathClssftn, TreeSet<String>> e : other.m_typeToSetOfOperators.entrySet()) {
+            m_typeToSetOfOperators.put(e.getKey(), new TreeSet<String>(e.getValue()));
         }
-        else {
-            boolean is = a.isSubtypeOf(b);
-            m_cached_isSubtype.put(catKey, is);
-            return is;
+        m_indexToSymbol = new ArrayList<String>(other.m_indexToSymbol);
+        m_indexToType = new ArrayList<MathClssftn>(other.m_indexToType);
+        m_parent = other.m_parent.clone();
+        m_unusedIndices = new Stack<Integer>();
+        m_unusedIndices.addAll(other.m_unusedIndices);
+        m_uniqueCounter = other.m_uniqueCounter;
+        m_merges = other.m_merges;
+        m_symbolToUsage = new HashMap<String, Usage>(2048, .5f);
+        m_symbolToUsage.putAll(other.m_symbolToUsage);
+        m_foralls = new HashSet<String>(other.m_foralls);
+        m_typeGraph = other.m_typeGraph;
+        m_typeDictionary = new TreeMap<String, MathClssftn>(other.m_typeDictionary);
+        m_appliedTheoremDependencyGraph = new HashMap<String, Set<Integer>>();
+        for (Entry<String, Set<Integer>> e : other.m_appliedTheoremDependencyGraph.entrySet()) {
+            m_appliedTheoremDependencyGraph.put(e.getKey(), new HashSet<Integer>(e.getValue()));
+        }
+        m_lambda_names = new HashSet<String>(other.m_lambda_names);
+        m_partTypes = new HashSet<String>(other.m_partTypes);
+        m_partTypeParentArray = new HashMap<Integer, ArrayList<Integer>>();
+        for (Entry<Integer, ArrayList<Integer>> e : other.m_partTypeParentArray.entrySet()) {
+            m_partTypeParentArray.put(e.getKey(), new ArrayList<Integer>(e.getValue()));
+        }
+        m_commutative_operators = new HashSet<String>(other.m_commutative_operators);
+        m_subtypes = SubtypeCache.copyOf(other.m_subtypes);
+        for (Entry<MathClssftn, OperatorsOfType> e : other.m_operatorsOfType.entrySet()) {
+            m_operatorsOfType.put(e.getKey(), new OperatorsOfType(e.getValue()));
         }
     }
 
+    public boolean isSubtype(MathClssftn a, MathClssftn b) {
+        return m_subtypes.isSubtype(a, b);
+    }
+
+    /**
+     * Looks up subtypes in {@code shared} (see {@link SubtypeCache#over}) before working them out, from now on and in
+     * copies of this.
+     */
+    protected void shareSubtypes(SubtypeCache shared) {
+        m_subtypes = new SubtypeCache(shared);
+    }
+
     public Usage getUsage(String symbol) {
         return m_symbolToUsage.get(symbol);
     }
 
-    public Set<String> getSetMatchingType(MathClssftn t) {
+    /**
+     * The roots of the symbols added with classification {@code t} or a subtype of it. Worked out the first time
+     * {@code t} is asked about and kept up to date from then on, so it's a lookup after that; what's returned changes
+     * along with the registry.
+     */
+    protected OperatorsOfType getRootsMatchingType(MathClssftn t) {
         assert t != null : "request for null type";
-        Set<String> rSet = new HashSet<String>();
-        Set<MathClssftn> allTypesInSet = m_typeToSetOfOperators.keySet();
-        assert !m_typeToSetOfOperators.isEmpty() : "empty m_typeToSetOfOperator.keySet()";
-        assert allTypesInSet != null : "null set in Registry.getSetMatchingType";
-        // if there are subtypes of t, return those too
-        for (MathClssftn m : allTypesInSet) {
-            assert m != null : "null entry in allTypesInSet";
-            if (isSubtype(m, t)) {
-                rSet.addAll(m_typeToSetOfOperators.get(m));
+        OperatorsOfType ops = m_operatorsOfType.get(t);
+        if (ops != null) return ops;
+        ops = new OperatorsOfType(m_indexToSymbol.size());
+        for (Entry<MathClssftn, TreeSet<String>> e : m_typeToSetOfOperators.entrySet()) {
+            if (!matchesType(e.getKey(), t)) continue;
+            for (String s : e.getValue()) {
+                int index = m_symbolToIndex.get(s);
+                ops.add(index, findAndCompress(index));
             }
         }
-        if (m_typeToSetOfOperators.get(t) != null)
-            rSet.addAll(m_typeToSetOfOperators.get(t));
-
-        return rSet;
+        m_operatorsOfType.put(t, ops);
+        // symbols added since the checkpoint are in it, but nothing's been recorded to take them out again
+        if (m_trail.isRecording()) m_trail.record(() -> m_operatorsOfType.remove(t));
+        return ops;
     }
 
-    public Set<String> getParentsByType(MathClssftn t) {
-        Set<String> rSet = getSetMatchingType(t);
-        Set<String> fSet = new HashSet<String>();
-        for (String s : rSet) {
-            int id = getIndexForSymbol(s);
-            if (m_symbolIndexParentArray.get(id) == id) {
-                fSet.add(s);
-            }
-        }
-        return fSet;
+    private boolean matchesType(MathClssftn m, MathClssftn t) {
+        return m.equals(t) || isSubtype(m, t);
     }
 
     /**
@@ -146,37 +190,69 @@ public class Registry {
         Usage a_us = getUsage(aS);
         Usage b_us = getUsage(bS);
         if (!a_us.equals(Usage.FORALL) && isSubtype(bType, aType)) {
-            m_indexToType.set(opIndexA, bType);
+            MathClssftn old = m_indexToType.set(opIndexA, bType);
+            if (m_trail.isRecording()) m_trail.record(() -> m_indexToType.set(opIndexA, old));
         }
         if (a_us.equals(Usage.LITERAL) || b_us.equals(Usage.LITERAL)) {
-            m_symbolToUsage.put(aS, Usage.LITERAL);
+            setUsage(aS, Usage.LITERAL);
         }
         else if (a_us.equals(Usage.CREATED) || b_us.equals(Usage.CREATED)) {
-            m_symbolToUsage.put(aS, Usage.CREATED);
+            setUsage(aS, Usage.CREATED);
         }
-        if (m_partTypes.contains(bS))
-            m_partTypes.add(aS);
+        if (m_partTypes.contains(bS) && m_partTypes.add(aS) && m_trail.isRecording())
+            m_trail.record(() -> m_partTypes.remove(aS));
         m_unusedIndices.push(opIndexB);
-        m_symbolIndexParentArray.set(opIndexB, opIndexA);
+        m_merges++;
+        for (OperatorsOfType ops : m_operatorsOfType.values()) {
+            int moved = ops.move(opIndexA, opIndexB);
+            if (moved > 0 && m_trail.isRecording()) m_trail.record(() -> ops.unmove(opIndexA, opIndexB, moved));
+        }
+        int oldParent = m_parent[opIndexB];
+        m_parent[opIndexB] = opIndexA;
+        if (m_trail.isRecording()) {
+            m_trail.record(() -> {
+                m_unusedIndices.pop();
+                m_parent[opIndexB] = oldParent;
+            });
+        }
+    }
+
+    private void setUsage(String symbol, Usage usage) {
+        Usage old = m_symbolToUsage.put(symbol, usage);
+        if (m_trail.isRecording()) {
+            m_trail.record(() -> {
+                if (old != null) m_symbolToUsage.put(symbol, old);
+                else m_symbolToUsage.remove(symbol);
+            });
+        }
+    }
+
+    /**
+     * Goes up every time two symbols are merged, and never comes down; while it stays the same, no symbol's root can
+     * have changed but by a rollback.
+     */
+    protected int getMergeCount() {
+        return m_merges;
     }
 
+    // no union by rank: the root has to stay the index substitute() made parent, since that's the one callers keep.
+    // Paths aren't compressed while there's a checkpoint: a rollback would otherwise have to undo that too
     protected int findAndCompress(int index) {
-        // early return for parent
-        if (m_symbolIndexParentArray.get(index) == index)
-            return index;
-        Stack<Integer> needToUpdate = new Stack<Integer>();
-        assert index < m_symbolIndexParentArray.size() : "findAndCompress error";
-        int parent = m_symbolIndexParentArray.get(index);
-        while (parent != index) {
-            needToUpdate.push(index);
-            index = parent;
-            parent = m_symbolIndexParentArray.get(index);
+        assert index < m_indexToSymbol.size() : "findAndCompress error";
+        int[] parent = m_parent;
+        int root = index;
+        while (parent[root] != root) {
+            root = parent[root];
         }
-        while (!needToUpdate.isEmpty()) {
-            m_symbolIndexParentArray.set(needToUpdate.pop(), index);
+        if (m_trail.isRecording()) return root;
+        // second pass points everything on the path straight at the root; nothing is written once that's so, which
+        // keeps registries no one changes (a theorem's, shared between threads) read only
+        while (parent[index] != root) {
+            int next = parent[index];
+            parent[index] = root;
+            index = next;
         }
-
-        return index;
+        return root;
     }
 
     public String getSymbolForIndex(int index) {
@@ -188,8 +264,9 @@ public class Registry {
     }
 
     public String getRootSymbolForSymbol(String sym) {
-        if (m_symbolToIndex.containsKey(sym))
-            return getSymbolForIndex(getIndexForSymbol(sym));
+        Integer r = m_symbolToIndex.get(sym);
+        if (r != null)
+            return getSymbolForIndex(r);
         else
             return "";
     }
@@ -203,13 +280,12 @@ public class Registry {
     }
 
     public int getIndexForSymbol(String symbol) {
-        assert m_symbolToIndex.get(symbol) != null : symbol + " not found"
-                + m_symbolToIndex.toString();
+        Integer r = m_symbolToIndex.get(symbol);
+        assert r != null : symbol + " not found" + m_symbolToIndex.toString();
 
-        if (!m_symbolToIndex.containsKey(symbol)) {
+        if (r == null) {
             return -1;
         }
-        int r = m_symbolToIndex.get(symbol);
         return findAndCompress(r);
     }
 
@@ -223,24 +299,30 @@ public class Registry {
             symbolName = String.format(m_cvFormat, m_uniqueCounter++);
         else
             symbolName = String.format(m_ccFormat, m_uniqueCounter++);
+        if (m_trail.isRecording()) m_trail.record(() -> m_uniqueCounter--);
         return addSymbol(symbolName, symbolType, Usage.CREATED);
     }
 
     // if symbol is new, it adds it, otherwise, it returns current int rep
     public int addSymbol(String symbolName, MathClssftn symbolType, Usage usage) {
-        symbolName = symbolName.replaceAll("\\p{Cc}", "");
-        if (symbolName.contains("lambda"))
-            m_lambda_names.add(symbolName);
+        if (hasControlChars(symbolName)) {
+            symbolName = CONTROL_CHARS.matcher(symbolName).replaceAll("");
+        }
+        final String name = symbolName;
+        if (symbolName.contains("lambda") && m_lambda_names.add(symbolName) && m_trail.isRecording())
+            m_trail.record(() -> m_lambda_names.remove(name));
         assert symbolName.length() != 0 : "blank symbol error in addSymbol";
-        if (isSymbolInTable(symbolName)) {
-            return getIndexForSymbol(symbolName);
+        Integer existing = m_symbolToIndex.get(symbolName);
+        if (existing != null) {
+            return findAndCompress(existing);
         }
-        if (symbolName.contains(".")) {
-            m_partTypes.add(symbolName);
+        if (symbolName.contains(".") && m_partTypes.add(symbolName) && m_trail.isRecording()) {
+            m_trail.record(() -> m_partTypes.remove(name));
         }
 
         if (m_typeToSetOfOperators.containsKey(symbolType)) {
-            m_typeToSetOfOperators.get(symbolType).add(symbolName);
+            TreeSet<String> t = m_typeToSetOfOperators.get(symbolType);
+            if (t.add(symbolName) && m_trail.isRecording()) m_trail.record(() -> t.remove(name));
         }
         else {
             TreeSet<String> t = new TreeSet<String>();
@@ -248,23 +330,55 @@ public class Registry {
             assert symbolType != null : symbolName + " has null type";
             if (symbolType != null) {
                 m_typeToSetOfOperators.put(symbolType, t);
-                m_typeDictionary.put(symbolType.toString().replace("'", ""),
-                        symbolType);
+                String typeKey = symbolType.toString().replace("'", "");
+                MathClssftn oldType = m_typeDictionary.put(typeKey, symbolType);
+                if (m_trail.isRecording()) {
+                    m_trail.record(() -> {
+                        m_typeToSetOfOperators.remove(symbolType);
+                        if (oldType != null) m_typeDictionary.put(typeKey, oldType);
+                        else m_typeDictionary.remove(typeKey);
+                    });
+                }
             }
         }
 
-        m_symbolToUsage.put(symbolName, usage);
-        if (usage.equals(Usage.FORALL) || usage.equals(Usage.HASARGS_FORALL)) {
-            m_foralls.add(symbolName);
+        setUsage(symbolName, usage);
+        if ((usage.equals(Usage.FORALL) || usage.equals(Usage.HASARGS_FORALL)) && m_foralls.add(symbolName) &&
+                m_trail.isRecording()) {
+            m_trail.record(() -> m_foralls.remove(name));
         }
         int incomingsize = m_symbolToIndex.size();
-        m_symbolToIndex.put(symbolName, m_symbolToIndex.size());
+        m_symbolToIndex.put(symbolName, incomingsize);
         m_indexToSymbol.add(symbolName);
         m_indexToType.add(symbolType);
-        m_symbolIndexParentArray.add(incomingsize);
+        if (incomingsize == m_parent.length) {
+            m_parent = Arrays.copyOf(m_parent, incomingsize * 2);
+        }
+        m_parent[incomingsize] = incomingsize;
+        if (symbolType != null) {
+            for (Entry<MathClssftn, OperatorsOfType> e : m_operatorsOfType.entrySet()) {
+                if (!matchesType(symbolType, e.getKey())) continue;
+                OperatorsOfType ops = e.getValue();
+                ops.add(incomingsize, incomingsize);
+                if (m_trail.isRecording()) m_trail.record(() -> ops.remove(incomingsize, incomingsize));
+            }
+        }
+        if (m_trail.isRecording()) {
+            m_trail.record(() -> {
+                m_symbolToIndex.remove(name);
+                m_indexToSymbol.remove(incomingsize);
+                m_indexToType.remove(incomingsize);
+            });
+        }
         assert m_symbolToIndex.size() == m_indexToSymbol.size();
-        assert incomingsize < m_symbolToIndex.size();
-        return m_symbolToIndex.size() - 1;
+        return incomingsize;
+    }
+
+    private static boolean hasControlChars(String s) {
+        for (int i = 0; i < s.length(); i++) {
+            if (Character.getType(s.charAt(i)) == Character.CONTROL) return true;
+        }
+        return false;
     }
 
     public void flushUnusedSymbols() {}
@@ -292,10 +406,10 @@ public class Registry {
     protected Set<String> getChildren(String parent) {
         int pInt = getIndexForSymbol(parent);
         HashSet<Integer> ch = new HashSet<Integer>();
-        for (int i = 0; i < m_symbolIndexParentArray.size(); ++i) {
+        for (int i = 0; i < m_indexToSymbol.size(); ++i) {
             if (i == pInt)
                 continue;
-            if (m_symbolIndexParentArray.get(i) == pInt) {
+            if (m_parent[i] == pInt) {
                 ch.add(i);
             }
         }
@@ -0,0 +1,97 @@
+package edu.clemson.resolve.proving;
+
+import edu.clemson.resolve.semantics.MathClssftn;
+
+import java.util.Collection;
+
+/**
+ * Remembers which classifications are subtypes of which, keyed by the pair of their {@link MathClssftn#getId ids}:
+ * one open addressing table of longs, each holding both ids and the answer, so a lookup neither renders nor
+ * allocates anything.
+ * <p>
+ * A cache can sit on top of a shared one made by {@link #over}, which answers whether each classification a module's
+ * VCs start out with is a subtype of each one a theorem's quantified variables have: what matching theorems against
+ * the VCs asks. That one is never changed once made, so any number of registries (on any number of threads) can read
+ * it; whatever else comes up goes in the registry's own table.</p>
+ */
+final class SubtypeCache {
+
+    // read only, or null
+    private final SubtypeCache m_shared;
+    // entries are sub id << 32 | super id << 1 | (1 if it is a subtype), 0 empty; ids are positive ints, so an
+    // entry never is 0
+    private long[] m_table;
+    private int m_size = 0;
+
+    SubtypeCache(SubtypeCache shared) {
+        m_shared = shared;
+        m_table = new long[16];
+    }
+
+    /** A copy of {@code other} that can go on changing without affecting it; it reads the same shared cache. */
+    static SubtypeCache copyOf(SubtypeCache other) {
+        SubtypeCache c = new SubtypeCache(other.m_shared);
+        c.m_table = other.m_table.clone();
+        c.m_size = other.m_size;
+        return c;
+    }
+
+    /**
+     * A cache answering whether each of {@code subtypes} is a subtype of each of {@code supertypes}, for other caches
+     * to be made on top of. Nothing is added to it after this, so it can be shared.
+     */
+    static SubtypeCache over(Collection<MathClssftn> subtypes, Collection<MathClssftn> supertypes) {
+        SubtypeCache c = new SubtypeCache(null);
+        for (MathClssftn a : subtypes) {
+            for (MathClssftn b : supertypes) {
+                c.isSubtype(a, b);
+            }
+        }
+        return c;
+    }
+
+    boolean isSubtype(MathClssftn a, MathClssftn b) {
+        long key = (long) a.getId() << 32 | (long) b.getId() << 1;
+        long found = m_shared != null ? m_shared.find(key) : 0;
+        if (found == 0) found = find(key);
+        if (found != 0) return (found & 1) != 0;
+        boolean is = a.isSubtypeOf(b);
+        put(is ? key | 1 : key);
+        return is;
+    }
+
+    // the entry for key, or 0
+    private long find(long key) {
+        int mask = m_table.length - 1;
+        for (int p = hash(key) & mask; m_table[p] != 0; p = (p + 1) & mask) {
+            if ((m_table[p] & ~1L) == key) return m_table[p];
+        }
+        return 0;
+    }
+
+    private void put(long entry) {
+        if ((m_size + 1) * 2 > m_table.length) {
+            long[] old = m_table;
+            m_table = new long[old.length * 2];
+            for (long e : old) {
+                if (e != 0) insert(e);
+            }
+        }
+        insert(entry);
+        m_size++;
+    }
+
+    private void insert(long entry) {
+        int mask = m_table.length - 1;
+        int p = hash(entry & ~1L) & mask;
+        while (m_table[p] != 0) {
+            p = (p + 1) & mask;
+        }
+        m_table[p] = entry;
+    }
+
+    private static int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+}
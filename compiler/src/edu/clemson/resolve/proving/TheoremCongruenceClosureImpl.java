@@ -25,11 +25,8 @@ public class TheoremCongruenceClosureImpl {
     protected boolean m_allowNewSymbols;
     protected String m_name;
     protected boolean m_noQuants = false;
-    protected VerificationConditionCongruenceClosureImpl m_lastVC;
     protected Set<String> m_insert_qvars;
-    // clear these when starting new VC
-    protected List<Map<String, String>> m_bindings;
-    protected Set<Map<String, String>> m_selectedBindings;
+    protected final BindingSlots m_slots;
 
     public TheoremCongruenceClosureImpl(DumbMathClssftnHandler g, PExp entireTheorem,
                                         PExp mustMatch, PExp restOfExp, PExp toInsert,
@@ -41,8 +38,6 @@ public class TheoremCongruenceClosureImpl {
         m_theoremString = entireTheorem.toString();
         isEquality = true;
         m_theoremRegistry = new Registry(g);
-        m_bindings = new ArrayList<Map<String, String>>(128);
-        m_selectedBindings = new HashSet<Map<String, String>>(128);
         m_matchConj = new ConjunctionOfNormalizedAtomicExpressions(m_theoremRegistry, null);
         if (mustMatch.getSubExpressions().size() > 0) {
             if (enterToMatchAndBindAsEquivalentToTrue)
@@ -50,7 +45,7 @@ public class TheoremCongruenceClosureImpl {
             else
                 m_matchConj.addFormula(mustMatch);
         }
-        m_matchRequired = new ArrayList<NormalizedAtomicExpression>(m_matchConj.m_expSet.keySet());
+        m_matchRequired = m_matchConj.getAtoms();
         Collections.sort(m_matchRequired, new NormalizedAtomicExpression.numQuantsComparator());
         m_insertExpr = toInsert;
         m_insert_qvars = new HashSet<String>();
@@ -65,22 +60,143 @@ public class TheoremCongruenceClosureImpl {
             m_matchConj.addFormula(restOfExp);
         }
         m_noMatchRequired = new ArrayList<NormalizedAtomicExpression>();
-        Set<String> insert_quants = new HashSet<String>();
+        // roots of the quantified variables of toInsert that are in the theorem's registry
+        Set<Integer> insert_quants = new HashSet<Integer>();
         for (PSymbol p : toInsert.getQuantifiedVariables()) {
-            insert_quants.add(p.toString());
+            Integer q = m_theoremRegistry.m_symbolToIndex.get(p.toString());
+            if (q != null) insert_quants.add(m_theoremRegistry.findAndCompress(q));
         }
-        for (NormalizedAtomicExpression n : m_matchConj.m_expSet.keySet()) {
-            Map<String, Integer> ops = n.getOperatorsAsStrings(false);
-            Set<String> intersection = new HashSet<String>(insert_quants);
-            intersection.retainAll(ops.keySet());
-            if (!m_matchRequired.contains(n) && !ops.containsKey("_g") && !intersection.isEmpty()) {
-                m_noMatchRequired.add(n);
+        Integer gIndex = m_theoremRegistry.m_symbolToIndex.get("_g");
+        int goal = gIndex != null ? m_theoremRegistry.findAndCompress(gIndex) : -1;
+        for (NormalizedAtomicExpression n : m_matchConj.getAtoms()) {
+            if (m_matchRequired.contains(n) || n.containsOperator(goal)) continue;
+            for (int q : insert_quants) {
+                if (n.containsOperator(q)) {
+                    m_noMatchRequired.add(n);
+                    break;
+                }
             }
         }
         Collections.sort(m_noMatchRequired, new NormalizedAtomicExpression.numQuantsComparator());
         if (m_theorem.getQuantifiedVariables().isEmpty()) {
             m_noQuants = true;
         }
+        m_slots = new BindingSlots(m_theoremRegistry, getWildcards());
+        // nothing about a theorem changes after this, so it can be shared by vcs on any number of threads: work out
+        // what would otherwise be worked out (and written) lazily, and leave no path in the registry to compress
+        getNonQuantifiedSymbols();
+        for (int i = 0; i < m_theoremRegistry.m_indexToSymbol.size(); ++i) {
+            m_theoremRegistry.findAndCompress(i);
+        }
+    }
+
+    /**
+     * Where matching this theorem against one VC has got to: the bindings found the last time it was applied and not
+     * yet handed out, and every binding handed out since the VC was last rolled back. The theorem itself is shared;
+     * each VC has a cursor of its own for it (see {@link TheoremIndex.View#cursorFor}).
+     */
+    public final class Cursor {
+        private final VerificationConditionCongruenceClosureImpl m_vc;
+        // rollbacks m_vc had had when m_selectedBindings was last cleared
+        private int m_vcRollbacks;
+        private final List<int[]> m_bindings = new ArrayList<int[]>();
+        private final BindingSet m_selectedBindings = new BindingSet();
+
+        private Cursor(VerificationConditionCongruenceClosureImpl vc) {
+            m_vc = vc;
+            m_vcRollbacks = vc.getRegistry().m_trail.getRollbacks();
+        }
+
+        public TheoremCongruenceClosureImpl getTheorem() {
+            return TheoremCongruenceClosureImpl.this;
+        }
+
+        public int applyTo(ProofBudget budget) {
+            BindingSet sResults;
+            m_bindings.clear();
+            int rollbacks = m_vc.getRegistry().m_trail.getRollbacks();
+            if (m_vcRollbacks != rollbacks) {
+                m_selectedBindings.clear();
+                m_vcRollbacks = rollbacks;
+            }
+            if (m_noQuants)
+                return 1;
+            if (m_matchRequired.size() == 0
+                    || ((m_allowNewSymbols && m_theorem.getQuantifiedVariables()
+                            .size() == 1) && isEquality)) {
+                sResults = findValidBindingsByType(m_vc);
+            }
+            else
+                sResults = findValidBindings(m_vc, budget);
+            if (sResults == null || sResults.isEmpty())
+                return 0;
+            final Map<int[], Integer> scores = new IdentityHashMap<int[], Integer>();
+            Registry vcReg = m_vc.getRegistry();
+            for (int i = 0; i < sResults.size(); ++i) {
+                int[] s = sResults.get(i);
+                if (!m_selectedBindings.contains(s, sResults.hashAt(i))) {
+                    m_bindings.add(s);
+                    scores.put(s, calculateScore(vcReg, s));
+                }
+            }
+            Collections.sort(m_bindings, new Comparator<int[]>() {
+
+                @Override
+                public int compare(int[] o1, int[] o2) {
+                    return scores.get(o1) - scores.get(o2);
+                }
+            });
+            return m_bindings.size();
+        }
+
+        public PExpWithScore getNext() {
+            if (m_noQuants && m_selectedBindings.isEmpty()) {
+                m_selectedBindings.add(m_slots.newBinding(BindingSlots.ABSENT));
+                return new PExpWithScore(m_insertExpr, m_theoremString);
+            }
+            if (m_bindings.isEmpty())
+                return null;
+            HashMap<PExp, PExp> quantToLit = new HashMap<PExp, PExp>();
+            int[] curBinding = m_bindings.remove(0);
+            m_selectedBindings.add(curBinding);
+            Registry vcReg = m_vc.getRegistry();
+            for (PSymbol p : m_insertExpr.getQuantifiedVariables()) {
+                String thKey = p.getTopLevelOperationName();
+                int slot = m_slots.slotOf(thKey);
+                if (slot < 0 || curBinding[slot] == BindingSlots.ABSENT) {
+                    slot = m_slots.slotOf(m_theoremRegistry.getRootSymbolForSymbol(thKey));
+                }
+                int thVal = slot >= 0 ? curBinding[slot] : BindingSlots.ABSENT;
+                if (thVal < 0) return getNext();
+
+                MathClssftn quanType = m_theoremRegistry.getTypeByIndex(m_theoremRegistry.getIndexForSymbol(thKey));
+                PSymbol x = new PSymbol.PSymbolBuilder(thKey).mathClssfctn(quanType)
+                        .quantification(Quantification.UNIVERSAL).build();
+                PSymbol y = new PSymbol.PSymbolBuilder(vcReg.getSymbolForIndex(thVal)).mathClssfctn(quanType)
+                        .quantification(Quantification.NONE).build();
+                quantToLit.put(x, y);
+            }
+
+            PExp modifiedInsert = m_insertExpr.substitute(quantToLit);
+            modifiedInsert = m_vc.getConjunct().find(modifiedInsert);
+            // Discard s = s
+            // if name is =B and left arg (index 1) == right arg (index 2)
+            if ((modifiedInsert.getTopLevelOperationName().equals("=B") && modifiedInsert
+                    .getSubExpressions().get(1).toString().equals(
+                            modifiedInsert.getSubExpressions().get(2).toString()))) {
+                return getNext();
+            }
+            return new PExpWithScore(modifiedInsert, curBinding, m_slots, vcReg, m_theoremString);
+        }
+    }
+
+    /** A fresh cursor for matching this theorem against {@code vc}. */
+    public Cursor newCursor(VerificationConditionCongruenceClosureImpl vc) {
+        return new Cursor(vc);
+    }
+
+    protected Registry getRegistry() {
+        return m_theoremRegistry;
     }
 
     public Set<String> getNonQuantifiedSymbols() {
@@ -119,64 +235,24 @@ public class TheoremCongruenceClosureImpl {
         return m_all_literals;
     }
 
-    public int applyTo(VerificationConditionCongruenceClosureImpl vc,
-            long endTime) {
-        Set<Map<String, String>> sResults;
-        m_bindings.clear();
-        if (m_lastVC == null || !m_lastVC.equals(vc)) {
-            m_selectedBindings.clear();
-            m_lastVC = vc;
-        }
-        if (m_noQuants)
-            return 1;
-        if (m_matchRequired.size() == 0
-                || ((m_allowNewSymbols && m_theorem.getQuantifiedVariables()
-                        .size() == 1) && isEquality)) {
-            sResults = findValidBindingsByType(vc, endTime);
-        }
-        else
-            sResults = findValidBindings(vc, endTime);
-        if (sResults == null || sResults.isEmpty())
-            return 0;
-        nextMap: for (Map<String, String> s : sResults) {
-            if (!m_selectedBindings.contains(s)) {
-                for (String k : s.keySet()) {
-                    String v = s.get(k);
-                    if (!m_insert_qvars.contains(v)) {
-                        continue;
-                    }
-                    if (s.get(k).equals(""))
-                        continue nextMap;
-                }
-                m_bindings.add(s);
-            }
-        }
-        Collections.sort(m_bindings, new Comparator<Map<String, String>>() {
-
-            @Override
-            public int compare(Map<String, String> o1, Map<String, String> o2) {
-                return calculateScore(o1) - calculateScore(o2);
-            }
-        });
-        return m_bindings.size();
-    }
-
-    public int calculateScore(Map<String, String> bmap) {
-        HashSet<String> seen = new HashSet<String>(bmap.keySet().size());
-        float max = m_lastVC.getRegistry().m_indexToSymbol.size();
+    public int calculateScore(Registry vcReg, int[] binding) {
+        int[] seen = new int[binding.length];
+        int numSeen = 0;
+        float max = vcReg.m_indexToSymbol.size();
         float age = 0f;
-        float sSz = bmap.keySet().size();
-        for (String k : bmap.keySet()) {
-            String rS =
-                    m_lastVC.getRegistry().getRootSymbolForSymbol(bmap.get(k));
-            seen.add(rS);
-            if (m_lastVC.getRegistry().m_symbolToIndex.containsKey(rS)) {
-                int indexVal = m_lastVC.getRegistry().getIndexForSymbol(rS);
-                // Age
-                age += indexVal;
+        float sSz = 0;
+        nextSlot: for (int v : binding) {
+            if (v == BindingSlots.ABSENT) continue;
+            sSz++;
+            int root = v == BindingSlots.UNBOUND ? v : vcReg.findAndCompress(v);
+            // Age
+            if (root >= 0) age += root;
+            for (int i = 0; i < numSeen; ++i) {
+                if (seen[i] == root) continue nextSlot;
             }
+            seen[numSeen++] = root;
         }
-        float diff = 1.0f - seen.size() / sSz;
+        float diff = 1.0f - numSeen / sSz;
         float avgAge = age / sSz;
         // these range from [0,1], lower is better
         float scaledAvgAge = avgAge / max;
@@ -187,79 +263,54 @@ public class TheoremCongruenceClosureImpl {
         return r;
     }
 
-    public PExpWithScore getNext() {
-        if (m_noQuants && m_selectedBindings.isEmpty()) {
-            m_selectedBindings.add(new HashMap<String, String>());
-            return new PExpWithScore(m_insertExpr,
-                    new HashMap<String, String>(), m_theorem.toString());
-        }
-        if (m_bindings.isEmpty())
-            return null;
-        HashMap<PExp, PExp> quantToLit = new HashMap<PExp, PExp>();
-        Map<String, String> curBinding = m_bindings.remove(0);
-        m_selectedBindings.add(curBinding);
-        for (PSymbol p : m_insertExpr.getQuantifiedVariables()) {
-            String thKey = p.getTopLevelOperationName();
-            String thVal = "";
-            if (curBinding.containsKey(thKey)) {
-                thVal = curBinding.get(thKey);
-            }
-            else if (curBinding.containsKey(m_theoremRegistry.getRootSymbolForSymbol(thKey))) {
-                thVal = curBinding.get(m_theoremRegistry.getRootSymbolForSymbol(thKey));
-            }
-            if (thVal.equals("")) return getNext();
-
-            MathClssftn quanType = m_theoremRegistry.getTypeByIndex(m_theoremRegistry.getIndexForSymbol(thKey));
-            PSymbol x = new PSymbol.PSymbolBuilder(thKey).mathClssfctn(quanType)
-                    .quantification(Quantification.UNIVERSAL).build();
-            PSymbol y = new PSymbol.PSymbolBuilder(thVal).mathClssfctn(quanType)
-                    .quantification(Quantification.NONE).build();
-            quantToLit.put(x, y);
-        }
-
-        PExp modifiedInsert = m_insertExpr.substitute(quantToLit);
-        modifiedInsert = m_lastVC.getConjunct().find(modifiedInsert);
-        // Discard s = s
-        // if name is =B and left arg (index 1) == right arg (index 2)
-        if ((modifiedInsert.getTopLevelOperationName().equals("=B") && modifiedInsert
-                .getSubExpressions().get(1).toString().equals(
-                        modifiedInsert.getSubExpressions().get(2).toString()))) {
-            return getNext();
-        }
-        return new PExpWithScore(modifiedInsert, curBinding, m_theorem.toString());
-    }
-
     // variables to bind are the quantified vars the quantified statement
-    // and the created variables in the match conjunction
-    private Map<String, String> getInitBindings() {
-        HashMap<String, String> initBindings = new HashMap<String, String>();
+    // and the created variables in the match conjunction, plus _g for a goal
+    // and any quantified var findValidBindingsByType might bind on its own
+    private List<String> getWildcards() {
+        List<String> wildcards = new ArrayList<String>();
         // Created vars. that are parents of quantified vars can be a problem later
         for (int i = 0; i < m_theoremRegistry.m_indexToSymbol.size(); ++i) {
 
             String curSym = m_theoremRegistry.getSymbolForIndex(i);
             Registry.Usage us = m_theoremRegistry.getUsage(curSym);
             if (us == Registry.Usage.CREATED || us == Registry.Usage.FORALL || us == Registry.Usage.HASARGS_FORALL) {
-                initBindings.put(curSym, "");
+                wildcards.add(curSym);
+            }
+        }
+        wildcards.add("_g");
+        wildcards.addAll(m_theoremRegistry.getForAlls());
+        return wildcards;
+    }
 
+    private int[] getInitBindings() {
+        int[] initBindings = m_slots.newBinding(BindingSlots.ABSENT);
+        for (int i = 0; i < m_theoremRegistry.m_indexToSymbol.size(); ++i) {
+            String curSym = m_theoremRegistry.getSymbolForIndex(i);
+            Registry.Usage us = m_theoremRegistry.getUsage(curSym);
+            if (us == Registry.Usage.CREATED || us == Registry.Usage.FORALL || us == Registry.Usage.HASARGS_FORALL) {
+                initBindings[m_slots.slotOf(curSym)] = BindingSlots.UNBOUND;
             }
         }
         return initBindings;
     }
 
-    private Set<Map<String, String>> findValidBindingsByType(
-            VerificationConditionCongruenceClosureImpl vc, long endTime) {
+    private BindingSet findValidBindingsByType(
+            VerificationConditionCongruenceClosureImpl vc) {
         // Case where no match conj. is produced.
         // Example: S = Empty_String. Relevant info is only in registry.
-        Set<Map<String, String>> allValidBindings = new HashSet<>();
+        BindingSet allValidBindings = new BindingSet();
+        Registry vcReg = vc.getRegistry();
         // x = constant?
         if (partMatchedisConstantEquation) {
-            HashMap<String, String> wildToActual = new HashMap<>();
+            int[] wildToActual = m_slots.newBinding(BindingSlots.ABSENT);
             for (String wild : m_theoremRegistry.getForAlls()) {
 
                 String actual = m_theoremRegistry.getRootSymbolForSymbol(wild);
                 // wildcard is not parent
                 if (!actual.equals(wild)) {
-                    wildToActual.put(wild, actual);
+                    Integer actualIndex = vcReg.m_symbolToIndex.get(actual);
+                    if (actualIndex == null) return null;
+                    wildToActual[m_slots.slotOf(wild)] = vcReg.findAndCompress(actualIndex);
                 }
                 // wildcard is parent, bind to child
                 else {
@@ -272,7 +323,9 @@ public class TheoremCongruenceClosureImpl {
                                 Registry.Usage.FORALL)
                                 || !m_theoremRegistry.getUsage(c).equals(
                                         Registry.Usage.CREATED)) {
-                            wildToActual.put(wild, c);
+                            Integer cIndex = vcReg.m_symbolToIndex.get(c);
+                            if (cIndex == null) return null;
+                            wildToActual[m_slots.slotOf(wild)] = vcReg.findAndCompress(cIndex);
                             break;
                         }
                         return null;
@@ -287,12 +340,19 @@ public class TheoremCongruenceClosureImpl {
         Set<String> foralls = m_theoremRegistry.getForAlls();
         if (foralls.size() != 1) return null;
         String wild = foralls.iterator().next();
+        int wildSlot = m_slots.slotOf(wild);
         MathClssftn t = m_theoremRegistry.getTypeByIndex(m_theoremRegistry.getIndexForSymbol(wild));
 
-        for (String actual : vc.getRegistry().getParentsByType(t)) {
-            HashMap<String, String> wildToActual = new HashMap<String, String>();
-            wildToActual.put(wild, actual);
-            if (!wild.equals(actual)) { // can be = with constants in theorems
+        OperatorsOfType actuals = vcReg.getRootsMatchingType(t);
+        // the vc can have a symbol named the same as wild (it can be = with constants in theorems); that one's no
+        // binding, though others sharing its root are
+        Integer sameName = vcReg.m_symbolToIndex.get(wild);
+        int skip = sameName != null && actuals.isMember(sameName) ? vcReg.findAndCompress(sameName) : -1;
+        for (int i = 0; i < actuals.size(); ++i) {
+            int actual = actuals.get(i);
+            if (actual != skip || actuals.countOf(actual) > 1) {
+                int[] wildToActual = m_slots.newBinding(BindingSlots.ABSENT);
+                wildToActual[wildSlot] = actual;
                 allValidBindings.add(wildToActual);
             }
         }
@@ -300,14 +360,16 @@ public class TheoremCongruenceClosureImpl {
 
     }
 
-    private Set<Map<String, String>> findValidBindings(VerificationConditionCongruenceClosureImpl vc, long endTime) {
-        Set<Map<String, String>> results = new HashSet<>();
-        Map<String, String> initBindings = getInitBindings();
+    // each expression matched counts as a step of budget; if that runs out, there are no bindings
+    private BindingSet findValidBindings(VerificationConditionCongruenceClosureImpl vc, ProofBudget budget) {
+        BindingSet results = new BindingSet();
+        int[] initBindings = getInitBindings();
         if (m_theoremRegistry.m_symbolToIndex.containsKey("_g")) {
-            // each goal gets a new map with _g bound to the goal
+            // each goal gets a new binding with _g bound to the goal
+            int gSlot = m_slots.slotOf("_g");
             for (String g : vc.m_goal) {
-                Map<String, String> gBinds = new HashMap<String, String>(initBindings);
-                gBinds.put("_g", g);
+                int[] gBinds = initBindings.clone();
+                gBinds[gSlot] = vc.getRegistry().getIndexForSymbol(g);
                 results.add(gBinds);
             }
         }
@@ -315,11 +377,13 @@ public class TheoremCongruenceClosureImpl {
             results.add(initBindings);
         }
         for (NormalizedAtomicExpression e_t : m_matchRequired) {
-            results = vc.getConjunct().getMatchesForOverrideSet(e_t, results);
+            if (budget.step()) return null;
+            results = vc.getConjunct().getMatchesForOverrideSet(e_t, results, m_slots);
         }
-        Set<Map<String, String>> t_results;
+        BindingSet t_results;
         for (NormalizedAtomicExpression e_t : m_noMatchRequired) {
-            t_results = vc.getConjunct().getMatchesForOverrideSet(e_t, results);
+            if (budget.step()) return null;
+            t_results = vc.getConjunct().getMatchesForOverrideSet(e_t, results, m_slots);
             if (t_results.isEmpty()) continue;
             else results.addAll(t_results);
         }
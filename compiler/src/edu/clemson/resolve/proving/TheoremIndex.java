@@ -0,0 +1,183 @@
+package edu.clemson.resolve.proving;
+
+import java.util.*;
+
+/**
+ * Indexes a list of theorems by their non-quantified symbols, so a {@link View} over a VC's {@link Registry} can hand
+ * back just the theorems whose symbols all appear in the VC, without checking every theorem again each time.
+ * <p>
+ * A registry only gains symbols (merging leaves the merged away name in the table) unless it's rolled back to a
+ * checkpoint, so once a theorem applies to a VC it keeps applying; a view only has to look at the symbols added
+ * since it was last asked, and only starts over after a rollback.</p>
+ */
+final class TheoremIndex {
+
+    private final List<TheoremCongruenceClosureImpl> m_theorems;
+    private final Map<TheoremCongruenceClosureImpl, Integer> m_positions =
+            new IdentityHashMap<TheoremCongruenceClosureImpl, Integer>();
+    // symbol -> positions of the theorems it appears in
+    private final Map<String, int[]> m_theoremsBySymbol = new HashMap<String, int[]>();
+    // theorem name -> positions of the theorems going by it (applied counts are kept by name)
+    private final Map<String, int[]> m_theoremsByName = new HashMap<String, int[]>();
+    private final int[] m_numSymbols;
+    private final String[][] m_symbols;
+
+    TheoremIndex(List<TheoremCongruenceClosureImpl> theorems) {
+        m_theorems = new ArrayList<TheoremCongruenceClosureImpl>(theorems);
+        m_numSymbols = new int[m_theorems.size()];
+        m_symbols = new String[m_theorems.size()][];
+        Map<String, List<Integer>> bySymbol = new HashMap<String, List<Integer>>();
+        Map<String, List<Integer>> byName = new HashMap<String, List<Integer>>();
+        for (int i = 0; i < m_theorems.size(); ++i) {
+            TheoremCongruenceClosureImpl t = m_theorems.get(i);
+            m_positions.put(t, i);
+            byName.computeIfAbsent(t.m_name, k -> new ArrayList<Integer>()).add(i);
+            Set<String> symbols = t.getNonQuantifiedSymbols();
+            m_numSymbols[i] = symbols.size();
+            m_symbols[i] = symbols.toArray(new String[symbols.size()]);
+            for (String s : symbols) {
+                List<Integer> positions = bySymbol.get(s);
+                if (positions == null) {
+                    positions = new ArrayList<Integer>();
+                    bySymbol.put(s, positions);
+                }
+                positions.add(i);
+            }
+        }
+        for (Map.Entry<String, List<Integer>> e : bySymbol.entrySet()) {
+            m_theoremsBySymbol.put(e.getKey(), toArray(e.getValue()));
+        }
+        for (Map.Entry<String, List<Integer>> e : byName.entrySet()) {
+            m_theoremsByName.put(e.getKey(), toArray(e.getValue()));
+        }
+    }
+
+    private static int[] toArray(List<Integer> l) {
+        int[] result = new int[l.size()];
+        for (int i = 0; i < result.length; ++i) {
+            result[i] = l.get(i);
+        }
+        return result;
+    }
+
+    int size() {
+        return m_theorems.size();
+    }
+
+    TheoremCongruenceClosureImpl get(int position) {
+        return m_theorems.get(position);
+    }
+
+    /** Returns the position of {@code t} in this index, or -1 if it isn't in it. */
+    int positionOf(TheoremCongruenceClosureImpl t) {
+        Integer p = m_positions.get(t);
+        return p != null ? p : -1;
+    }
+
+    /** The non-quantified symbols of the theorem at {@code position}. */
+    String[] getSymbols(int position) {
+        return m_symbols[position];
+    }
+
+    /** Positions of the theorems {@code symbol} appears in (as a non-quantified symbol). */
+    int[] getTheoremsWith(String symbol) {
+        int[] positions = m_theoremsBySymbol.get(symbol);
+        return positions != null ? positions : new int[0];
+    }
+
+    /** Positions of the theorems named {@code name}. */
+    int[] getTheoremsNamed(String name) {
+        int[] positions = m_theoremsByName.get(name);
+        return positions != null ? positions : new int[0];
+    }
+
+    View newView(VerificationConditionCongruenceClosureImpl vc) {
+        return new View(vc);
+    }
+
+    /**
+     * The theorems applicable to one VC, and where matching each against it has got to; not thread safe, like the VC
+     * itself.
+     */
+    final class View {
+        private final VerificationConditionCongruenceClosureImpl m_vc;
+        private final Registry m_vcReg;
+        // by position, made the first time they're asked for
+        private final TheoremCongruenceClosureImpl.Cursor[] m_cursors =
+                new TheoremCongruenceClosureImpl.Cursor[m_theorems.size()];
+        private final int[] m_missing = new int[m_numSymbols.length];
+        private final BitSet m_applicable = new BitSet(m_theorems.size());
+        private final BitSet m_removed = new BitSet(m_theorems.size());
+        private int m_symbolsSeen;
+        private int m_rollbacksSeen;
+
+        private View(VerificationConditionCongruenceClosureImpl vc) {
+            m_vc = vc;
+            m_vcReg = vc.getRegistry();
+            reset();
+        }
+
+        // back to how things stand with none of the registry's symbols looked at
+        private void reset() {
+            System.arraycopy(m_numSymbols, 0, m_missing, 0, m_missing.length);
+            m_applicable.clear();
+            m_removed.clear();
+            for (int i = 0; i < m_missing.length; ++i) {
+                if (m_missing[i] == 0) m_applicable.set(i);
+            }
+            m_symbolsSeen = 0;
+            m_rollbacksSeen = m_vcReg.m_trail.getRollbacks();
+        }
+
+        TheoremIndex getIndex() {
+            return TheoremIndex.this;
+        }
+
+        /** The VC's cursor for the theorem at {@code position}. */
+        TheoremCongruenceClosureImpl.Cursor cursorAt(int position) {
+            if (m_cursors[position] == null) m_cursors[position] = m_theorems.get(position).newCursor(m_vc);
+            return m_cursors[position];
+        }
+
+        /** The VC's cursor for {@code t}, which has to be one of the indexed theorems. */
+        TheoremCongruenceClosureImpl.Cursor cursorFor(TheoremCongruenceClosureImpl t) {
+            return cursorAt(m_positions.get(t));
+        }
+
+        /**
+         * Returns the positions of the theorems whose non-quantified symbols are all in the VC. The set is live: it's
+         * only brought up to date by the next call, so callers mustn't hang on to it.
+         */
+        BitSet getApplicablePositions() {
+            if (m_rollbacksSeen != m_vcReg.m_trail.getRollbacks()) reset();
+            List<String> symbols = m_vcReg.m_indexToSymbol;
+            for (; m_symbolsSeen < symbols.size(); ++m_symbolsSeen) {
+                int[] positions = m_theoremsBySymbol.get(symbols.get(m_symbolsSeen));
+                if (positions == null) continue;
+                for (int p : positions) {
+                    if (--m_missing[p] == 0 && !m_removed.get(p)) m_applicable.set(p);
+                }
+            }
+            return m_applicable;
+        }
+
+        /** Returns the theorems (in their original order) whose non-quantified symbols are all in the VC. */
+        List<TheoremCongruenceClosureImpl> getApplicable() {
+            getApplicablePositions();
+            List<TheoremCongruenceClosureImpl> result =
+                    new ArrayList<TheoremCongruenceClosureImpl>(m_applicable.cardinality());
+            for (int i = m_applicable.nextSetBit(0); i >= 0; i = m_applicable.nextSetBit(i + 1)) {
+                result.add(m_theorems.get(i));
+            }
+            return result;
+        }
+
+        /** Stops offering {@code t} for this VC (until it's rolled back). */
+        void remove(TheoremCongruenceClosureImpl t) {
+            Integer p = m_positions.get(t);
+            if (p == null) return;
+            m_removed.set(p);
+            m_applicable.clear(p);
+        }
+    }
+}
@@ -0,0 +1,240 @@
+package edu.clemson.resolve.proving;
+
+import edu.clemson.resolve.proving.absyn.PApply;
+import edu.clemson.resolve.proving.absyn.PExp;
+import edu.clemson.resolve.proving.absyn.PSymbol;
+import edu.clemson.resolve.semantics.DumbMathClssftnHandler;
+import edu.clemson.resolve.semantics.MathClssftn;
+import edu.clemson.resolve.semantics.MathFunctionClssftn;
+import edu.clemson.resolve.semantics.ModuleIdentifier;
+import edu.clemson.resolve.semantics.Quantification;
+import edu.clemson.resolve.semantics.symbol.TheoremSymbol;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Theorems compiled into the congruence closure form the prover matches VCs against, each compiled once and then
+ * shared by every prover the compiler runs (and, under a {@link edu.clemson.resolve.compiler.CompilerSession}, by
+ * every compiler that session serves). The same precis theorems come up in module after module, and compiling
+ * them all over again was most of what it cost to start a prover.
+ * <p>
+ * Theorems are kept by the module defining them and their name. A compiled theorem never changes (what matching it
+ * against a VC changes is kept in that VC's {@link TheoremCongruenceClosureImpl.Cursor}), so provers on any number
+ * of threads can use the same one. A theorem asked for with a different assertion than it was compiled from (its
+ * module was edited and analyzed again, say), or under a different type graph or N and Z, is compiled again.</p>
+ */
+public final class TheoremLibrary {
+
+    private static final String SUM_CONVERSION = "Integer / Natural Sum Conversion";
+
+    /** The forms one theorem compiles to, in the order the prover is to consider them. */
+    static final class Entry {
+        final List<TheoremCongruenceClosureImpl> m_theorems = new ArrayList<>();
+        final Set<String> m_nonQuantifiedSymbols = new HashSet<>();
+        final List<TheoremCongruenceClosureImpl> m_smallEndEquations = new ArrayList<>();
+        final List<TheoremCongruenceClosureImpl> m_goalSearchingTheorems = new ArrayList<>();
+
+        // what it was compiled from
+        private final String m_assertion;
+        private final DumbMathClssftnHandler m_typeGraph;
+        private final MathClssftn m_z, m_n;
+
+        private Entry(String assertion, DumbMathClssftnHandler g, MathClssftn z, MathClssftn n) {
+            m_assertion = assertion;
+            m_typeGraph = g;
+            m_z = z;
+            m_n = n;
+        }
+
+        private boolean compiledFrom(String assertion, DumbMathClssftnHandler g, MathClssftn z, MathClssftn n) {
+            return m_assertion.equals(assertion) && m_typeGraph == g && m_z == z && m_n == n;
+        }
+
+        private void compile(PExp assertion, String eName) {
+            DumbMathClssftnHandler g = m_typeGraph;
+            if (assertion.getTopLevelOperationName().equals("=B") && assertion.getQuantifiedVariables().size() > 0) {
+                addEqualityTheorem(true, assertion, eName + "_left"); // match left
+                addEqualityTheorem(false, assertion, eName + "_right"); // match right
+                //m_theorems.add(new TheoremCongruenceClosureImpl(g, assertion, assertion, assertion, false,
+                //false, eName + "_whole")); // match whole*/
+            }
+            else {
+                TheoremCongruenceClosureImpl t;
+                if (assertion.getTopLevelOperationName().equals("impliesB")) {
+
+                    //O.k. it seems we can safely assume the assertion (at the top level at least) will be an
+                    //instance of a function app (PApply) TODO: bp this(103) when m_theorems is size 7
+                    addGoalSearchingTheorem((PApply)assertion, eName);
+                    //first arg (.get(1)) of function implies, second arg (.get(2))
+                    t =
+                            new TheoremCongruenceClosureImpl(g, assertion,
+                                    assertion.getSubExpressions().get(1),
+                                    assertion.getSubExpressions().get(2),
+                                    assertion.getSubExpressions().get(2), true,
+                                    false, eName);
+                }
+                else {
+                    t =
+                            new TheoremCongruenceClosureImpl(g, assertion,
+                                    assertion, assertion, assertion, false,
+                                    false, eName);
+                }
+                m_theorems.add(t);
+                m_nonQuantifiedSymbols.addAll(t.getNonQuantifiedSymbols());
+                //addContrapositive(assertion, eName);
+            }
+        }
+
+        private void addEqualityTheorem(boolean matchLeft, PExp theorem, String thName) {
+            PExp lhs, rhs;
+            List<? extends PExp> subExps = theorem.getSubExpressions();
+            if (theorem instanceof PApply) {
+                subExps = ((PApply) theorem).getArguments();
+            }
+            if (matchLeft) {
+                lhs = subExps.get(0);
+                rhs = subExps.get(1);
+            }
+            else {
+                lhs = subExps.get(1);
+                rhs = subExps.get(0);
+            }
+
+            //if lhs is a PApply lhs.getSubexpressions will be at least size 1 (for function name exp portion) + at least
+            //one for an argument. If there were zero args, it wouldn't have been a PApply. It would've been built as a
+            //PSymbol. So in other words, I think this logic will still hold up.
+            if (lhs.getSubExpressions().size() > 0 || rhs.getSubExpressions().size() > 0) {
+                TheoremCongruenceClosureImpl t =
+                        new TheoremCongruenceClosureImpl(m_typeGraph, theorem, lhs, rhs, theorem, false, false, thName);
+                m_theorems.add(t);
+                if (lhs.getSymbolNames().size() < rhs.getSymbolNames().size()) {
+                    m_smallEndEquations.add(t);
+                }
+            }
+        }
+
+        // forall x. p(x) -> q(x) to
+        // forall x,y,_g.((q(x) = _g) )
+        //              -> (_g = (p(x) or _g))
+        // the idea is to find q(x) = g, then add all p(x,y) we can find to goal
+        private void addGoalSearchingTheorem(PApply theorem, String name) {
+            // search method will do a search for each current goal, replacing _g with goal in the binding map
+
+            //create a goal symbol
+            PSymbol goal = new PSymbol.PSymbolBuilder("_g")
+                    .quantification(Quantification.UNIVERSAL)
+                    .mathClssfctn(m_typeGraph.BOOLEAN)
+                    .build();
+
+            //create q(x) = _g
+            PApply ant = new PApply.PApplyBuilder(Utilities.buildEqBName(m_typeGraph))
+                    .arguments(theorem.getArguments().get(1), goal)
+                    .applicationType(m_typeGraph.BOOLEAN)
+                    .build();
+
+            //create p(x) or _g
+            PApply pOrG = new PApply.PApplyBuilder(Utilities.buildOrBName(m_typeGraph))
+                    .arguments(theorem.getSubExpressions().get(1), goal)
+                    .applicationType(m_typeGraph.BOOLEAN)
+                    .build();
+
+            //create (p(x) or _g) = _g
+            PApply consequent = new PApply.PApplyBuilder(Utilities.buildEqBName(m_typeGraph))
+                    .arguments(pOrG, goal)
+                    .applicationType(m_typeGraph.BOOLEAN)
+                    .build();
+
+            TheoremCongruenceClosureImpl t =
+                    new TheoremCongruenceClosureImpl(m_typeGraph, theorem, ant,
+                            consequent, consequent, true, false, name + "_goalSearch");
+            m_theorems.add(t);
+            m_goalSearchingTheorems.add(t);
+        }
+
+        // Temporarily coding conversion theorem for natural / integer addition
+        // forall x,y:N, +N(x,y) = +Z(x,y) match left only
+        private void sumConversion(MathClssftn n, MathClssftn z) {
+
+            PSymbol x = new PSymbol.PSymbolBuilder("x")
+                    .quantification(Quantification.UNIVERSAL)
+                    .mathClssfctn(n)
+                    .build();
+
+            PSymbol y = new PSymbol.PSymbolBuilder("y")
+                    .quantification(Quantification.UNIVERSAL)
+                    .mathClssfctn(n)
+                    .build();
+
+            PSymbol nPlusName = new PSymbol.PSymbolBuilder("+N")
+                    .mathClssfctn(new MathFunctionClssftn(m_typeGraph, n, n, n))
+                    .build();
+            //+N(x,y)
+            PApply nPlusApp = new PApply.PApplyBuilder(nPlusName)
+                    .arguments(x, y)
+                    .applicationType(n)
+                    .build();
+
+            PSymbol zPlusName = new PSymbol.PSymbolBuilder("+Z")
+                    .mathClssfctn(new MathFunctionClssftn(m_typeGraph, z, z, z))
+                    .build();
+            //+Z(x,y)
+            PApply zPlusApp = new PApply.PApplyBuilder(zPlusName)
+                    .arguments(x, y)
+                    .applicationType(z)
+                    .build();
+
+            //+N(x,y) =B +Z(x,y)
+            PApply eq = new PApply.PApplyBuilder(Utilities.buildEqBName(m_typeGraph))
+                    .arguments(nPlusApp, zPlusApp)
+                    .applicationType(m_typeGraph.BOOLEAN)
+                    .build();
+            addEqualityTheorem(true, eq, SUM_CONVERSION + "_left");
+            addEqualityTheorem(false, eq, SUM_CONVERSION + "_right");
+        }
+    }
+
+    // "module::name" -> what that theorem compiles to
+    private final ConcurrentMap<String, Entry> m_entries = new ConcurrentHashMap<>();
+
+    /** Forgets the theorems of {@code module}, which is about to be analyzed again (or is gone). */
+    public void removeModule(@NotNull ModuleIdentifier module) {
+        String prefix = module + "::";
+        m_entries.keySet().removeIf(key -> key.startsWith(prefix));
+    }
+
+    /** {@code theorem}, compiled with N and Z (as the prover knows them) in place of their synonyms. */
+    @NotNull
+    Entry get(@NotNull TheoremSymbol theorem, @NotNull DumbMathClssftnHandler g, @Nullable MathClssftn z,
+              @Nullable MathClssftn n) {
+        String key = theorem.getModuleIdentifier() + "::" + theorem.getName();
+        String assertion = theorem.getAssertion().toString();
+        Entry e = m_entries.get(key);
+        if (e == null || !e.compiledFrom(assertion, g, z, n)) {
+            // two provers can end up compiling a theorem at once; either result will do
+            e = new Entry(assertion, g, z, n);
+            e.compile(Utilities.replacePExp(theorem.getAssertion(), g, z, n), theorem.getName());
+            m_entries.put(key, e);
+        }
+        return e;
+    }
+
+    /** The conversion between sums of naturals and of integers, which no module states. */
+    @NotNull
+    Entry getSumConversion(@NotNull DumbMathClssftnHandler g, @NotNull MathClssftn z, @NotNull MathClssftn n) {
+        String key = "::" + SUM_CONVERSION;
+        Entry e = m_entries.get(key);
+        if (e == null || !e.compiledFrom("", g, z, n)) {
+            e = new Entry("", g, z, n);
+            e.sumConversion(n, z);
+            m_entries.put(key, e);
+        }
+        return e;
+    }
+}
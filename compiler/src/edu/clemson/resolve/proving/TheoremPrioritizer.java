@@ -16,107 +16,253 @@ import java.util.*;
 
 /**
  * Created by nabilkabbani on 12/10/14.
+ * <p>
+ * Lives as long as the VC it ranks theorems for. Each round of the prover starts with {@link #refresh()}, which puts
+ * back the theorems polled last round and re-scores only those theorems whose score could have changed: ones whose
+ * symbols were added, merged, or moved toward or away from a goal, ones whose applied count went up, and, when the
+ * registry grew, ones scored by the not-contained penalty alone.</p>
  */
 public class TheoremPrioritizer {
 
-    protected PriorityQueue<TheoremWithScore> m_pQueue;
+    private final TheoremIndex.View m_theorems;
+    private final TheoremIndex m_index;
     private Map<String, Integer> m_theoremAppliedCount;
     private Registry m_vcReg;
     private VerificationConditionCongruenceClosureImpl m_vc;
     private Map<String, Integer> m_nonQuantMap;
+    private Set<String> m_nonQuantifiedTheoremSymbols;
     private Set<TheoremCongruenceClosureImpl> m_smallEndEquations;
 
-    public TheoremPrioritizer(List<TheoremCongruenceClosureImpl> theoremList,
+    // registry symbols already looked at for m_nonQuantMap
+    private int m_registrySeen = 0;
+    private int m_rollbacksSeen;
+    // nonquant symbol -> what it contributes to a score (its goalArgs entry, falling back on its m_nonQuantMap one)
+    private final Map<String, Integer> m_symbolValue = new HashMap<String, Integer>();
+    private int m_penalty = -1;
+    private final BitSet m_known = new BitSet();
+    private final BitSet m_dirty = new BitSet();
+    private final BitSet m_penaltyScored = new BitSet();
+    private final List<Integer> m_polled = new ArrayList<Integer>();
+
+    // min heap of theorem positions, by score and then position
+    private final int[] m_heap;
+    private final int[] m_heapSlot;
+    private final int[] m_score;
+    private int m_heapSize = 0;
+
+    public TheoremPrioritizer(TheoremIndex.View theorems,
                               Map<String, Integer> appliedCount,
                               VerificationConditionCongruenceClosureImpl vc,
                               Set<String> nonQuantifiedTheoremSymbols,
                               Set<TheoremCongruenceClosureImpl> smallEndEquations) {
-        m_pQueue = new PriorityQueue<TheoremWithScore>(theoremList.size());
+        m_theorems = theorems;
+        m_index = theorems.getIndex();
         m_theoremAppliedCount = appliedCount;
         m_vcReg = vc.getRegistry();
         m_vc = vc;
         m_nonQuantMap = new HashMap<String, Integer>();
+        m_nonQuantifiedTheoremSymbols = nonQuantifiedTheoremSymbols;
         m_smallEndEquations = smallEndEquations;
-        int count = 0;
-        for (String s : m_vcReg.m_indexToSymbol) {
-            if (nonQuantifiedTheoremSymbols.contains(s)) {
-                m_nonQuantMap.put(s, count++);
+        m_heap = new int[m_index.size()];
+        m_heapSlot = new int[m_index.size()];
+        Arrays.fill(m_heapSlot, -1);
+        m_score = new int[m_index.size()];
+        m_rollbacksSeen = m_vcReg.m_trail.getRollbacks();
+    }
+
+    /** Brings every score up to date with the VC and puts back the theorems polled since the last refresh. */
+    public void refresh() {
+        if (m_rollbacksSeen != m_vcReg.m_trail.getRollbacks()) {
+            reset();
+        }
+        BitSet applicable = m_theorems.getApplicablePositions();
+        for (int p = applicable.nextSetBit(0); p >= 0; p = applicable.nextSetBit(p + 1)) {
+            if (!m_known.get(p)) {
+                m_known.set(p);
+                m_dirty.set(p);
             }
         }
-        for (TheoremCongruenceClosureImpl t : theoremList) {
-            TheoremWithScore tws = new TheoremWithScore(t);
-            //int score = calculateScore(t.getFunctionNames());
-            int score;
-            //if (!shouldExclude(t.getFunctionNames())) {
-            Set<String> unQuantSyms = t.getNonQuantifiedSymbols();
-            //VC #1 in my system corresponds to VC 0_3 in the old system (for my minimal int do_nothing example anyways..)
-            if (!shouldExclude(t.getNonQuantifiedSymbols())) {
-                score =
-                        calculateScoreMinimum(t.getNonQuantifiedSymbols(),
-                                m_vcReg.m_symbolToIndex.keySet().size());
-                if (m_theoremAppliedCount.containsKey(t.m_name)) {
-                    score += m_theoremAppliedCount.get(t.m_name);
-                }
-                if (m_smallEndEquations.contains(t)) {
-                    score += 1;
+        for (int p : m_polled) {
+            for (int q : m_index.getTheoremsNamed(m_index.get(p).m_name)) {
+                m_dirty.set(q);
+            }
+        }
+        m_polled.clear();
+
+        List<String> symbols = m_vcReg.m_indexToSymbol;
+        for (; m_registrySeen < symbols.size(); ++m_registrySeen) {
+            String s = symbols.get(m_registrySeen);
+            if (m_nonQuantifiedTheoremSymbols.contains(s)) {
+                m_nonQuantMap.put(s, m_nonQuantMap.size());
+            }
+        }
+        Map<Integer, Integer> goalArgs = goalArgs();
+        for (Map.Entry<String, Integer> e : m_nonQuantMap.entrySet()) {
+            Integer goalArg = goalArgs.get(m_vcReg.getIndexForSymbol(e.getKey()));
+            Integer value = goalArg != null ? goalArg : e.getValue();
+            if (!value.equals(m_symbolValue.put(e.getKey(), value))) {
+                for (int p : m_index.getTheoremsWith(e.getKey())) {
+                    m_dirty.set(p);
                 }
-                tws.m_score = score;
-                m_pQueue.add(tws);
             }
         }
-    }
+        int penalty = m_vcReg.m_symbolToIndex.keySet().size();
+        if (penalty != m_penalty) {
+            m_penalty = penalty;
+            m_dirty.or(m_penaltyScored);
+        }
 
-    public boolean shouldExclude(Set<String> vcMustContainThese) {
-        for (String s : vcMustContainThese) {
-            String c = m_vcReg.getRootSymbolForSymbol(s);
-            if (!m_vcReg.m_symbolToIndex.containsKey(c)) {
-                return true;
+        for (int p = m_dirty.nextSetBit(0); p >= 0; p = m_dirty.nextSetBit(p + 1)) {
+            if (!applicable.get(p)) {
+                if (m_heapSlot[p] >= 0) removeAt(m_heapSlot[p]);
+                continue;
+            }
+            int score = score(p);
+            if (m_heapSlot[p] < 0) {
+                m_score[p] = score;
+                m_heap[m_heapSize] = p;
+                m_heapSlot[p] = m_heapSize;
+                siftUp(m_heapSize++);
+            }
+            else if (score != m_score[p]) {
+                m_score[p] = score;
+                siftUp(m_heapSlot[p]);
+                siftDown(m_heapSlot[p]);
             }
         }
-        return false;
+        m_dirty.clear();
     }
 
-    //  minimum of symbol scores in both vc and theorem
-    public int calculateScoreMinimum(Set<String> theorem_symbols,
-                                     int not_contained_penalty) {
-        if (theorem_symbols.isEmpty())
-            return 0;
-        int score = not_contained_penalty;
-        int number_not_contained = 1;
-        for (String s : theorem_symbols) {
-            if (m_nonQuantMap.containsKey(s)) {
-                int c_score = goalArg(s);
-                if (c_score < 0)
-                    c_score = m_nonQuantMap.get(s);
-                if (c_score < score)
-                    score = c_score;
+    // the vc was rolled back; forget everything and score from scratch
+    private void reset() {
+        m_rollbacksSeen = m_vcReg.m_trail.getRollbacks();
+        m_registrySeen = 0;
+        m_nonQuantMap.clear();
+        m_symbolValue.clear();
+        m_penalty = -1;
+        m_known.clear();
+        m_dirty.clear();
+        m_penaltyScored.clear();
+        m_polled.clear();
+        for (int i = 0; i < m_heapSize; ++i) {
+            m_heapSlot[m_heap[i]] = -1;
+        }
+        m_heapSize = 0;
+    }
+
+    public boolean isEmpty() {
+        return m_heapSize == 0;
+    }
+
+    public int peekScore() {
+        return m_score[m_heap[0]];
+    }
+
+    /** Removes and returns the best ranked theorem; it comes back with the next {@link #refresh()}. */
+    public TheoremCongruenceClosureImpl poll() {
+        int p = m_heap[0];
+        removeAt(0);
+        m_polled.add(p);
+        return m_index.get(p);
+    }
+
+    // the least value among the theorem's symbols the vc has (or the penalty, if none is smaller), times one more
+    // than the number it doesn't have; plus the applied count and small end adjustments
+    private int score(int p) {
+        TheoremCongruenceClosureImpl t = m_index.get(p);
+        String[] theorem_symbols = m_index.getSymbols(p);
+        int score = 0;
+        m_penaltyScored.clear(p);
+        if (theorem_symbols.length > 0) {
+            score = m_penalty;
+            int number_not_contained = 1;
+            boolean anyContained = false;
+            for (String s : theorem_symbols) {
+                Integer c_score = m_symbolValue.get(s);
+                if (c_score != null) {
+                    anyContained = true;
+                    if (c_score < score)
+                        score = c_score;
+                }
+                else
+                    number_not_contained++;
             }
-            else
-                number_not_contained++;
+            if (!anyContained) m_penaltyScored.set(p);
+            score = (score + 1) * number_not_contained;
+        }
+        Integer applied = m_theoremAppliedCount.get(t.m_name);
+        if (applied != null) {
+            score += applied;
         }
-        return (score + 1) * number_not_contained;
+        if (m_smallEndEquations.contains(t)) {
+            score += 1;
+        }
+        return score;
     }
 
-    private int goalArg(String s) {
-        int si = m_vcReg.getIndexForSymbol(s);
-        String sc = m_vcReg.getRootSymbolForSymbol(s);
+    // the root of each goal, mapped to 0, and of each argument of an atom equal to a goal, mapped to 1; goals are
+    // visited in order and the first answer kept, for symbols related to more than one
+    private Map<Integer, Integer> goalArgs() {
+        Map<Integer, Integer> result = new HashMap<Integer, Integer>();
         for (String g : m_vc.m_goal) {
             if (g.equals("false"))
                 continue;
             int gi = m_vcReg.getIndexForSymbol(g);
-            if (si == gi)
-                return 0;
-            for (NormalizedAtomicExpression ng : m_vc.getConjunct().getUses(gi)) {
-                if (ng.readRoot() != gi)
-                    continue;
-                if (ng.getOperatorsAsStrings(true).containsKey(sc))
-                    return 1;
+            if (!result.containsKey(gi)) result.put(gi, 0);
+            // the atoms equal to the goal
+            UseIndex uses = m_vc.getConjunct().m_uses;
+            AtomStore atoms = m_vc.getConjunct().m_atoms;
+            for (int u = 0, n = uses.size(gi, UseIndex.ROOT); u < n; ++u) {
+                int ng = uses.get(gi, UseIndex.ROOT, u);
+                for (int i = 1; i <= atoms.arity(ng); ++i) {
+                    int arg = m_vcReg.findAndCompress(atoms.read(ng, i));
+                    if (!result.containsKey(arg)) result.put(arg, 1);
+                }
             }
         }
-        return -1;
+        return result;
     }
 
-    public TheoremCongruenceClosureImpl poll() {
-        return m_pQueue.poll().m_theorem;
+    private boolean less(int p, int q) {
+        return m_score[p] < m_score[q] || (m_score[p] == m_score[q] && p < q);
+    }
+
+    private void siftUp(int slot) {
+        int p = m_heap[slot];
+        while (slot > 0) {
+            int parent = (slot - 1) >>> 1;
+            if (!less(p, m_heap[parent])) break;
+            m_heap[slot] = m_heap[parent];
+            m_heapSlot[m_heap[slot]] = slot;
+            slot = parent;
+        }
+        m_heap[slot] = p;
+        m_heapSlot[p] = slot;
+    }
+
+    private void siftDown(int slot) {
+        int p = m_heap[slot];
+        while (true) {
+            int child = 2 * slot + 1;
+            if (child >= m_heapSize) break;
+            if (child + 1 < m_heapSize && less(m_heap[child + 1], m_heap[child])) child++;
+            if (!less(m_heap[child], p)) break;
+            m_heap[slot] = m_heap[child];
+            m_heapSlot[m_heap[slot]] = slot;
+            slot = child;
+        }
+        m_heap[slot] = p;
+        m_heapSlot[p] = slot;
+    }
+
+    private void removeAt(int slot) {
+        int p = m_heap[slot];
+        m_heapSlot[p] = -1;
+        int last = m_heap[--m_heapSize];
+        if (slot == m_heapSize) return;
+        m_heap[slot] = last;
+        m_heapSlot[last] = slot;
+        siftUp(slot);
+        siftDown(m_heapSlot[last]);
     }
 }
@@ -0,0 +1,63 @@
+package edu.clemson.resolve.proving;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * How to undo the changes made to a VC's {@link Registry} and {@link ConjunctionOfNormalizedAtomicExpressions} (and
+ * its goals) since a checkpoint, newest last. Nothing is kept unless there's a checkpoint to go back to; the hot
+ * paths check {@link #isRecording()} first so they don't even build the undo action otherwise.
+ * <p>
+ * Checkpoints nest: {@link #rollback()} and {@link #release()} each deal with the most recent one.</p>
+ */
+final class UndoTrail {
+
+    private final ArrayList<Runnable> m_undo = new ArrayList<Runnable>();
+    // size of m_undo at each checkpoint
+    private int[] m_marks = new int[4];
+    private int m_depth = 0;
+    private int m_rollbacks = 0;
+
+    boolean isRecording() {
+        return m_depth > 0;
+    }
+
+    /** Notes {@code undo} as the way to take back the change just made, if there's a checkpoint to go back to. */
+    void record(Runnable undo) {
+        if (m_depth > 0) m_undo.add(undo);
+    }
+
+    /**
+     * How many rollbacks there have been. Anything that keeps track of what's been added since it last looked can
+     * compare this to know when it has to start over.
+     */
+    int getRollbacks() {
+        return m_rollbacks;
+    }
+
+    /** Starts a new checkpoint, returning how many are open now (this one included). */
+    int checkpoint() {
+        if (m_depth == m_marks.length) m_marks = Arrays.copyOf(m_marks, m_depth * 2);
+        m_marks[m_depth++] = m_undo.size();
+        return m_depth;
+    }
+
+    /** Undoes everything since the most recent checkpoint, and closes it. */
+    void rollback() {
+        if (m_depth == 0) throw new IllegalStateException("no checkpoint to roll back to");
+        int mark = m_marks[--m_depth];
+        m_rollbacks++;
+        for (int i = m_undo.size() - 1; i >= mark; --i) {
+            m_undo.remove(i).run();
+        }
+    }
+
+    /**
+     * Closes the most recent checkpoint, keeping what was done since. The changes can still be undone by rolling
+     * back an enclosing checkpoint, if there is one.
+     */
+    void release() {
+        if (m_depth == 0) throw new IllegalStateException("no checkpoint to release");
+        if (--m_depth == 0) m_undo.clear();
+    }
+}
@@ -0,0 +1,160 @@
+package edu.clemson.resolve.proving;
+
+import java.util.Arrays;
+
+/**
+ * Where each symbol is used in a {@link ConjunctionOfNormalizedAtomicExpressions}: for every symbol and position
+ * (the operator at 0, then the arguments, and {@link #ROOT} for the root), the ids of the atoms in its
+ * {@link AtomStore} with the symbol there. Each such posting list is kept sorted, so lists can be intersected (see
+ * {@link #contains}) and walked (with {@link #size} and {@link #get}) without building anything.
+ */
+final class UseIndex {
+
+    /** The position standing for an atom's root. */
+    static final int ROOT = -1;
+
+    /** Everywhere one symbol is used: the atoms using it at position p are {@code lists[p + 1]}. */
+    static final class Postings {
+        private int[][] lists;
+        private int[] sizes;
+
+        private Postings(int positions) {
+            lists = new int[positions][];
+            sizes = new int[positions];
+        }
+
+        private Postings copy() {
+            Postings c = new Postings(lists.length);
+            for (int i = 0; i < lists.length; ++i) {
+                if (lists[i] != null) c.lists[i] = Arrays.copyOf(lists[i], Math.max(sizes[i], 4));
+            }
+            c.sizes = sizes.clone();
+            return c;
+        }
+    }
+
+    private Postings[] m_bySymbol;
+
+    UseIndex(int expectedSymbols) {
+        m_bySymbol = new Postings[Math.max(expectedSymbols, 16)];
+    }
+
+    /** A copy of {@code other} that can go on changing without affecting it. */
+    UseIndex(UseIndex other) {
+        m_bySymbol = new Postings[other.m_bySymbol.length];
+        for (int s = 0; s < m_bySymbol.length; ++s) {
+            if (other.m_bySymbol[s] != null) m_bySymbol[s] = other.m_bySymbol[s].copy();
+        }
+    }
+
+    /** Whether {@code symbol} has ever been noted as used anywhere (and hasn't been {@link #detach}ed since). */
+    boolean isUsed(int symbol) {
+        return symbol < m_bySymbol.length && m_bySymbol[symbol] != null;
+    }
+
+    /** How many atoms use {@code symbol} at {@code position}. */
+    int size(int symbol, int position) {
+        Postings p = symbol < m_bySymbol.length ? m_bySymbol[symbol] : null;
+        return p == null || position + 1 >= p.sizes.length ? 0 : p.sizes[position + 1];
+    }
+
+    /** The {@code i}th (by id) atom using {@code symbol} at {@code position}. */
+    int get(int symbol, int position, int i) {
+        return m_bySymbol[symbol].lists[position + 1][i];
+    }
+
+    /** Whether {@code atom} uses {@code symbol} at {@code position}. */
+    boolean contains(int symbol, int position, int atom) {
+        int n = size(symbol, position);
+        return n > 0 && Arrays.binarySearch(m_bySymbol[symbol].lists[position + 1], 0, n, atom) >= 0;
+    }
+
+    /** At least as many as the atoms among {@code uses} (some may be there at more than one position). */
+    static int count(Postings uses) {
+        int n = 0;
+        for (int size : uses.sizes) {
+            n += size;
+        }
+        return n;
+    }
+
+    /**
+     * Puts the atoms among {@code uses} into {@code into}, which must have room for {@link #count} of them, in order
+     * and without repeats; returns how many there are.
+     */
+    static int atoms(Postings uses, int[] into) {
+        int n = 0;
+        for (int i = 0; i < uses.lists.length; ++i) {
+            if (uses.sizes[i] == 0) continue;
+            System.arraycopy(uses.lists[i], 0, into, n, uses.sizes[i]);
+            n += uses.sizes[i];
+        }
+        Arrays.sort(into, 0, n);
+        int w = 0;
+        for (int r = 0; r < n; ++r) {
+            if (w == 0 || into[w - 1] != into[r]) into[w++] = into[r];
+        }
+        return w;
+    }
+
+    /** Notes that {@code atom} uses {@code symbol} at {@code position}; returns false if that was known already. */
+    boolean add(int symbol, int position, int atom) {
+        if (symbol >= m_bySymbol.length) {
+            m_bySymbol = Arrays.copyOf(m_bySymbol, Math.max(m_bySymbol.length * 2, symbol + 1));
+        }
+        Postings p = m_bySymbol[symbol];
+        if (p == null) {
+            p = new Postings(Math.max(position + 2, 4));
+            m_bySymbol[symbol] = p;
+        }
+        int i = position + 1;
+        if (i >= p.lists.length) {
+            p.lists = Arrays.copyOf(p.lists, i + 1);
+            p.sizes = Arrays.copyOf(p.sizes, i + 1);
+        }
+        int[] list = p.lists[i];
+        int n = p.sizes[i];
+        if (list == null) {
+            list = p.lists[i] = new int[4];
+        }
+        // atoms mostly come in the order of their ids, so this is usually an append
+        int at = n > 0 && list[n - 1] < atom ? -(n + 1) : Arrays.binarySearch(list, 0, n, atom);
+        if (at >= 0) return false;
+        at = -(at + 1);
+        if (n == list.length) {
+            list = p.lists[i] = Arrays.copyOf(list, Math.max(n * 2, 4));
+        }
+        System.arraycopy(list, at, list, at + 1, n - at);
+        list[at] = atom;
+        p.sizes[i] = n + 1;
+        return true;
+    }
+
+    /** Forgets that {@code atom} uses {@code symbol} at {@code position}; returns false if that wasn't known. */
+    boolean remove(int symbol, int position, int atom) {
+        int n = size(symbol, position);
+        if (n == 0) return false;
+        int[] list = m_bySymbol[symbol].lists[position + 1];
+        int at = Arrays.binarySearch(list, 0, n, atom);
+        if (at < 0) return false;
+        System.arraycopy(list, at + 1, list, at, n - at - 1);
+        m_bySymbol[symbol].sizes[position + 1] = n - 1;
+        return true;
+    }
+
+    /**
+     * Forgets everywhere {@code symbol} is used, returning that (or null if it wasn't used anywhere) so it can be
+     * {@link #attach}ed back.
+     */
+    Postings detach(int symbol) {
+        if (!isUsed(symbol)) return null;
+        Postings p = m_bySymbol[symbol];
+        m_bySymbol[symbol] = null;
+        return p;
+    }
+
+    /** Puts back the uses of {@code symbol} {@link #detach} took away. */
+    void attach(int symbol, Postings uses) {
+        m_bySymbol[symbol] = uses;
+    }
+}
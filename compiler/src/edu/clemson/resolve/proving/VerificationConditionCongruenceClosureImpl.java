@@ -8,6 +8,7 @@ import edu.clemson.resolve.semantics.DumbMathClssftnHandler;
 import edu.clemson.resolve.semantics.MathClssftn;
 import edu.clemson.resolve.vcgen.VC;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.util.*;
 
@@ -23,6 +24,8 @@ public class VerificationConditionCongruenceClosureImpl {
     private final MathClssftn m_z;
     private final MathClssftn m_n;
     protected final Set<String> m_goal;
+    // how many of the antecedents (as split by getAntecedents) the closure was built from
+    private final int m_numAntecedents;
 
     public static enum STATUS {
         FALSE_ASSUMPTION, STILL_EVALUATING, PROVED, UNPROVABLE, CANCELLED
@@ -34,27 +37,123 @@ public class VerificationConditionCongruenceClosureImpl {
     public VerificationConditionCongruenceClosureImpl(@NotNull DumbMathClssftnHandler g,
                                                       @NotNull VC vc,
                                                       MathClssftn z, MathClssftn n) {
+        this(g, vc, z, n, null);
+    }
+
+    /**
+     * Builds the closure for {@code vc} on top of a copy of {@code shared}, a closure made by
+     * {@link #forSharedAntecedents} of the first few of vc's antecedents, so only the rest of them and the goal are
+     * added here. With a {@code null} shared, it starts from scratch.
+     */
+    VerificationConditionCongruenceClosureImpl(@NotNull DumbMathClssftnHandler g,
+                                               @NotNull VC vc,
+                                               MathClssftn z, MathClssftn n,
+                                               @Nullable VerificationConditionCongruenceClosureImpl shared) {
         m_typegraph = g;
         m_name = Integer.toString(vc.getNumber());
         m_VC_string = vc.toString();
-        m_antecedent = g.formConjuncts(vc.getSequent().getLeftFormulas());
-        m_consequent = g.formConjuncts(vc.getSequent().getRightFormulas());
-        m_registry = new Registry(g);
+        //an empty side of the sequent is trivially true (formConjuncts gives us null for those)
+        PExp antecedent = g.formConjuncts(vc.getSequent().getLeftFormulas());
+        PExp consequent = g.formConjuncts(vc.getSequent().getRightFormulas());
+        m_antecedent = antecedent != null ? antecedent : g.getTrueExp();
+        m_consequent = consequent != null ? consequent : g.getTrueExp();
         m_z = z;
         m_n = n;
-        m_conjunction =
-                new ConjunctionOfNormalizedAtomicExpressions(m_registry, this);
         m_goal = new HashSet<String>();
+        List<PExp> ants = m_antecedent.splitIntoConjuncts();
+        m_numAntecedents = ants.size();
+        m_registry = shared != null ? new Registry(shared.m_registry) : new Registry(g);
+        m_conjunction = shared != null ?
+                new ConjunctionOfNormalizedAtomicExpressions(shared.m_conjunction, m_registry, this) :
+                new ConjunctionOfNormalizedAtomicExpressions(m_registry, this);
+        if (shared == null) addSeeds(g);
 
+        addPExp(ants.subList(shared != null ? shared.m_numAntecedents : 0, ants.size()).iterator(), true);
         addPExp(m_consequent.splitIntoConjuncts().iterator(), false);
+    }
+
+    // the closure of just antecedents (with no goal), on top of a copy of shared if there is one
+    private VerificationConditionCongruenceClosureImpl(@NotNull DumbMathClssftnHandler g,
+                                                       @NotNull List<PExp> antecedents,
+                                                       MathClssftn z, MathClssftn n,
+                                                       @Nullable VerificationConditionCongruenceClosureImpl shared) {
+        m_typegraph = g;
+        m_name = "";
+        m_VC_string = "";
+        PExp antecedent = g.formConjuncts(antecedents);
+        m_antecedent = antecedent != null ? antecedent : g.getTrueExp();
+        m_consequent = g.getTrueExp();
+        m_z = z;
+        m_n = n;
+        m_goal = new HashSet<String>();
+        m_numAntecedents = antecedents.size();
+        m_registry = shared != null ? new Registry(shared.m_registry) : new Registry(g);
+        m_conjunction = shared != null ?
+                new ConjunctionOfNormalizedAtomicExpressions(shared.m_conjunction, m_registry, this) :
+                new ConjunctionOfNormalizedAtomicExpressions(m_registry, this);
+        if (shared == null) addSeeds(g);
+
+        addPExp(antecedents.subList(shared != null ? shared.m_numAntecedents : 0, antecedents.size()).iterator(),
+                true);
+    }
+
+    /**
+     * A copy of {@code other}, as it stands, that can be worked on (by another thread, even) without affecting it.
+     * Checkpoints don't carry over to the copy.
+     */
+    VerificationConditionCongruenceClosureImpl(@NotNull VerificationConditionCongruenceClosureImpl other) {
+        m_typegraph = other.m_typegraph;
+        m_name = other.m_name;
+        m_VC_string = other.m_VC_string;
+        m_antecedent = other.m_antecedent;
+        m_consequent = other.m_consequent;
+        m_z = other.m_z;
+        m_n = other.m_n;
+        m_numAntecedents = other.m_numAntecedents;
+        m_registry = new Registry(other.m_registry);
+        m_conjunction = new ConjunctionOfNormalizedAtomicExpressions(other.m_conjunction, m_registry, this);
+        m_goal = new HashSet<String>(other.m_goal);
+        forAllQuantifiedPExps = other.forAllQuantifiedPExps;
+    }
+
+    /**
+     * Closes {@code antecedents} once, so VCs that all start off assuming them (that is, whose
+     * {@link #getAntecedents} begin with them) can be built on copies of it rather than each redoing the same merges.
+     * If {@code shared} isn't {@code null}, its antecedents must be a prefix of these; only the rest are added.
+     */
+    static VerificationConditionCongruenceClosureImpl forSharedAntecedents(@NotNull DumbMathClssftnHandler g,
+                                                                          @NotNull List<PExp> antecedents,
+                                                                          MathClssftn z, MathClssftn n,
+                                                                          @Nullable VerificationConditionCongruenceClosureImpl shared) {
+        return new VerificationConditionCongruenceClosureImpl(g, antecedents, z, n, shared);
+    }
+
+    /** The antecedents of {@code vc}, split into conjuncts the way the constructor adds them. */
+    static List<PExp> getAntecedents(@NotNull DumbMathClssftnHandler g, @NotNull VC vc) {
+        PExp antecedent = g.formConjuncts(vc.getSequent().getLeftFormulas());
+        return (antecedent != null ? antecedent : g.getTrueExp()).splitIntoConjuncts();
+    }
+
+    /**
+     * Whether {@code a} and {@code b} can stand in for one another as antecedents. Symbols are compared by name, so
+     * classifications are checked as well: the same name can be classified differently in different VCs.
+     */
+    static boolean sameAntecedent(@NotNull PExp a, @NotNull PExp b) {
+        return a.equals(b) && sameClssftns(a, b);
+    }
 
-        List<PExp> ants = new ArrayList<>(m_antecedent.splitIntoConjuncts());
-        //just a test
-        /*if (this.m_name.equals("3")) {
-            ants.remove(4);
-        }*/
-        addPExp(ants.iterator(), true);
+    private static boolean sameClssftns(PExp a, PExp b) {
+        if (!a.getMathClssftn().equals(b.getMathClssftn())) return false;
+        List<? extends PExp> aSubs = a.getSubExpressions();
+        List<? extends PExp> bSubs = b.getSubExpressions();
+        if (aSubs.size() != bSubs.size()) return false;
+        for (int i = 0; i < aSubs.size(); ++i) {
+            if (!sameClssftns(aSubs.get(i), bSubs.get(i))) return false;
+        }
+        return true;
+    }
 
+    private void addSeeds(DumbMathClssftnHandler g) {
         // seed with (true = false) = false
         PSymbol boolEqFuncName = new PSymbol.PSymbolBuilder("=B").mathClssfctn(g.EQUALITY_FUNCTION).build();
         PApply trEqF = new PApply.PApplyBuilder(boolEqFuncName)
@@ -148,6 +247,42 @@ public class VerificationConditionCongruenceClosureImpl {
         String r = m_registry.getRootSymbolForSymbol(a);
         if (m_goal.contains(r)) return;
         m_goal.add(r);
+        if (m_registry.m_trail.isRecording()) m_registry.m_trail.record(() -> m_goal.remove(r));
+    }
+
+    // goal was merged away into replacement
+    protected void replaceGoal(String goal, String replacement) {
+        m_goal.remove(goal);
+        boolean added = m_goal.add(replacement);
+        if (m_registry.m_trail.isRecording()) {
+            m_registry.m_trail.record(() -> {
+                if (added) m_goal.remove(replacement);
+                m_goal.add(goal);
+            });
+        }
+    }
+
+    /**
+     * Starts a checkpoint to come back to: theorem instantiations added after it can be taken back with
+     * {@link #rollback()} rather than having to copy the whole VC before trying them. Checkpoints nest, and return how
+     * many are open (this one included).
+     * <p>
+     * While there's a checkpoint the registry doesn't compress paths, so find gets a little slower. Anything keeping
+     * track of the VC as it grows (a {@link TheoremIndex.View}, a {@link TheoremPrioritizer}, the match state of the
+     * theorems applied to it) starts over once it sees it shrink.</p>
+     */
+    public int checkpoint() {
+        return m_conjunction.checkpoint();
+    }
+
+    /** Puts the VC back the way it was at the most recent checkpoint, and closes that checkpoint. */
+    public void rollback() {
+        m_conjunction.rollback();
+    }
+
+    /** Closes the most recent checkpoint, keeping everything done since. */
+    public void release() {
+        m_conjunction.release();
     }
 
     @Override
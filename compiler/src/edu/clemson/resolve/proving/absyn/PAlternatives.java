@@ -8,6 +8,7 @@ import org.stringtemplate.v4.ST;
 import org.stringtemplate.v4.STGroup;
 import org.stringtemplate.v4.STGroupString;
 
+import java.io.Serializable;
 import java.util.*;
 import java.util.function.Function;
 
@@ -312,7 +313,7 @@ public class PAlternatives extends PExp {
         }
     }
 
-    protected static class Alternative {
+    protected static class Alternative implements Serializable {
         public final PExp condition, result;
 
         public Alternative(PExp condition, PExp result) {
@@ -10,6 +10,7 @@ import edu.clemson.resolve.semantics.Quantification;
 import edu.clemson.resolve.semantics.programtype.ProgType;
 import org.stringtemplate.v4.ST;
 
+import java.io.Serializable;
 import java.util.*;
 
 /**
@@ -20,7 +21,7 @@ import java.util.*;
  * mathematical expressions, realize that many 'programmatic' ones such as calls are also converted into {@code PExp}s
  * for vc generation purposes.</p>
  */
-public abstract class PExp {
+public abstract class PExp implements Serializable {
 
     /**
      * These fields are primarily for the {@link edu.clemson.resolve.vcgen.VCGenerator}; display requires certain
@@ -45,10 +46,10 @@ public abstract class PExp {
      */
     private final ProgType progType;
 
-    private List<PExp> cachedFunctionApplications = null;
-    private Set<PSymbol> cachedQuantifiedVariables = null;
-    private Set<PSymbol> cachedFreeVariables = null;
-    private Set<PSymbol> cachedIncomingVariables = null;
+    private transient List<PExp> cachedFunctionApplications = null;
+    private transient Set<PSymbol> cachedQuantifiedVariables = null;
+    private transient Set<PSymbol> cachedFreeVariables = null;
+    private transient Set<PSymbol> cachedIncomingVariables = null;
 
     public PExp(@NotNull PSymbol.HashDuple hashes, @NotNull MathClssftn type) {
         this(hashes.structureHash, hashes.valueHash, type, null);
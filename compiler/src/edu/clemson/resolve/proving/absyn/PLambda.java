@@ -8,6 +8,7 @@ import edu.clemson.resolve.semantics.MathClssftn;
 import edu.clemson.resolve.semantics.MathInvalidClssftn;
 import org.jetbrains.annotations.Nullable;
 
+import java.io.Serializable;
 import java.util.*;
 
 /** An anonymous (lambda) function consisting of one or more typed bound variables and a body. */
@@ -174,7 +175,7 @@ public class PLambda extends PExp {
         return body.getFreeVariables();
     }
 
-    public static class MathSymbolDeclaration {
+    public static class MathSymbolDeclaration implements Serializable {
         public final String name;
         public final MathClssftn type;
 
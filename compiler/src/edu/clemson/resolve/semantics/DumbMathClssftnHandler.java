@@ -10,6 +10,8 @@ import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 public class DumbMathClssftnHandler {
 
@@ -88,16 +90,10 @@ public class DumbMathClssftnHandler {
         }
     }
 
-    public final Map<MathClssftn, List<MathClssftn>> relationships = new HashMap<>();
+    //modules not using one another are populated concurrently, and each may add relationships as it goes
+    public final Map<MathClssftn, List<MathClssftn>> relationships = new ConcurrentHashMap<>();
     public void addRelationship(MathClssftn s, MathClssftn t) {
-        if (relationships.get(s) == null) {
-            List<MathClssftn> l = new ArrayList<>();
-            l.add(t);
-            relationships.put(s, l);
-        }
-        else {
-            relationships.get(s).add(t);
-        }
+        relationships.computeIfAbsent(s, k -> new CopyOnWriteArrayList<>()).add(t);
     }
     public boolean isSubtype(@NotNull MathClssftn subtype, @NotNull MathClssftn supertype) {
         boolean result = (supertype == ENTITY || supertype == CLS || supertype == EL);
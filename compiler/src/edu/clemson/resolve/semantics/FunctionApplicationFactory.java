@@ -2,9 +2,11 @@ package edu.clemson.resolve.semantics;
 
 import org.jetbrains.annotations.NotNull;
 
+import java.io.Serializable;
 import java.util.List;
 
-public interface FunctionApplicationFactory {
+//factories are kept by the function classifications they build applications for, so they're written out with them
+public interface FunctionApplicationFactory extends Serializable {
 
     public MathClssftn buildFunctionApplication(@NotNull DumbMathClssftnHandler g,
                                                 @NotNull MathFunctionClssftn f,
@@ -5,6 +5,7 @@ import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import edu.clemson.resolve.semantics.symbol.MathClssftnWrappingSymbol;
 
+import java.io.Serializable;
 import java.util.*;
 
 public class MathCartesianClssftn extends MathClssftn {
@@ -77,7 +78,7 @@ public class MathCartesianClssftn extends MathClssftn {
         return "(" + Utils.join(elements, " × ") + ")";
     }
 
-    public static class Element {
+    public static class Element implements Serializable {
         private final String tag;
         public MathClssftn clssfcn;
 
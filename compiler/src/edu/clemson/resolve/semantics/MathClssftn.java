@@ -3,10 +3,14 @@ package edu.clemson.resolve.semantics;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.Serializable;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /** The parent class of all mathematical classifications. */
-public abstract class MathClssftn {
+public abstract class MathClssftn implements Serializable {
 
     protected final DumbMathClssftnHandler g;
     public int typeRefDepth = 0;
@@ -19,12 +23,29 @@ public abstract class MathClssftn {
      */
     public boolean identifiesSchematicType = false;
 
+    private static final AtomicInteger NEXT_ID = new AtomicInteger();
+    private transient int id = NEXT_ID.incrementAndGet();
+
     public MathClssftn(@NotNull DumbMathClssftnHandler g,
                        @Nullable MathClssftn enclosingClassification) {
         this.g = g;
         this.enclosingClassification = enclosingClassification;
     }
 
+    /**
+     * A number no other classification has, never 0. Tables that would otherwise key classifications by identity
+     * can key them by this instead.
+     */
+    public final int getId() {
+        return id;
+    }
+
+    //a classification read back in (from a module cache summary) is a new one, so it gets a new id too
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        id = NEXT_ID.incrementAndGet();
+    }
+
     public DumbMathClssftnHandler getTypeGraph() {
         return g;
     }
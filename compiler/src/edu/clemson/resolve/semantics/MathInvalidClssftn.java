@@ -7,7 +7,7 @@ public class MathInvalidClssftn extends MathClssftn {
 
     private static WeakHashMap<DumbMathClssftnHandler, MathInvalidClssftn> instances = new WeakHashMap<>();
 
-    public static MathInvalidClssftn getInstance(DumbMathClssftnHandler g) {
+    public static synchronized MathInvalidClssftn getInstance(DumbMathClssftnHandler g) {
         MathInvalidClssftn result = instances.get(g);
         if (result == null) {
             result = new MathInvalidClssftn(g);
@@ -3,7 +3,6 @@ package edu.clemson.resolve.semantics;
 import edu.clemson.resolve.compiler.AnnotatedModule;
 import org.antlr.v4.runtime.ParserRuleContext;
 import org.antlr.v4.runtime.tree.ParseTree;
-import org.antlr.v4.runtime.tree.ParseTreeProperty;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import edu.clemson.resolve.semantics.programtype.ProgType;
@@ -15,6 +14,7 @@ import edu.clemson.resolve.semantics.symbol.MathClssftnWrappingSymbol;
 import edu.clemson.resolve.semantics.symbol.Symbol;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class MathSymbolTable {
 
@@ -108,24 +108,40 @@ public class MathSymbolTable {
         public abstract boolean considerImports();
     }
 
+    /**
+     * The state needed while a module's scopes are being opened and closed. Every module is populated start to finish
+     * on a single thread, so each thread gets its own context; this lets modules that don't use one another be
+     * populated at the same time.
+     */
+    private static class ScopeBuildingContext {
+        @NotNull
+        private final Deque<ScopeBuilder> lexicalScopeStack = new LinkedList<>();
+        @Nullable
+        private ModuleScopeBuilder curModuleScope = null;
+
+        ScopeBuildingContext(@NotNull ScopeBuilder globalScope) {
+            lexicalScopeStack.push(globalScope);
+        }
+    }
+
     @NotNull
-    private final Deque<ScopeBuilder> lexicalScopeStack = new LinkedList<>();
+    private final ThreadLocal<ScopeBuildingContext> buildingContext;
     @NotNull
-    private final Map<ModuleIdentifier, ModuleScopeBuilder> moduleScopes = new HashMap<>();
+    private final Map<ModuleIdentifier, ModuleScopeBuilder> moduleScopes = new ConcurrentHashMap<>();
     @NotNull
-    private final ParseTreeProperty<ScopeBuilder> scopes = new ParseTreeProperty<>();
-    @Nullable
-    private ModuleScopeBuilder curModuleScope = null;
+    private final Map<ParseTree, ScopeBuilder> scopes = Collections.synchronizedMap(new IdentityHashMap<>());
     @NotNull
     private final DumbMathClssftnHandler typeGraph;
+    @NotNull
+    private final ScopeBuilder globalScope;
 
     public MathSymbolTable() {
         this.typeGraph = new DumbMathClssftnHandler();
 
         //The only things in global scope are built-in things
-        ScopeBuilder globalScope = new ScopeBuilder(this, typeGraph, null, DUMMY_RESOLVER, ModuleIdentifier.GLOBAL);
+        this.globalScope = new ScopeBuilder(this, typeGraph, null, DUMMY_RESOLVER, ModuleIdentifier.GLOBAL);
         initializeMathTypeSystem(typeGraph, globalScope);
-        lexicalScopeStack.push(globalScope);
+        this.buildingContext = ThreadLocal.withInitial(() -> new ScopeBuildingContext(globalScope));
     }
 
     private void initializeMathTypeSystem(@NotNull DumbMathClssftnHandler g, @NotNull ScopeBuilder globalScope) {
@@ -189,36 +205,45 @@ public class MathSymbolTable {
         return typeGraph;
     }
 
+    /** Returns the built-in symbols every module can see, in the (fixed) order they're defined. */
+    @NotNull
+    public List<Symbol> getGlobalSymbols() {
+        return globalScope.getSymbolsOfType(Symbol.class);
+    }
+
     @NotNull
     public ModuleScopeBuilder startModuleScope(@NotNull AnnotatedModule module) {
-        if (curModuleScope != null) {
+        ScopeBuildingContext ctx = buildingContext.get();
+        if (ctx.curModuleScope != null) {
             throw new IllegalStateException("module scope already open");
         }
         ParseTree contextTree = module.getRoot();
 
-        ScopeBuilder parent = lexicalScopeStack.peek();
+        ScopeBuilder parent = ctx.lexicalScopeStack.peek();
         ModuleScopeBuilder s = new ModuleScopeBuilder(typeGraph, module.getModuleIdentifier(),
                 (ParserRuleContext) contextTree, parent, this);
-        curModuleScope = s;
-        addScope(s, parent);
+        ctx.curModuleScope = s;
+        addScope(ctx, s, parent);
         moduleScopes.put(s.getModuleIdentifier(), s);
         return s;
     }
 
     @NotNull
     public ScopeBuilder startScope(@NotNull ParserRuleContext definingTree) {
-        if (curModuleScope == null) {
+        ScopeBuildingContext ctx = buildingContext.get();
+        if (ctx.curModuleScope == null) {
             throw new IllegalStateException("no open module scope");
         }
-        ScopeBuilder parent = lexicalScopeStack.peek();
-        ScopeBuilder s = new ScopeBuilder(this, typeGraph, definingTree, parent, curModuleScope.getModuleIdentifier());
-        addScope(s, parent);
+        ScopeBuilder parent = ctx.lexicalScopeStack.peek();
+        ScopeBuilder s = new ScopeBuilder(this, typeGraph, definingTree, parent,
+                ctx.curModuleScope.getModuleIdentifier());
+        addScope(ctx, s, parent);
         return s;
     }
 
     public void addTag(ModuleIdentifier e) {
-        checkScopeOpen();
-        moduleScopes.put(e, curModuleScope);
+        ScopeBuildingContext ctx = checkScopeOpen();
+        moduleScopes.put(e, ctx.curModuleScope);
     }
 
     /**
@@ -230,32 +255,34 @@ public class MathSymbolTable {
      */
     @Nullable
     public ScopeBuilder endScope() {
-        checkScopeOpen();
-        lexicalScopeStack.pop();
+        ScopeBuildingContext ctx = checkScopeOpen();
+        ctx.lexicalScopeStack.pop();
         ScopeBuilder result;
-        if (lexicalScopeStack.size() == 1) {
+        if (ctx.lexicalScopeStack.size() == 1) {
             result = null;
-            curModuleScope = null;
+            ctx.curModuleScope = null;
         }
         else {
-            result = lexicalScopeStack.peek();
+            result = ctx.lexicalScopeStack.peek();
         }
         return result;
     }
 
     public ScopeBuilder getInnermostActiveScope() {
-        checkScopeOpen();
-        return lexicalScopeStack.peek();
+        return checkScopeOpen().lexicalScopeStack.peek();
     }
 
-    private void checkScopeOpen() {
-        if (lexicalScopeStack.size() == 1) {
+    @NotNull
+    private ScopeBuildingContext checkScopeOpen() {
+        ScopeBuildingContext ctx = buildingContext.get();
+        if (ctx.lexicalScopeStack.size() == 1) {
             throw new IllegalStateException("no open scope");
         }
+        return ctx;
     }
 
-    private void addScope(@NotNull ScopeBuilder s, @NotNull ScopeBuilder parent) {
-        lexicalScopeStack.push(s);
+    private void addScope(@NotNull ScopeBuildingContext ctx, @NotNull ScopeBuilder s, @NotNull ScopeBuilder parent) {
+        ctx.lexicalScopeStack.push(s);
         scopes.put(s.getDefiningTree(), s);
     }
 
@@ -276,6 +303,38 @@ public class MathSymbolTable {
         return module;
     }
 
+    /**
+     * Adds a scope for the module identified by {@code identifier} holding what {@code summary} does, as though the
+     * module had just been populated (without any of the scopes nested in it, or a parse tree).
+     */
+    @NotNull
+    public ModuleScopeBuilder loadModuleScope(@NotNull ModuleIdentifier identifier,
+                                              @NotNull ModuleScopeSummary summary) {
+        ModuleScopeBuilder s = new ModuleScopeBuilder(typeGraph, identifier, null, globalScope, this);
+        s.addImports(summary.imports)
+                .addFacilityImports(summary.facilityImports)
+                .addInheritedModules(summary.inheritedModules.toArray(new ModuleIdentifier[0]))
+                .addAliases(summary.aliases);
+        for (Symbol symbol : summary.symbols) {
+            s.symbols.put(symbol.getName(), symbol);
+        }
+        moduleScopes.put(identifier, s);
+        return s;
+    }
+
+    /**
+     * Forgets every scope belonging to the module identified by {@code identifier} (so it can be populated afresh
+     * when its source has changed).
+     */
+    public void removeModule(@NotNull ModuleIdentifier identifier) {
+        ModuleScopeBuilder module = moduleScopes.remove(identifier);
+        if (module == null) return;
+        moduleScopes.values().removeIf(s -> s == module);   //any tags pointing at it
+        synchronized (scopes) {
+            scopes.values().removeIf(s -> s.getModuleIdentifier().equals(identifier));
+        }
+    }
+
     protected static class DummyIdentifierResolver extends AbstractScope {
 
         @NotNull
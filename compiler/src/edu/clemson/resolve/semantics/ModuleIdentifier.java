@@ -12,6 +12,7 @@ import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.io.File;
+import java.io.Serializable;
 import java.nio.file.Files;
 import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
@@ -32,7 +33,7 @@ import java.util.Set;
  * We use {@link Token}s internally here so we have position information for the module we're identifying is readily
  * available (mostly for error rendering purposes).</p>
  */
-public class ModuleIdentifier implements Comparable<ModuleIdentifier> {
+public class ModuleIdentifier implements Comparable<ModuleIdentifier>, Serializable {
 
     public static final ModuleIdentifier GLOBAL = new ModuleIdentifier();
 
@@ -74,8 +75,11 @@ public class ModuleIdentifier implements Comparable<ModuleIdentifier> {
 
     @NotNull
     private Path getPackageRootPath() {
-        Path libraryPath = Paths.get(RESOLVECompiler.getLibrariesPathDirectory() + File.separator + "src");
-        Path stdlibPath = Paths.get(RESOLVECompiler.getCoreLibraryDirectory() + File.separator + "src");
+        // absolute, like filePath, even when RESOLVEPATH or RESOLVEROOT is relative (or unset: ".")
+        Path libraryPath = Paths.get(RESOLVECompiler.getLibrariesPathDirectory() + File.separator + "src")
+                .toAbsolutePath();
+        Path stdlibPath = Paths.get(RESOLVECompiler.getCoreLibraryDirectory() + File.separator + "src")
+                .toAbsolutePath();
 
         Path filePath = Paths.get(file.getAbsolutePath());
         return filePath.startsWith(libraryPath) ? libraryPath : stdlibPath;
@@ -6,9 +6,10 @@ import org.jetbrains.annotations.NotNull;
 import edu.clemson.resolve.semantics.programtype.ProgType;
 import edu.clemson.resolve.semantics.symbol.*;
 
+import java.io.Serializable;
 import java.util.*;
 
-public class ModuleParameterization {
+public class ModuleParameterization implements Serializable {
 
     private final MathSymbolTable scopeRepo;
     private final ModuleIdentifier moduleIdentifier;
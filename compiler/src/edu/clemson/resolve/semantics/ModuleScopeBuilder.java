@@ -104,4 +104,9 @@ public class ModuleScopeBuilder extends ScopeBuilder {
     public Map<String, ModuleIdentifier> getAliases() {
         return aliases;
     }
+
+    @NotNull
+    public ModuleScopeSummary summarize() {
+        return new ModuleScopeSummary(symbols.values(), importedModules, facilityModules, inheritedModules, aliases);
+    }
 }
@@ -0,0 +1,44 @@
+package edu.clemson.resolve.semantics;
+
+import edu.clemson.resolve.semantics.symbol.Symbol;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.Serializable;
+import java.util.*;
+
+/**
+ * Everything other modules can see of a module's scope: its symbols (in the order they were defined) and the modules
+ * it imports, inherits from and aliases. Unlike the scope itself it holds nothing that ties it to a parse tree, so it
+ * can be written out and {@link MathSymbolTable#loadModuleScope loaded} into a later run's symbol table in place of
+ * populating the module again.
+ *
+ * @see edu.clemson.resolve.compiler.ModuleCache
+ */
+public class ModuleScopeSummary implements Serializable {
+
+    @NotNull
+    final List<Symbol> symbols;
+    @NotNull
+    final Set<ModuleIdentifier> imports, facilityImports;
+    @NotNull
+    final Set<ModuleIdentifier> inheritedModules;
+    @NotNull
+    final Map<String, ModuleIdentifier> aliases;
+
+    ModuleScopeSummary(@NotNull Collection<Symbol> symbols,
+                       @NotNull Set<ModuleIdentifier> imports,
+                       @NotNull Set<ModuleIdentifier> facilityImports,
+                       @NotNull Set<ModuleIdentifier> inheritedModules,
+                       @NotNull Map<String, ModuleIdentifier> aliases) {
+        this.symbols = new ArrayList<>(symbols);
+        this.imports = new HashSet<>(imports);
+        this.facilityImports = new HashSet<>(facilityImports);
+        this.inheritedModules = new LinkedHashSet<>(inheritedModules);
+        this.aliases = new HashMap<>(aliases);
+    }
+
+    @NotNull
+    public List<Symbol> getSymbols() {
+        return symbols;
+    }
+}
@@ -14,7 +14,7 @@ public class ProgInvalidType extends ProgType {
     private static WeakHashMap<DumbMathClssftnHandler, ProgInvalidType> instances = new WeakHashMap<>();
 
     @NotNull
-    public static ProgInvalidType getInstance(@NotNull DumbMathClssftnHandler g) {
+    public static synchronized ProgInvalidType getInstance(@NotNull DumbMathClssftnHandler g) {
         ProgInvalidType result = instances.get(g);
         if (result == null) {
             result = new ProgInvalidType(g);
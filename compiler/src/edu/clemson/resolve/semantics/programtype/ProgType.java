@@ -5,9 +5,10 @@ import edu.clemson.resolve.semantics.DumbMathClssftnHandler;
 import edu.clemson.resolve.semantics.MathClssftn;
 import edu.clemson.resolve.semantics.symbol.FacilitySymbol;
 
+import java.io.Serializable;
 import java.util.Map;
 
-public abstract class ProgType {
+public abstract class ProgType implements Serializable {
 
     @NotNull
     protected final DumbMathClssftnHandler g;
@@ -14,7 +14,7 @@ public class ProgVoidType extends ProgType {
     private static WeakHashMap<DumbMathClssftnHandler, ProgVoidType> instances = new WeakHashMap<>();
 
     @NotNull
-    public static ProgVoidType getInstance(@NotNull DumbMathClssftnHandler g) {
+    public static synchronized ProgVoidType getInstance(@NotNull DumbMathClssftnHandler g) {
         ProgVoidType result = instances.get(g);
         if (result == null) {
             result = new ProgVoidType(g);
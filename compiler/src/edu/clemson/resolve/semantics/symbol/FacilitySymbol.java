@@ -7,6 +7,7 @@ import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import edu.clemson.resolve.semantics.programtype.ProgType;
 
+import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -24,9 +25,12 @@ public class FacilitySymbol extends Symbol {
      * <p>
      * Right now I'm really only especially concerned about these as they factor into the searching process in
      * {@link ModuleParameterization}.</p>
+     * <p>
+     * Only the constructor needs these (they're keyed by parse tree), so they aren't kept in a module summary; a
+     * facility read back from one has {@code null} here.</p>
      */
-    @NotNull
-    private final ParseTreeProperty<List<ProgTypeSymbol>> actualGenerics;
+    @Nullable
+    private final transient ParseTreeProperty<List<ProgTypeSymbol>> actualGenerics;
 
     private final Map<ModuleParameterization, ModuleParameterization> enhancementImplementations = new HashMap<>();
     private final List<ModuleParameterization> enhancements = new ArrayList<>();
@@ -120,7 +124,7 @@ public class FacilitySymbol extends Symbol {
         return this;
     }
 
-    public static class SpecImplementationPairing {
+    public static class SpecImplementationPairing implements Serializable {
 
         @NotNull
         private final ModuleParameterization specification;
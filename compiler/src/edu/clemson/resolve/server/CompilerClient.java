@@ -0,0 +1,105 @@
+package edu.clemson.resolve.server;
+
+import edu.clemson.resolve.RESOLVECompiler;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.*;
+import java.net.ConnectException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A stand in for {@link RESOLVECompiler#main} that hands its command line to a running {@link CompilerServer} and
+ * relays the output and exit status back. An optional leading {@code -port N} picks the server; {@code -shutdown}
+ * stops it. The server only listens to clients that can read its token file. If no server is listening, the compile
+ * just happens in this process.
+ */
+public class CompilerClient {
+
+    public static void main(String[] args) throws IOException {
+        int port = ServerProtocol.DEFAULT_PORT;
+        List<String> forwarded = new ArrayList<>(Arrays.asList(args));
+        if (forwarded.size() >= 2 && forwarded.get(0).equals("-port")) {
+            port = Integer.parseInt(forwarded.get(1));
+            forwarded = forwarded.subList(2, forwarded.size());
+        }
+        boolean shutdown = forwarded.size() == 1 && forwarded.get(0).equals(ServerProtocol.SHUTDOWN);
+        if (forwarded.isEmpty()) {
+            RESOLVECompiler.main(new String[0]);    //just the usage
+            return;
+        }
+        List<String> request = shutdown ? forwarded : resolvePaths(forwarded);
+        File tokenFile = ServerProtocol.tokenFile(port);
+        if (!tokenFile.isFile()) {
+            //no server has ever been started on this port (by us)
+            if (shutdown) return;
+            RESOLVECompiler.main(forwarded.toArray(new String[forwarded.size()]));
+            return;
+        }
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port)) {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            out.writeUTF(ServerProtocol.readToken(tokenFile));
+            out.writeInt(request.size());
+            for (String arg : request) {
+                out.writeUTF(arg);
+            }
+            out.flush();
+            System.exit(relayResponse(new DataInputStream(new BufferedInputStream(socket.getInputStream()))));
+        } catch (ConnectException ce) {
+            if (shutdown) return;
+            RESOLVECompiler.main(forwarded.toArray(new String[forwarded.size()]));
+        }
+    }
+
+    private static int relayResponse(@NotNull DataInputStream in) throws IOException {
+        while (true) {
+            byte channel = in.readByte();
+            int n = in.readInt();
+            if (channel == ServerProtocol.EXIT) {
+                System.out.flush();
+                System.err.flush();
+                return n;
+            }
+            byte[] bytes = new byte[n];
+            in.readFully(bytes);
+            (channel == ServerProtocol.STDERR ? System.err : System.out).write(bytes);
+        }
+    }
+
+    /**
+     * The server has its own working directory, so anything relative to ours is made absolute: the values of
+     * path-like options, plus {@code -lib} (where relative target files get looked up) and {@code -o} (where code
+     * ends up) when they aren't given, which would otherwise default to the server's directory.
+     */
+    @NotNull
+    private static List<String> resolvePaths(@NotNull List<String> args) {
+        File cwd = new File("").getAbsoluteFile();
+        List<String> result = new ArrayList<>();
+        boolean haveLib = false, haveOutputDir = false;
+        for (int i = 0; i < args.size(); i++) {
+            String arg = args.get(i);
+            result.add(arg);
+            if (RESOLVECompiler.optionTakesArgument(arg) && i + 1 < args.size()) {
+                String value = args.get(++i);
+                if (arg.equals("-o") || arg.equals("-lib") || arg.equals("-Xcache") || arg.equals("-Xstats")) {
+                    value = new File(value).getAbsolutePath();
+                }
+                haveLib |= arg.equals("-lib");
+                haveOutputDir |= arg.equals("-o");
+                result.add(value);
+            }
+        }
+        if (!haveLib) {
+            result.add("-lib");
+            result.add(cwd.getPath());
+        }
+        if (!haveOutputDir) {
+            result.add("-o");
+            result.add(new File(cwd, "out").getPath());     //where codegen puts things when -o isn't given
+        }
+        return result;
+    }
+}
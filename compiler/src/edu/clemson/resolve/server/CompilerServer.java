@@ -0,0 +1,144 @@
+package edu.clemson.resolve.server;
+
+import edu.clemson.resolve.RESOLVECompiler;
+import edu.clemson.resolve.compiler.CompilerSession;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+
+/**
+ * Keeps a compiler process (and a {@link CompilerSession}) alive on a local socket so that repeated compiles skip
+ * JVM startup and warm-up, and reuse the analysis of every module that hasn't changed since the last request.
+ * Requests (sent by {@link CompilerClient}) are served one at a time; each is an ordinary compiler command line, so
+ * compiling, generating VCs and proving all work as they do from {@link RESOLVECompiler#main}.
+ * <p>
+ * The environment ({@code RESOLVEROOT}, {@code RESOLVEPATH}) is the server's, not the client's. Only clients that can
+ * read the server's {@link ServerProtocol#tokenFile token file} get served.
+ */
+public class CompilerServer {
+
+    @NotNull
+    private final ServerSocket socket;
+    @NotNull
+    private final String token;
+    @NotNull
+    private CompilerSession session = new CompilerSession();
+
+    public CompilerServer(int port) throws IOException {
+        this.socket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+        this.token = ServerProtocol.newToken(ServerProtocol.tokenFile(port));
+    }
+
+    public void serve() throws IOException {
+        try {
+            boolean running = true;
+            while (running) {
+                try (Socket client = socket.accept()) {
+                    running = handle(client);
+                } catch (IOException ioe) {
+                    System.err.println("resolve server: lost client: " + ioe.getMessage());
+                } catch (RuntimeException | Error e) {
+                    //one bad request mustn't take the server down with it
+                    System.err.println("resolve server: request failed: " + e);
+                    session = new CompilerSession();
+                }
+            }
+        } finally {
+            socket.close();
+        }
+    }
+
+    /** Serves one request, returning {@code false} if it asked us to shut down. */
+    private boolean handle(@NotNull Socket client) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(client.getInputStream()));
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(client.getOutputStream()));
+        //we serve one client at a time, so one that connects and then says nothing mustn't hold up the rest
+        client.setSoTimeout(ServerProtocol.REQUEST_TIMEOUT_MS);
+        String[] args;
+        try {
+            if (!ServerProtocol.sameToken(token, in.readUTF())) {
+                refuse(out, "resolve server: bad token (see " + ServerProtocol.tokenFile(socket.getLocalPort()) + ")");
+                return true;
+            }
+            int count = in.readInt();
+            if (count < 0 || count > ServerProtocol.MAX_ARGS) {
+                refuse(out, "resolve server: bad argument count " + count);
+                return true;
+            }
+            args = new String[count];
+            for (int i = 0; i < args.length; i++) {
+                args[i] = in.readUTF();
+            }
+        } catch (SocketTimeoutException ste) {
+            refuse(out, "resolve server: timed out waiting for the request");
+            return true;
+        }
+        if (args.length == 1 && args[0].equals(ServerProtocol.SHUTDOWN)) {
+            finish(out, 0);
+            return false;
+        }
+        PrintStream clientOut = new PrintStream(
+                new ServerProtocol.ChannelOutputStream(out, ServerProtocol.STDOUT), true, "UTF-8");
+        PrintStream clientErr = new PrintStream(
+                new ServerProtocol.ChannelOutputStream(out, ServerProtocol.STDERR), true, "UTF-8");
+        int[] status = {1};
+        try {
+            //a thread of its own, so nothing a request leaves behind in thread locals (say, after a crash
+            //half way through populating a module) can leak into the next one
+            Thread worker = new Thread(() -> {
+                boolean finished = false;
+                try {
+                    status[0] = new RESOLVECompiler(args, session, clientOut, clientErr).compile();
+                    finished = true;
+                } catch (Throwable t) {
+                    t.printStackTrace(clientErr);
+                } finally {
+                    if (!finished) session = new CompilerSession();     //no telling what state it's in now
+                }
+            }, "resolve-request");
+            worker.start();
+            worker.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            clientOut.flush();
+            clientErr.flush();
+        }
+        finish(out, status[0]);
+        return true;
+    }
+
+    private static void refuse(@NotNull DataOutputStream out, @NotNull String why) throws IOException {
+        byte[] message = (why + System.lineSeparator()).getBytes("UTF-8");
+        synchronized (out) {
+            out.writeByte(ServerProtocol.STDERR);
+            out.writeInt(message.length);
+            out.write(message);
+        }
+        finish(out, 1);
+    }
+
+    private static void finish(@NotNull DataOutputStream out, int status) throws IOException {
+        synchronized (out) {
+            out.writeByte(ServerProtocol.EXIT);
+            out.writeInt(status);
+            out.flush();
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        int port = ServerProtocol.DEFAULT_PORT;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("-port") && i + 1 < args.length) {
+                port = Integer.parseInt(args[++i]);
+            }
+        }
+        CompilerServer server = new CompilerServer(port);
+        System.out.println("RESOLVE compiler server listening on port " + port);
+        server.serve();
+    }
+}
@@ -0,0 +1,113 @@
+package edu.clemson.resolve.server;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+
+/**
+ * What goes over the socket between a {@link CompilerClient} and the {@link CompilerServer}.
+ * <p>
+ * A request is the server's secret (as UTF; see {@link #tokenFile}) followed by the client's arguments: an int count
+ * (at most {@link #MAX_ARGS}) followed by each argument (as UTF), all within {@link #REQUEST_TIMEOUT_MS} of
+ * connecting. A {@link #SHUTDOWN} argument on its own asks the
+ * server to stop. The response is a sequence of frames, each a channel byte followed
+ * by an int; for {@link #STDOUT} and {@link #STDERR} the int is the length of the bytes that follow, while an
+ * {@link #EXIT} frame carries the compile's exit status and ends the response.
+ */
+class ServerProtocol {
+
+    static final int DEFAULT_PORT = 4949;
+    static final String SHUTDOWN = "-shutdown";
+    static final int MAX_ARGS = 4096;
+    /** How long the server waits on a client that has connected but not yet sent all of its request. */
+    static final int REQUEST_TIMEOUT_MS = 10_000;
+
+    static final byte EXIT = 0;
+    static final byte STDOUT = 1;
+    static final byte STDERR = 2;
+
+    /**
+     * Where the server listening on {@code port} keeps its secret: a file only the user running it can read, so only
+     * that user's clients can get it to compile anything (with that user's permissions) or shut it down.
+     */
+    @NotNull
+    static File tokenFile(int port) {
+        return new File(new File(System.getProperty("user.home"), ".resolve"), "server-" + port + ".token");
+    }
+
+    /** Makes up a new secret and writes it to {@code file}, readable by the owner alone. */
+    @NotNull
+    static String newToken(@NotNull File file) throws IOException {
+        byte[] bytes = new byte[32];
+        new SecureRandom().nextBytes(bytes);
+        StringBuilder token = new StringBuilder();
+        for (byte b : bytes) {
+            token.append(String.format("%02x", b));
+        }
+        File dir = file.getParentFile();
+        if (!dir.isDirectory() && !dir.mkdirs()) throw new IOException("can't create " + dir);
+        Files.deleteIfExists(file.toPath());
+        Files.createFile(file.toPath());
+        try {
+            Files.setPosixFilePermissions(file.toPath(), PosixFilePermissions.fromString("rw-------"));
+        } catch (UnsupportedOperationException e) {
+            //not a posix file system; do what can be done
+            file.setReadable(false, false);
+            file.setWritable(false, false);
+            file.setReadable(true, true);
+            file.setWritable(true, true);
+        }
+        Files.write(file.toPath(), token.toString().getBytes(StandardCharsets.UTF_8));
+        return token.toString();
+    }
+
+    @NotNull
+    static String readToken(@NotNull File file) throws IOException {
+        return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8).trim();
+    }
+
+    /** Compares tokens in time that doesn't depend on where they differ. */
+    static boolean sameToken(@NotNull String expected, @NotNull String given) {
+        return MessageDigest.isEqual(expected.getBytes(StandardCharsets.UTF_8),
+                given.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /** An {@link OutputStream} that turns whatever is written to it into frames on one channel. */
+    static class ChannelOutputStream extends OutputStream {
+
+        private final DataOutputStream out;
+        private final byte channel;
+
+        ChannelOutputStream(@NotNull DataOutputStream out, byte channel) {
+            this.out = out;
+            this.channel = channel;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(@NotNull byte[] b, int off, int len) throws IOException {
+            //stdout and stderr share the one connection
+            synchronized (out) {
+                out.writeByte(channel);
+                out.writeInt(len);
+                out.write(b, off, len);
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            synchronized (out) {
+                out.flush();
+            }
+        }
+    }
+}
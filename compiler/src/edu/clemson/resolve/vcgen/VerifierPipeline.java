@@ -2,11 +2,16 @@ package edu.clemson.resolve.vcgen;
 
 import edu.clemson.resolve.compiler.AbstractCompilationPipeline;
 import edu.clemson.resolve.compiler.AnnotatedModule;
+import edu.clemson.resolve.compiler.CompilerStats;
 import edu.clemson.resolve.RESOLVECompiler;
 import edu.clemson.resolve.parser.ResolveParser;
+import edu.clemson.resolve.proving.CongruenceClassProver;
 import org.antlr.v4.runtime.tree.ParseTreeWalker;
 
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.*;
 
 public class VerifierPipeline extends AbstractCompilationPipeline {
 
@@ -16,6 +21,7 @@ public class VerifierPipeline extends AbstractCompilationPipeline {
 
     @Override
     public void process() {
+        List<CongruenceClassProver> provers = new ArrayList<>();
         for (AnnotatedModule unit : compilationUnits) {
             //prove implies genn'ing vcs...
             if (compiler.targetNames.contains(unit.getNameToken().getText()) && (compiler.vcs || compiler.prove)) {
@@ -23,31 +29,78 @@ public class VerifierPipeline extends AbstractCompilationPipeline {
                 else if (unit.getRoot().getChild(0) instanceof ResolveParser.ConceptModuleDeclContext) continue;
                 else if (unit.getRoot().getChild(0) instanceof ResolveParser.EnhancementModuleDeclContext) continue;
                 else if (unit.getRoot().getChild(0) instanceof ResolveParser.PrecisExtModuleDeclContext) continue;
+                String name = unit.getNameToken().getText();
+                CompilerStats.Timer timer = compiler.stats.start("vcgen", name);
                 VCGen gen = new VCGen(compiler, unit);
                 ParseTreeWalker.DEFAULT.walk(gen, unit.getRoot());
                 VCOutputFile x = gen.getOutputFile();
-                System.out.println(x.toString(35));
+                timer.stop();
+                compiler.out.println(x.toString(35));
                 unit.setVCs(x);
 
-                //List<VC> proverInput = vco.getFinalVCs();
-                //VCClassftnPrintingListener p = new VCClassftnPrintingListener(compiler);
-                /*for (VC vc : proverInput) {
-                    vc.getAntecedent().accept(p);
-                    vc.getConsequent().accept(p);
-                }*/
-                //List<VC> pvcs = new ArrayList<>();
-                //pvcs.add(vco.getFinalVCs().get(0));
-                /*if (compiler.prove) {
-                    CongruenceClassProver prover = new CongruenceClassProver(compiler, unit,
-                            compiler.symbolTable.getTypeGraph(), vco.getFinalVCs());
-                    try {
-                        prover.start();
-                    }
-                    catch (IOException ioe) {
-                        throw new RuntimeException(ioe);
-                    }
-                }*/
+                if (compiler.prove) {
+                    timer = compiler.stats.start("prove.setup", name);
+                    provers.add(new CongruenceClassProver(compiler, unit,
+                            compiler.symbolTable.getTypeGraph(), new ArrayList<>(x.getFinalVCs())));
+                    timer.stop();
+                }
             }
         }
+        prove(provers);
     }
-}
\ No newline at end of file
+
+    /**
+     * Runs each module's prover. By now every VC has been generated and the symbol table is settled, so the provers
+     * only read shared state and no module has to wait on another: several run at once, each against its own
+     * {@code -moduleTimeout} budget.
+     * <p>
+     * The threads proving takes altogether are kept to what one prover would take on its own ({@code -proverThreads}
+     * VCs, each racing its {@code -portfolio}), or to the number of processors if that's more. As many modules run at
+     * once as there are VC workers in that, and the workers are divided evenly among them.</p>
+     */
+    private void prove(List<CongruenceClassProver> provers) {
+        if (provers.size() < 2) {
+            for (CongruenceClassProver prover : provers) {
+                startProver(prover);
+            }
+            return;
+        }
+        //every prover is made with the same options, so any of them says what one would use
+        CongruenceClassProver first = provers.get(0);
+        int workers = Math.max(1, Math.max(first.getWorkerCount(), Runtime.getRuntime().availableProcessors()) /
+                first.getStrategyCount());
+        int modulesAtOnce = Math.min(provers.size(), workers);
+        for (CongruenceClassProver prover : provers) {
+            prover.limitWorkers(workers / modulesAtOnce);
+        }
+        ForkJoinPool pool = new ForkJoinPool(modulesAtOnce);
+        List<Callable<Void>> tasks = new ArrayList<>();
+        for (CongruenceClassProver prover : provers) {
+            tasks.add(() -> {
+                startProver(prover);
+                return null;
+            });
+        }
+        try {
+            for (Future<Void> f : pool.invokeAll(tasks)) {
+                f.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("prover interrupted", e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private void startProver(CongruenceClassProver prover) {
+        try {
+            prover.start();
+        }
+        catch (IOException ioe) {
+            throw new RuntimeException(ioe);
+        }
+    }
+}
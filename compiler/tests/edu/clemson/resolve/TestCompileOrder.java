@@ -7,6 +7,7 @@ import org.junit.Test;
 import java.util.List;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 public class TestCompileOrder extends BaseTest {
 
@@ -43,11 +44,47 @@ public class TestCompileOrder extends BaseTest {
         testOrdering(expected, "T");
     }
 
+    @Test
+    public void testParallelDiamondOrdering() throws Exception {
+        String[] modules = new String[]{
+                "Precis T;\n uses U, V;\n end T;",
+                "Precis U;\n uses W;\n end U;",
+                "Precis V;\n uses W;\n end V;",
+                "Precis W;\n end W;"
+        };
+        writeModules(modules, "T", "U", "V", "W");
+        for (int run = 0; run < 10; run++) {
+            List<String> msgs = populated("T", "-threads", "4");
+            assertEquals(4, msgs.size());
+            assertEquals("populating: W", msgs.get(0));
+            assertEquals("populating: T", msgs.get(3));
+            assertTrue(msgs.contains("populating: U"));
+            assertTrue(msgs.contains("populating: V"));
+        }
+    }
+
+    @Test
+    public void testParallelLinearOrdering() throws Exception {
+        String[] modules = new String[]{
+                "Precis T;\n uses U;\n end T;",
+                "Precis U;\n uses V;\n end U;",
+                "Precis V;\n end V;"
+        };
+        writeModules(modules, "T", "U", "V");
+        for (int run = 0; run < 10; run++) {
+            assertEquals("populating: V\npopulating: U\npopulating: T",
+                    Utils.join(populated("T", "-threads", "4"), "\n"));
+        }
+    }
+
     public void testOrdering(String expected, String root) {
-        ErrorQueue e = resolve(root + RESOLVECompiler.NATIVE_FILE_EXTENSION, false);
-        LogManager l = e.compiler.logMgr;
-        List<String> msgs = Utils.apply(l.getRecords(), LogManager.Record::getMsg);
-        String actual = Utils.join(msgs, "\n");
+        String actual = Utils.join(populated(root), "\n");
         assertEquals(expected, actual);
     }
+
+    private List<String> populated(String root, String... options) {
+        ErrorQueue e = resolve(root + RESOLVECompiler.NATIVE_FILE_EXTENSION, false, options);
+        LogManager l = e.compiler.logMgr;
+        return Utils.apply(l.getRecords(), LogManager.Record::getMsg);
+    }
 }
@@ -0,0 +1,128 @@
+package edu.clemson.resolve;
+
+import edu.clemson.resolve.misc.LogManager;
+import edu.clemson.resolve.misc.Utils;
+import edu.clemson.resolve.parser.ResolveLexer;
+import edu.clemson.resolve.proving.absyn.PExp;
+import edu.clemson.resolve.semantics.MathSymbolTable;
+import edu.clemson.resolve.semantics.ModuleIdentifier;
+import edu.clemson.resolve.semantics.query.SymbolTypeQuery;
+import edu.clemson.resolve.semantics.symbol.TheoremSymbol;
+import org.antlr.v4.runtime.CommonToken;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.*;
+
+public class TestModuleCache extends BaseTest {
+
+    private static final String[] MODULES = new String[]{
+            "Precis T;\n uses U, V;\n Theorem Twice: Forall x : SSet, f(f(x)) = x;\n end T;",
+            "Precis U;\n uses V;\n Theorem Fixed: Forall x : SSet, f(x) = x;\n end U;",
+            "Precis V;\n Definition f(x : SSet) : SSet;\n end V;"
+    };
+
+    // the cache has to start out empty, so each test gets a directory of its own rather than the shared one
+    @Before
+    @Override
+    public void setUp() throws Exception {
+        tmpdir = Files.createTempDirectory("TestModuleCache").toFile().getAbsolutePath();
+    }
+
+    @After
+    public void deleteTempDir() throws Exception {
+        try (Stream<Path> files = Files.walk(new File(tmpdir).toPath())) {
+            files.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        }
+    }
+
+    @Test
+    public void testUnchangedDependenciesLoaded() throws Exception {
+        writeModules(MODULES, "T", "U", "V");
+        assertEquals("populating: V\npopulating: U\npopulating: T", Utils.join(messages(resolve("T")), "\n"));
+
+        // T is a target, so it's always analyzed; what it uses comes out of the cache
+        ErrorQueue e = resolve("T");
+        assertEquals("loading: V\nloading: U\npopulating: T", Utils.join(messages(e), "\n"));
+
+        // U's theorem came out of the cache and T's didn't, but both see the f V's (loaded) scope holds
+        MathSymbolTable symtab = e.compiler.symbolTable;
+        PExp fixed = theorem(symtab, module("U")).getAssertion().getSubExpressions().get(1);
+        PExp twice = theorem(symtab, module("T")).getAssertion().getSubExpressions().get(1);
+        assertEquals("f(x)", fixed.toString());
+        assertEquals("f(f(x))", twice.toString());
+        assertSame(fixed.getSubExpressions().get(0).getMathClssftn(),
+                twice.getSubExpressions().get(0).getMathClssftn());
+    }
+
+    @Test
+    public void testEditInvalidatesDependents() throws Exception {
+        writeModules(MODULES, "T", "U", "V");
+        resolve("T");
+        writeModules(new String[]{"Precis V;\n Definition f(x : SSet) : SSet;\n Definition g : SSet;\n end V;"}, "V");
+        assertEquals("populating: V\npopulating: U\npopulating: T", Utils.join(messages(resolve("T")), "\n"));
+        assertEquals("loading: V\nloading: U\npopulating: T", Utils.join(messages(resolve("T")), "\n"));
+    }
+
+    @Test
+    public void testSkippedModuleStillWritesExternalFiles() throws Exception {
+        writeModules(new String[]{
+                "Concept C;\n end C;",
+                "Facility T;\n Facility F is C externally realized by Ext;\n end T;"
+        }, "C", "T");
+        writeFile(tmpdir, "Ext" + RESOLVECompiler.NON_NATIVE_FILE_EXTENSION, "class Ext {}");
+        resolve("T", "-genCode", "Java");
+
+        // T's code is up to date, so it isn't generated again; the external file it uses is still written (here,
+        // over its source, as both end up in tmpdir)
+        File t = new File(tmpdir, "T" + RESOLVECompiler.NON_NATIVE_FILE_EXTENSION);
+        File ext = new File(tmpdir, "Ext" + RESOLVECompiler.NON_NATIVE_FILE_EXTENSION);
+        assertTrue(t.exists());
+        assertTrue(t.setLastModified(10000));
+        assertTrue(ext.setLastModified(10000));
+        resolve("T", "-genCode", "Java");
+        assertEquals(10000, t.lastModified());
+        assertNotEquals(10000, ext.lastModified());
+    }
+
+    private ErrorQueue resolve(String root, String... options) {
+        String[] args = new String[options.length + 2];
+        System.arraycopy(options, 0, args, 0, options.length);
+        args[options.length] = "-Xcache";
+        args[options.length + 1] = new File(tmpdir, "cache").getPath();
+        ErrorQueue e = resolve(root + RESOLVECompiler.NATIVE_FILE_EXTENSION, false, args);
+        assertEquals(0, e.compiler.errMgr.getErrorCount());
+        return e;
+    }
+
+    // just what the analysis pipeline did with each module
+    private static List<String> messages(ErrorQueue e) {
+        LogManager l = e.compiler.logMgr;
+        return l.getRecords().stream().map(LogManager.Record::getMsg)
+                .filter(m -> m.startsWith("populating: ") || m.startsWith("loading: "))
+                .collect(Collectors.toList());
+    }
+
+    private ModuleIdentifier module(String name) {
+        return new ModuleIdentifier(new CommonToken(ResolveLexer.ID, name),
+                new File(tmpdir, name + RESOLVECompiler.NATIVE_FILE_EXTENSION));
+    }
+
+    private static TheoremSymbol theorem(MathSymbolTable symtab, ModuleIdentifier module) throws Exception {
+        List<TheoremSymbol> theorems = symtab.getModuleScope(module)
+                .query(new SymbolTypeQuery<TheoremSymbol>(TheoremSymbol.class,
+                        MathSymbolTable.ImportStrategy.IMPORT_NONE,
+                        MathSymbolTable.FacilityStrategy.FACILITY_IGNORE));
+        assertEquals(1, theorems.size());
+        return theorems.get(0);
+    }
+}
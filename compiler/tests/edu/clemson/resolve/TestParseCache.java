@@ -0,0 +1,79 @@
+package edu.clemson.resolve;
+
+import edu.clemson.resolve.compiler.AnnotatedModule;
+import edu.clemson.resolve.compiler.ParseCache;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+
+import static org.junit.Assert.*;
+
+public class TestParseCache extends BaseTest {
+
+    @Test
+    public void testHitSharesTreeNotAnnotations() throws Exception {
+        String path = write("Precis U;\n uses V;\n end U;");
+        RESOLVECompiler compiler = newCompiler();
+        ParseCache cache = compiler.parseCache;
+        AnnotatedModule first = compiler.parseModule(path);
+        assertNotNull(first);
+        assertEquals(0, cache.getHits());
+        assertEquals(1, cache.getMisses());
+
+        AnnotatedModule second = compiler.parseModule(path);
+        assertEquals(1, cache.getHits());
+        assertNotSame(first, second);
+        assertSame(first.getRoot(), second.getRoot());
+        assertSame(first.getDependencies(), second.getDependencies());
+        assertEquals("U", second.getNameToken().getText());
+        assertNotSame(first.mathClssftns, second.mathClssftns);
+        assertNotSame(first.exprASTs, second.exprASTs);
+    }
+
+    @Test
+    public void testChangedFileIsParsedAgain() throws Exception {
+        String path = write("Precis U;\n end U;");
+        Path file = new File(path).toPath();
+        RESOLVECompiler compiler = newCompiler();
+        ParseCache cache = compiler.parseCache;
+        AnnotatedModule first = compiler.parseModule(path);
+
+        // touched
+        FileTime modified = Files.getLastModifiedTime(file);
+        Files.setLastModifiedTime(file, FileTime.fromMillis(modified.toMillis() + 10000));
+        AnnotatedModule touched = compiler.parseModule(path);
+        assertEquals(0, cache.getHits());
+        assertNotSame(first.getRoot(), touched.getRoot());
+        assertSame(touched.getRoot(), compiler.parseModule(path).getRoot());
+        assertEquals(1, cache.getHits());
+
+        // edited, with the modification time put back as it was
+        modified = Files.getLastModifiedTime(file);
+        write("Precis U;\n uses V;\n end U;");
+        Files.setLastModifiedTime(file, modified);
+        AnnotatedModule edited = compiler.parseModule(path);
+        assertEquals(1, cache.getHits());
+        assertNotSame(touched.getRoot(), edited.getRoot());
+        assertTrue(edited.getRoot().getText().contains("uses"));
+    }
+
+    @Test
+    public void testSyntaxErrorsNotCached() throws Exception {
+        String path = write("Precis U;\n uses ;\n end U;");
+        RESOLVECompiler compiler = newCompiler();
+        assertTrue(compiler.parseModule(path).hasParseErrors);
+        int errors = compiler.errMgr.getErrorCount();
+        assertTrue(errors > 0);
+        assertTrue(compiler.parseModule(path).hasParseErrors);
+        assertEquals(0, compiler.parseCache.getHits());
+        assertEquals(2 * errors, compiler.errMgr.getErrorCount());
+    }
+
+    private String write(String module) {
+        writeModules(new String[]{module}, "U");
+        return new File(tmpdir, "U" + RESOLVECompiler.NATIVE_FILE_EXTENSION).getAbsolutePath();
+    }
+}
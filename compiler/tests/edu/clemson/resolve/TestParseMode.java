@@ -0,0 +1,74 @@
+package edu.clemson.resolve;
+
+import edu.clemson.resolve.compiler.AnnotatedModule;
+import edu.clemson.resolve.parser.ResolveLexer;
+import edu.clemson.resolve.parser.ResolveParser;
+import org.antlr.v4.runtime.ANTLRInputStream;
+import org.antlr.v4.runtime.BailErrorStrategy;
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.ParserRuleContext;
+import org.antlr.v4.runtime.atn.PredictionMode;
+import org.antlr.v4.runtime.misc.ParseCancellationException;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class TestParseMode extends BaseTest {
+
+    // SLL prediction can't tell what |a| + |b| is; full LL can
+    private static final String SLL_AMBIGUOUS = "Precis T;\n Corollary C: |a| + |b|;\n end T;";
+
+    @Test
+    public void testInputNeedingLL() throws Exception {
+        ResolveParser parser = new ResolveParser(new CommonTokenStream(
+                new ResolveLexer(new ANTLRInputStream(SLL_AMBIGUOUS))));
+        parser.removeErrorListeners();
+        parser.getInterpreter().setPredictionMode(PredictionMode.SLL);
+        parser.setErrorHandler(new BailErrorStrategy());
+        try {
+            parser.moduleDecl();
+            fail("SLL parsed it; this test needs an input only LL can");
+        } catch (ParseCancellationException expected) {
+        }
+    }
+
+    @Test
+    public void testFallBackToLL() throws Exception {
+        RESOLVECompiler compiler = newCompiler();
+        AnnotatedModule m = compiler.parseModule(new ANTLRInputStream(SLL_AMBIGUOUS));
+        assertNotNull(m);
+        assertFalse(m.hasParseErrors);
+        assertEquals(0, compiler.errMgr.getErrorCount());
+
+        RESOLVECompiler ll = newCompiler(new String[]{"-Xparse", "ll"});
+        assertEquals(tree(ll.parseModule(new ANTLRInputStream(SLL_AMBIGUOUS))), tree(m));
+    }
+
+    @Test
+    public void testSyntaxErrorsReportedOnce() throws Exception {
+        String bad = "Precis T;\n Corollary C: |a| + ;\n end T;";
+        RESOLVECompiler ll = newCompiler(new String[]{"-Xparse", "ll"});
+        assertTrue(ll.parseModule(new ANTLRInputStream(bad)).hasParseErrors);
+        int errors = ll.errMgr.getErrorCount();
+        assertTrue(errors > 0);
+
+        RESOLVECompiler compiler = newCompiler();
+        assertTrue(compiler.parseModule(new ANTLRInputStream(bad)).hasParseErrors);
+        assertEquals(errors, compiler.errMgr.getErrorCount());
+    }
+
+    @Test
+    public void testParseModeOption() throws Exception {
+        assertEquals("sll", newCompiler(new String[]{"-Xparse", "SLL"}).parseMode);
+        assertEquals("ll", newCompiler(new String[]{"-Xparse", "Ll"}).parseMode);
+        RESOLVECompiler compiler = newCompiler(new String[]{"-Xparse", "fast"});
+        assertEquals(1, compiler.errMgr.getErrorCount());
+        assertNull(compiler.parseMode);
+    }
+
+    private static String tree(AnnotatedModule m) {
+        return ((ParserRuleContext) m.getRoot()).toStringTree(Arrays.asList(ResolveParser.ruleNames));
+    }
+}
@@ -0,0 +1,107 @@
+package edu.clemson.resolve;
+
+import edu.clemson.resolve.proving.Metrics;
+import edu.clemson.resolve.proving.PerVCProverModel;
+import edu.clemson.resolve.proving.ProverListener;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class TestProverOrdering extends BaseTest {
+
+    private static final String PRECIS = "Precis U;\n    Theorem Tr: true = true;\nend U;";
+
+    // twelve operations, each with one vc; every third one can't be proved, and the rest follow from U's theorem
+    private static final String FACILITY;
+    static {
+        StringBuilder s = new StringBuilder("Facility T;\n    uses U;\n");
+        for (int i = 0; i < 12; i++) {
+            s.append("    Operation P").append(i).append("();\n")
+                    .append("        ensures ").append(i % 3 == 2 ? "false" : "true = true").append(";\n")
+                    .append("    Procedure\n")
+                    .append("    end P").append(i).append(";\n");
+        }
+        FACILITY = s.append("end T;").toString();
+    }
+
+    @Test
+    public void testResultsInVCOrder() throws Exception {
+        List<String> serial = prove("-proverThreads", "1");
+        assertEquals(12, serial.size());
+        for (int i = 0; i < serial.size(); i++) {
+            assertEquals((i + 1) + (i % 3 == 2 ? " unproved" : " proved"), serial.get(i));
+        }
+        for (int run = 0; run < 5; run++) {
+            assertEquals(serial, prove("-proverThreads", "4"));
+        }
+    }
+
+    @Test
+    public void testNumTriesWithThreads() throws Exception {
+        List<String> serial = prove("-proverThreads", "1", "-numTries", "2");
+        // the second unproved vc (the sixth) is the last one tried; the rest are skipped
+        List<String> expected = new ArrayList<>(Arrays.asList(
+                "1 proved", "2 proved", "3 unproved", "4 proved", "5 proved", "6 unproved"));
+        for (int i = 7; i <= 12; i++) {
+            expected.add(i + " unproved");
+        }
+        assertEquals(expected, serial);
+        for (int run = 0; run < 5; run++) {
+            assertEquals(serial, prove("-proverThreads", "4", "-numTries", "2"));
+        }
+    }
+
+    @Test
+    public void testBadCountsAreReported() throws Exception {
+        String[][] bad = {{"-proverThreads", "four"}, {"-proverThreads", "-1"}, {"-proverSteps", "-100"},
+                {"-numTries", "1.5"}, {"-timeout", "99999999999999999999"},
+                {"-moduleTimeout", "10s"}};
+        for (String[] option : bad) {
+            RESOLVECompiler compiler = newCompiler(option);
+            assertEquals(Arrays.toString(option), 1, compiler.errMgr.getErrorCount());
+            assertNull(compiler.proverThreads);
+            assertNull(compiler.proverSteps);
+            assertNull(compiler.tries);
+            assertNull(compiler.timeout);
+            assertNull(compiler.moduleTimeout);
+        }
+        assertEquals(0, newCompiler(new String[]{"-proverThreads", "0", "-proverSteps", "0"}).errMgr.getErrorCount());
+    }
+
+    // what the listener hears, in the order it hears it
+    private List<String> prove(String... extraOptions) {
+        writeModules(new String[]{FACILITY, PRECIS}, "T", "U");
+        List<String> options = new ArrayList<>(Arrays.asList("-o", tmpdir, "-lib", tmpdir, "-prove",
+                "-proverSteps", "100"));
+        options.addAll(Arrays.asList(extraOptions));
+        options.add("T" + RESOLVECompiler.NATIVE_FILE_EXTENSION);
+        RESOLVECompiler compiler = newCompiler(options.toArray(new String[options.size()]));
+        ErrorQueue equeue = new ErrorQueue(compiler);
+        compiler.addListener(equeue);
+        List<String> heard = new ArrayList<>();
+        compiler.addProverListener(new ProverListener() {
+            @Override
+            public void progressUpdate(double progess) {
+            }
+
+            @Override
+            public void vcResult(boolean proved, PerVCProverModel finalModel, Metrics m) {
+                heard.add(finalModel.getVCName() + (proved ? " proved" : " unproved"));
+            }
+
+            @Override
+            public boolean isCancelled() {
+                return false;
+            }
+        });
+        compiler.processCommandLineTargets();
+        assertTrue(equeue.errors.toString(), equeue.errors.isEmpty());
+        return heard;
+    }
+}
@@ -0,0 +1,182 @@
+package edu.clemson.resolve.proving;
+
+import edu.clemson.resolve.proving.absyn.PApply;
+import edu.clemson.resolve.proving.absyn.PExp;
+import edu.clemson.resolve.proving.absyn.PSymbol;
+import edu.clemson.resolve.semantics.DumbMathClssftnHandler;
+import edu.clemson.resolve.semantics.MathClssftn;
+import edu.clemson.resolve.semantics.MathFunctionClssftn;
+import edu.clemson.resolve.semantics.MathNamedClssftn;
+import edu.clemson.resolve.semantics.Quantification;
+import edu.clemson.resolve.vcgen.ListBackedSequent;
+import edu.clemson.resolve.vcgen.VC;
+import org.antlr.v4.runtime.CommonToken;
+
+import java.util.*;
+
+/**
+ * Builds (typed) VCs and theorems by hand over a single sort Z, so the prover's pieces can be tested without going
+ * through the front end. Z has 0, +, two functions f and h on it, and a predicate P.
+ */
+public abstract class BaseProverTest {
+
+    protected final DumbMathClssftnHandler g = new DumbMathClssftnHandler();
+    protected final MathClssftn Z = new MathNamedClssftn(g, "Z", 1, g.SSET);
+
+    protected final PSymbol zero = new PSymbol.PSymbolBuilder("0").mathClssfctn(Z).build();
+    protected final PSymbol plus =
+            new PSymbol.PSymbolBuilder("+").mathClssfctn(new MathFunctionClssftn(g, Z, Z, Z)).build();
+    protected final PSymbol f =
+            new PSymbol.PSymbolBuilder("f").mathClssfctn(new MathFunctionClssftn(g, Z, Z)).build();
+    protected final PSymbol h =
+            new PSymbol.PSymbolBuilder("h").mathClssfctn(new MathFunctionClssftn(g, Z, Z)).build();
+    protected final PSymbol P =
+            new PSymbol.PSymbolBuilder("P").mathClssfctn(new MathFunctionClssftn(g, g.BOOLEAN, Z)).build();
+
+    /** A constant of Z. */
+    protected PSymbol z(String name) {
+        return new PSymbol.PSymbolBuilder(name).mathClssfctn(Z).build();
+    }
+
+    /** A universally quantified variable over Z. */
+    protected PSymbol forAll(String name) {
+        return new PSymbol.PSymbolBuilder(name).mathClssfctn(Z).quantification(Quantification.UNIVERSAL).build();
+    }
+
+    protected PExp apply(PSymbol function, PExp... args) {
+        return new PApply.PApplyBuilder(function).arguments(args).applicationType(Z).build();
+    }
+
+    protected PExp holds(PExp arg) {
+        return new PApply.PApplyBuilder(P).arguments(arg).applicationType(g.BOOLEAN).build();
+    }
+
+    protected PExp eq(PExp left, PExp right) {
+        return new PApply.PApplyBuilder(Utilities.buildEqBName(g))
+                .arguments(left, right)
+                .applicationType(g.BOOLEAN)
+                .build();
+    }
+
+    protected VC vc(int number, List<PExp> antecedents, PExp... consequents) {
+        return new VC(new CommonToken(0), number, "test", new ListBackedSequent(antecedents,
+                Arrays.asList(consequents)));
+    }
+
+    protected VerificationConditionCongruenceClosureImpl closure(VC vc) {
+        return new VerificationConditionCongruenceClosureImpl(g, vc, Z, null);
+    }
+
+    /**
+     * Both ways of matching the equation {@code left = right}, the way the {@link TheoremLibrary} compiles one. Its
+     * sides get their operators tagged with their range, as the VC's do; the {@code =B} itself is left as is, so
+     * instantiating it merges the two sides.
+     */
+    protected List<TheoremCongruenceClosureImpl> equation(String name, PExp left, PExp right) {
+        List<TheoremCongruenceClosureImpl> result = new ArrayList<>();
+        PExp theorem = eq(Utilities.replacePExp(left, g, Z, null), Utilities.replacePExp(right, g, Z, null));
+        List<? extends PExp> sides = ((PApply) theorem).getArguments();
+        result.add(new TheoremCongruenceClosureImpl(g, theorem, sides.get(0), sides.get(1), theorem, false, false,
+                name + "_left"));
+        result.add(new TheoremCongruenceClosureImpl(g, theorem, sides.get(1), sides.get(0), theorem, false, false,
+                name + "_right"));
+        return result;
+    }
+
+    /** x + 0 = x and f(x) = h(x), both ways round. */
+    protected TheoremIndex theorems() {
+        PSymbol x = forAll("x");
+        List<TheoremCongruenceClosureImpl> result = new ArrayList<>();
+        result.addAll(equation("Zero_Right", apply(plus, x, zero), x));
+        result.addAll(equation("F_Is_H", apply(f, x), apply(h, x)));
+        return new TheoremIndex(result);
+    }
+
+    /** P(h(b)), P(c) |- P(f(b + 0)): provable with both theorems of {@link #theorems}, and only with both. */
+    protected VC provableVC(int number) {
+        PSymbol b = z("b"), c = z("c");
+        return vc(number, Arrays.asList(holds(apply(h, b)), holds(c)), holds(apply(f, apply(plus, b, zero))));
+    }
+
+    /**
+     * Everything there is to {@code vcc}, as text to compare: each symbol with its classification and root, each live
+     * atom (by id) with its root, where each symbol is used, the goals, and whether it's proved.
+     */
+    protected static String describe(VerificationConditionCongruenceClosureImpl vcc) {
+        Registry reg = vcc.getRegistry();
+        AtomStore atoms = vcc.getConjunct().m_atoms;
+        UseIndex uses = vcc.getConjunct().m_uses;
+        StringBuilder r = new StringBuilder();
+        for (int i = 0; i < reg.m_indexToSymbol.size(); ++i) {
+            String s = reg.m_indexToSymbol.get(i);
+            r.append(i).append(' ').append(s).append(" : ").append(reg.m_indexToType.get(i))
+                    .append(" -> ").append(reg.getRootSymbolForSymbol(s)).append('\n');
+        }
+        int widest = 0;
+        for (int a = 0; a < atoms.count(); ++a) {
+            if (!atoms.isLive(a)) continue;
+            widest = Math.max(widest, atoms.width(a));
+            r.append('#').append(a).append(':');
+            for (int p = 0; p < atoms.width(a); ++p) {
+                r.append(' ').append(atoms.read(a, p));
+            }
+            r.append(" = ").append(atoms.root(a)).append('\n');
+        }
+        for (int s = 0; s < reg.m_indexToSymbol.size(); ++s) {
+            for (int p = UseIndex.ROOT; p < widest; ++p) {
+                if (uses.size(s, p) == 0) continue;
+                r.append(s).append('@').append(p).append(':');
+                for (int i = 0; i < uses.size(s, p); ++i) {
+                    r.append(' ').append(uses.get(s, p, i));
+                }
+                r.append('\n');
+            }
+        }
+        List<String> goals = new ArrayList<>();
+        for (String goal : vcc.m_goal) {
+            goals.add(reg.getRootSymbolForSymbol(goal));
+        }
+        Collections.sort(goals);
+        r.append("goals ").append(goals).append(' ').append(vcc.isProved());
+        return r.toString();
+    }
+
+    /**
+     * Applies the theorems of {@code index} to {@code vcc} the way {@link CongruenceClassProver} does, one instantiation
+     * a round, for at most {@code rounds} rounds or until it's no longer being evaluated; returns the names of the
+     * theorems that changed something, in order.
+     */
+    protected static List<String> prove(VerificationConditionCongruenceClosureImpl vcc, TheoremIndex index,
+                                        int rounds) {
+        TheoremIndex.View view = index.newView(vcc);
+        Map<String, Integer> appliedCount = new HashMap<>();
+        Set<String> nonQuantified = new HashSet<>();
+        for (int i = 0; i < index.size(); ++i) {
+            nonQuantified.addAll(index.get(i).getNonQuantifiedSymbols());
+        }
+        TheoremPrioritizer ranked = new TheoremPrioritizer(view, appliedCount, vcc, nonQuantified,
+                Collections.<TheoremCongruenceClosureImpl>emptySet());
+        ProofBudget budget = budget();
+        List<String> applied = new ArrayList<>();
+        for (int round = 0; round < rounds &&
+                vcc.isProved() == VerificationConditionCongruenceClosureImpl.STATUS.STILL_EVALUATING; ++round) {
+            ranked.refresh();
+            while (!ranked.isEmpty()) {
+                TheoremCongruenceClosureImpl t = ranked.poll();
+                appliedCount.merge(t.m_name, 1, Integer::sum);
+                TheoremCongruenceClosureImpl.Cursor matches = view.cursorFor(t);
+                matches.applyTo(budget);
+                PExpWithScore m = matches.getNext();
+                if (m != null && vcc.getConjunct().addExpressionAndTrackChanges(m.m_theorem, budget, null)) {
+                    applied.add(t.m_name);
+                    break;
+                }
+            }
+        }
+        return applied;
+    }
+
+    protected static ProofBudget budget() {
+        return new ProofBudget(null, null, 0, 0);
+    }
+}
@@ -0,0 +1,67 @@
+package edu.clemson.resolve.proving;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class TestBindingSet {
+
+    @Test
+    public void testDuplicatesByContent() throws Exception {
+        BindingSet s = new BindingSet();
+        assertTrue(s.add(new int[]{3, BindingSlots.UNBOUND, 7}));
+        assertTrue(s.add(new int[]{3, BindingSlots.ABSENT, 7}));
+        assertFalse(s.add(new int[]{3, BindingSlots.UNBOUND, 7}));
+        assertTrue(s.contains(new int[]{3, BindingSlots.ABSENT, 7}));
+        assertFalse(s.contains(new int[]{3, 7}));
+        assertEquals(2, s.size());
+    }
+
+    @Test
+    public void testHashCollisions() throws Exception {
+        // the same Arrays.hashCode, so the same hash
+        int[] a = {0, 31}, b = {1, 0};
+        assertEquals(BindingSet.hash(a), BindingSet.hash(b));
+        BindingSet s = new BindingSet();
+        assertTrue(s.add(a));
+        assertFalse(s.contains(b));
+        assertTrue(s.add(b));
+        assertFalse(s.add(new int[]{0, 31}));
+        assertFalse(s.add(new int[]{1, 0}));
+        assertEquals(2, s.size());
+    }
+
+    @Test
+    public void testInsertionOrderAcrossGrowth() throws Exception {
+        BindingSet s = new BindingSet(2);
+        for (int i = 0; i < 1000; ++i) {
+            assertTrue(s.add(new int[]{i % 10, i / 10}));
+        }
+        for (int i = 0; i < 1000; ++i) {
+            assertFalse(s.add(new int[]{i % 10, i / 10}));
+        }
+        assertEquals(1000, s.size());
+        for (int i = 0; i < 1000; ++i) {
+            assertArrayEquals(new int[]{i % 10, i / 10}, s.get(i));
+            assertEquals(BindingSet.hash(s.get(i)), s.hashAt(i));
+        }
+    }
+
+    @Test
+    public void testAddAllAndClear() throws Exception {
+        BindingSet s = new BindingSet(), t = new BindingSet();
+        s.add(new int[]{1, 2});
+        s.add(new int[]{2, 1});
+        t.add(new int[]{2, 1});
+        t.add(new int[]{4, 4});
+        s.addAll(t);
+        assertEquals(3, s.size());
+        assertArrayEquals(new int[]{4, 4}, s.get(2));
+
+        s.clear();
+        assertTrue(s.isEmpty());
+        assertFalse(s.contains(new int[]{1, 2}));
+        assertTrue(s.add(new int[]{2, 1}));
+        assertArrayEquals(new int[]{2, 1}, s.get(0));
+    }
+}
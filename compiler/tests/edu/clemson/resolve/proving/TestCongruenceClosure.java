@@ -0,0 +1,132 @@
+package edu.clemson.resolve.proving;
+
+import edu.clemson.resolve.proving.absyn.PExp;
+import edu.clemson.resolve.proving.absyn.PSymbol;
+import edu.clemson.resolve.vcgen.VC;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class TestCongruenceClosure extends BaseProverTest {
+
+    /** P(h(b)), P(c), P(f(c)), P(h(c)) |- P(f(b + 0)) */
+    private VC fourAntecedents(int number) {
+        PSymbol b = z("b"), c = z("c");
+        return vc(number, Arrays.asList(holds(apply(h, b)), holds(c), holds(apply(f, c)), holds(apply(h, c))),
+                holds(apply(f, apply(plus, b, zero))));
+    }
+
+    @Test
+    public void testSharedAntecedentsMatchScratch() throws Exception {
+        VC vc = fourAntecedents(1);
+        List<PExp> ants = VerificationConditionCongruenceClosureImpl.getAntecedents(g, vc);
+        assertEquals(4, ants.size());
+        VerificationConditionCongruenceClosureImpl first =
+                VerificationConditionCongruenceClosureImpl.forSharedAntecedents(g, ants.subList(0, 1), Z, null, null);
+        String firstBefore = describe(first);
+        VerificationConditionCongruenceClosureImpl firstThree =
+                VerificationConditionCongruenceClosureImpl.forSharedAntecedents(g, ants.subList(0, 3), Z, null, first);
+        String firstThreeBefore = describe(firstThree);
+
+        VerificationConditionCongruenceClosureImpl shared =
+                new VerificationConditionCongruenceClosureImpl(g, vc, Z, null, firstThree);
+        VerificationConditionCongruenceClosureImpl scratch = closure(vc);
+        assertEquals(describe(scratch), describe(shared));
+        assertEquals(scratch.toString(), shared.toString());
+
+        // proving one doesn't touch what it was built on, and goes just as it does for the other
+        TheoremIndex index = theorems();
+        List<String> applied = prove(shared, index, 20);
+        assertEquals(VerificationConditionCongruenceClosureImpl.STATUS.PROVED, shared.isProved());
+        assertEquals(applied, prove(scratch, index, 20));
+        assertEquals(describe(scratch), describe(shared));
+        assertEquals(firstBefore, describe(first));
+        assertEquals(firstThreeBefore, describe(firstThree));
+    }
+
+    @Test
+    public void testVCsBuiltOnOneSharedClosure() throws Exception {
+        // the same antecedents, different goals
+        VC provable = provableVC(1);
+        PSymbol b = z("b"), c = z("c");
+        VC other = vc(2, Arrays.asList(holds(apply(h, b)), holds(c)), holds(apply(h, apply(plus, c, zero))));
+        List<PExp> ants = VerificationConditionCongruenceClosureImpl.getAntecedents(g, provable);
+        VerificationConditionCongruenceClosureImpl shared =
+                VerificationConditionCongruenceClosureImpl.forSharedAntecedents(g, ants, Z, null, null);
+
+        VerificationConditionCongruenceClosureImpl first =
+                new VerificationConditionCongruenceClosureImpl(g, provable, Z, null, shared);
+        VerificationConditionCongruenceClosureImpl second =
+                new VerificationConditionCongruenceClosureImpl(g, other, Z, null, shared);
+        assertEquals(describe(closure(provable)), describe(first));
+        assertEquals(describe(closure(other)), describe(second));
+    }
+
+    @Test
+    public void testForkMatchesOriginal() throws Exception {
+        VerificationConditionCongruenceClosureImpl original = closure(provableVC(1));
+        String before = describe(original);
+        VerificationConditionCongruenceClosureImpl fork = new VerificationConditionCongruenceClosureImpl(original);
+        assertEquals(before, describe(fork));
+
+        TheoremIndex index = theorems();
+        List<String> applied = prove(fork, index, 20);
+        assertEquals(VerificationConditionCongruenceClosureImpl.STATUS.PROVED, fork.isProved());
+        assertEquals(before, describe(original));
+        assertEquals(applied, prove(original, index, 20));
+        assertEquals(describe(original), describe(fork));
+    }
+
+    @Test
+    public void testRollbackRestoresClosure() throws Exception {
+        VerificationConditionCongruenceClosureImpl vcc = closure(provableVC(1));
+        String before = describe(vcc);
+        assertFalse(vcc.getRegistry().m_trail.isRecording());
+        vcc.checkpoint();
+        assertTrue(vcc.getRegistry().m_trail.isRecording());
+        TheoremIndex index = theorems();
+        List<String> applied = prove(vcc, index, 20);
+        assertEquals(VerificationConditionCongruenceClosureImpl.STATUS.PROVED, vcc.isProved());
+        vcc.rollback();
+        assertFalse(vcc.getRegistry().m_trail.isRecording());
+        assertEquals(before, describe(vcc));
+
+        // and it can be proved again the same way
+        assertEquals(applied, prove(vcc, index, 20));
+        assertEquals(VerificationConditionCongruenceClosureImpl.STATUS.PROVED, vcc.isProved());
+    }
+
+    @Test
+    public void testNestedCheckpoints() throws Exception {
+        VerificationConditionCongruenceClosureImpl vcc = closure(provableVC(1));
+        TheoremIndex index = theorems();
+        String before = describe(vcc);
+        assertEquals(1, vcc.checkpoint());
+        assertEquals(1, prove(vcc, index, 1).size());
+        String middle = describe(vcc);
+        assertNotEquals(before, middle);
+        assertEquals(2, vcc.checkpoint());
+        prove(vcc, index, 20);
+        assertEquals(VerificationConditionCongruenceClosureImpl.STATUS.PROVED, vcc.isProved());
+        vcc.rollback();
+        assertEquals(middle, describe(vcc));
+        vcc.rollback();
+        assertEquals(before, describe(vcc));
+    }
+
+    @Test
+    public void testReleaseKeepsChanges() throws Exception {
+        VerificationConditionCongruenceClosureImpl vcc = closure(provableVC(1));
+        VerificationConditionCongruenceClosureImpl unchecked = closure(provableVC(1));
+        TheoremIndex index = theorems();
+        vcc.checkpoint();
+        prove(vcc, index, 20);
+        vcc.release();
+        assertFalse(vcc.getRegistry().m_trail.isRecording());
+        prove(unchecked, index, 20);
+        assertEquals(describe(unchecked), describe(vcc));
+    }
+}
@@ -0,0 +1,106 @@
+package edu.clemson.resolve.proving;
+
+import edu.clemson.resolve.proving.absyn.PExp;
+import edu.clemson.resolve.proving.absyn.PSymbol;
+import edu.clemson.resolve.semantics.MathClssftn;
+import edu.clemson.resolve.semantics.MathNamedClssftn;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class TestProofCache extends BaseProverTest {
+
+    private static final VerificationConditionCongruenceClosureImpl.STATUS PROVED =
+            VerificationConditionCongruenceClosureImpl.STATUS.PROVED;
+    private static final VerificationConditionCongruenceClosureImpl.STATUS STILL_EVALUATING =
+            VerificationConditionCongruenceClosureImpl.STATUS.STILL_EVALUATING;
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private final Set<String> none = Collections.emptySet();
+
+    // P(h(x)), P(y) |- P(f(x))
+    private String form(String x, String y, Set<String> fixed, boolean swapAntecedents) {
+        List<PExp> ants = new ArrayList<>(Arrays.asList(holds(apply(h, z(x))), holds(z(y))));
+        if (swapAntecedents) Collections.reverse(ants);
+        return ProofCache.canonicalForm(ants, Collections.singletonList(holds(apply(f, z(x)))), fixed);
+    }
+
+    @Test
+    public void testRenamedVariablesKeepKey() throws Exception {
+        String form = form("b", "c", none, false);
+        assertEquals(form, form("u", "v", none, false));
+        assertEquals(form, form("u", "v", none, true));
+        // not the same vc: the goal's about the other variable now
+        assertNotEquals(form, ProofCache.canonicalForm(Arrays.asList(holds(apply(h, z("b"))), holds(z("c"))),
+                Collections.singletonList(holds(apply(f, z("c")))), none));
+        // theorems could mention b by name, so it's no longer just any variable
+        Set<String> fixed = Collections.singleton("b");
+        assertNotEquals(form("b", "c", fixed, false), form("u", "c", fixed, false));
+        assertEquals(form("b", "c", fixed, false), form("b", "v", fixed, true));
+    }
+
+    @Test
+    public void testSettingChangesWithTheorems() throws Exception {
+        PSymbol x = forAll("x");
+        String setting = setting(eq(apply(f, x), apply(h, x)), "steps=100");
+        assertEquals(setting, setting(eq(apply(f, forAll("x")), apply(h, forAll("x"))), "steps=100"));
+        assertNotEquals(setting, setting(eq(apply(f, x), apply(h, x)), "steps=200"));
+        // a different assertion
+        assertNotEquals(setting, setting(eq(apply(h, x), apply(f, x)), "steps=100"));
+        // the same text, but x isn't quantified
+        PSymbol c = z("x");
+        assertNotEquals(setting, setting(eq(apply(f, c), apply(h, c)), "steps=100"));
+        // the same text, but x ranges over something else
+        MathClssftn w = new MathNamedClssftn(g, "W", 1, g.SSET);
+        PSymbol xw = new PSymbol.PSymbolBuilder(forAll("x")).mathClssfctn(w).build();
+        assertNotEquals(setting, setting(eq(apply(f, xw), apply(h, xw)), "steps=100"));
+
+        String form = form("b", "c", none, false);
+        assertNotEquals(ProofCache.key(form, setting), ProofCache.key(form, setting(eq(apply(h, x), apply(f, x)),
+                "steps=100")));
+    }
+
+    private String setting(PExp theorem, String settings) {
+        SortedMap<String, PExp> theorems = new TreeMap<>();
+        theorems.put("U::F_Is_H", theorem);
+        theorems.put("U::Zero_Right", eq(apply(plus, forAll("y"), zero), forAll("y")));
+        return ProofCache.hashSetting(theorems, settings);
+    }
+
+    @Test
+    public void testRecordSaveAndReload() throws Exception {
+        File dir = folder.newFolder();
+        String key = ProofCache.key(form("b", "c", none, false), setting(eq(z("a"), z("a")), ""));
+        ProofCache cache = new ProofCache(dir);
+        assertNull(cache.lookup(key));
+        cache.record(key, PROVED, Arrays.asList("Zero_Right_left", "F_Is_H_left"), false);
+        assertEquals(PROVED, cache.lookup(key).status);
+        cache.save();
+
+        ProofCache.Entry e = new ProofCache(dir).lookup(key);
+        assertNotNull(e);
+        assertEquals(PROVED, e.status);
+        assertEquals(Arrays.asList("Zero_Right_left", "F_Is_H_left"), e.theorems);
+        assertNull(new ProofCache(dir).lookup(ProofCache.key(form("b", "c", none, false),
+                setting(eq(z("a"), z("a")), "steps=1"))));
+    }
+
+    @Test
+    public void testOnlyProofsUnlessDeterministic() throws Exception {
+        ProofCache cache = new ProofCache(folder.newFolder());
+        cache.record("timed out", STILL_EVALUATING, Collections.<String>emptyList(), false);
+        assertNull(cache.lookup("timed out"));
+        cache.record("out of steps", STILL_EVALUATING, Collections.<String>emptyList(), true);
+        assertEquals(STILL_EVALUATING, cache.lookup("out of steps").status);
+        cache.record("cancelled", VerificationConditionCongruenceClosureImpl.STATUS.CANCELLED,
+                Collections.<String>emptyList(), true);
+        assertNull(cache.lookup("cancelled"));
+    }
+}
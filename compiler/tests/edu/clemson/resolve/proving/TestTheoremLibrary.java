@@ -0,0 +1,68 @@
+package edu.clemson.resolve.proving;
+
+import edu.clemson.resolve.BaseTest;
+import edu.clemson.resolve.RESOLVECompiler;
+import edu.clemson.resolve.compiler.CompilerSession;
+import edu.clemson.resolve.semantics.MathSymbolTable;
+import edu.clemson.resolve.semantics.query.SymbolTypeQuery;
+import edu.clemson.resolve.semantics.symbol.TheoremSymbol;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class TestTheoremLibrary extends BaseTest {
+
+    private static final String PRECIS = "Precis U;\n    Theorem Tr: true = true;\nend U;";
+
+    @Test
+    public void testKeptAcrossSessionRequests() throws Exception {
+        writeModules(new String[]{PRECIS}, "U");
+        CompilerSession session = new CompilerSession();
+        RESOLVECompiler first = analyze(session);
+        assertSame(session.getTheoremLibrary(), first.theoremLibrary);
+        TheoremLibrary.Entry compiled = compile(first);
+        assertSame(compiled, compile(first));
+
+        // nothing changed, so the next request gets the theorem as compiled for the last one
+        RESOLVECompiler second = analyze(session);
+        assertSame(session.getTheoremLibrary(), second.theoremLibrary);
+        assertSame(compiled, compile(second));
+
+        // U is analyzed again (it's been touched), so its theorem has to be compiled again too
+        File u = new File(tmpdir, "U" + RESOLVECompiler.NATIVE_FILE_EXTENSION);
+        Files.setLastModifiedTime(u.toPath(), FileTime.fromMillis(u.lastModified() + 10000));
+        RESOLVECompiler third = analyze(session);
+        TheoremLibrary.Entry recompiled = compile(third);
+        assertNotSame(compiled, recompiled);
+        assertSame(recompiled, compile(third));
+    }
+
+    @Test
+    public void testOwnLibraryWithoutSession() throws Exception {
+        assertNotSame(newCompiler().theoremLibrary, newCompiler().theoremLibrary);
+    }
+
+    private RESOLVECompiler analyze(CompilerSession session) {
+        RESOLVECompiler compiler = new RESOLVECompiler(new String[]{"-lib", tmpdir,
+                "U" + RESOLVECompiler.NATIVE_FILE_EXTENSION}, session);
+        compiler.processCommandLineTargets();
+        assertEquals(0, compiler.errMgr.getErrorCount());
+        return compiler;
+    }
+
+    // Tr, as the prover would get it from the compiler's library
+    private static TheoremLibrary.Entry compile(RESOLVECompiler compiler) throws Exception {
+        List<TheoremSymbol> theorems = compiler.symbolTable
+                .getModuleScope(compiler.commandlineTargets.get(0).getModuleIdentifier())
+                .query(new SymbolTypeQuery<TheoremSymbol>(TheoremSymbol.class,
+                        MathSymbolTable.ImportStrategy.IMPORT_NONE,
+                        MathSymbolTable.FacilityStrategy.FACILITY_IGNORE));
+        assertEquals(1, theorems.size());
+        return compiler.theoremLibrary.get(theorems.get(0), compiler.symbolTable.getTypeGraph(), null, null);
+    }
+}
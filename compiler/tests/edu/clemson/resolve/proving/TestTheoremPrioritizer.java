@@ -0,0 +1,102 @@
+package edu.clemson.resolve.proving;
+
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class TestTheoremPrioritizer extends BaseProverTest {
+
+    /**
+     * Every round the prioritizer that lives as long as the VC (and so only rescores what changed) must rank the
+     * theorems exactly as one that scores them all from scratch does.
+     */
+    @Test
+    public void testRefreshMatchesFullRescore() throws Exception {
+        VerificationConditionCongruenceClosureImpl vcc = closure(provableVC(1));
+        TheoremIndex index = theorems();
+        TheoremIndex.View view = index.newView(vcc);
+        Prover p = new Prover(index, view, vcc);
+        p.proveComparingRanks();
+        assertEquals(VerificationConditionCongruenceClosureImpl.STATUS.PROVED, vcc.isProved());
+    }
+
+    /** The same, when the VC is rolled back under a prioritizer that has been ranking theorems for it. */
+    @Test
+    public void testRefreshAfterRollbackMatchesFullRescore() throws Exception {
+        VerificationConditionCongruenceClosureImpl vcc = closure(provableVC(1));
+        TheoremIndex index = theorems();
+        TheoremIndex.View view = index.newView(vcc);
+        Prover p = new Prover(index, view, vcc);
+        vcc.checkpoint();
+        p.proveComparingRanks();
+        assertEquals(VerificationConditionCongruenceClosureImpl.STATUS.PROVED, vcc.isProved());
+        vcc.rollback();
+        assertEquals(VerificationConditionCongruenceClosureImpl.STATUS.STILL_EVALUATING, vcc.isProved());
+        p.m_applied.clear();
+        p.proveComparingRanks();
+        assertEquals(VerificationConditionCongruenceClosureImpl.STATUS.PROVED, vcc.isProved());
+    }
+
+    // what CongruenceClassProver.prove does, one theorem instantiation a round
+    private static final class Prover {
+        final TheoremIndex.View m_view;
+        final VerificationConditionCongruenceClosureImpl m_vc;
+        final Map<String, Integer> m_applied = new HashMap<>();
+        final Set<String> m_nonQuantified = new HashSet<>();
+        final Set<TheoremCongruenceClosureImpl> m_smallEnd = new HashSet<>();
+        final TheoremPrioritizer m_ranked;
+
+        Prover(TheoremIndex index, TheoremIndex.View view, VerificationConditionCongruenceClosureImpl vc) {
+            m_view = view;
+            m_vc = vc;
+            for (int i = 0; i < index.size(); ++i) {
+                TheoremCongruenceClosureImpl t = index.get(i);
+                m_nonQuantified.addAll(t.getNonQuantifiedSymbols());
+                if (t.m_name.equals("Zero_Right_left")) m_smallEnd.add(t);
+            }
+            m_ranked = newPrioritizer();
+        }
+
+        TheoremPrioritizer newPrioritizer() {
+            return new TheoremPrioritizer(m_view, m_applied, m_vc, m_nonQuantified, m_smallEnd);
+        }
+
+        void proveComparingRanks() {
+            ProofBudget budget = budget();
+            for (int round = 0; round < 20 &&
+                    m_vc.isProved() == VerificationConditionCongruenceClosureImpl.STATUS.STILL_EVALUATING; ++round) {
+                m_ranked.refresh();
+                TheoremPrioritizer rescored = newPrioritizer();
+                rescored.refresh();
+                List<TheoremCongruenceClosureImpl> ranked = new ArrayList<>();
+                List<String> kept = drain(m_ranked, ranked);
+                assertEquals("round " + round, drain(rescored, new ArrayList<>()), kept);
+                assertFalse(kept.isEmpty());
+
+                for (TheoremCongruenceClosureImpl t : ranked) {
+                    m_applied.merge(t.m_name, 1, Integer::sum);
+                    TheoremCongruenceClosureImpl.Cursor matches = m_view.cursorFor(t);
+                    matches.applyTo(budget);
+                    PExpWithScore m = matches.getNext();
+                    if (m != null && m_vc.getConjunct().addExpressionAndTrackChanges(m.m_theorem, budget, null)) {
+                        break;
+                    }
+                }
+            }
+        }
+
+        // "name score" for each theorem, best first
+        private static List<String> drain(TheoremPrioritizer p, List<TheoremCongruenceClosureImpl> theorems) {
+            List<String> result = new ArrayList<>();
+            while (!p.isEmpty()) {
+                int score = p.peekScore();
+                TheoremCongruenceClosureImpl t = p.poll();
+                theorems.add(t);
+                result.add(t.m_name + " " + score);
+            }
+            return result;
+        }
+    }
+}